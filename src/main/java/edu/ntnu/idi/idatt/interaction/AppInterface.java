@@ -5,7 +5,12 @@ import edu.ntnu.idi.idatt.model.Grocery;
 import edu.ntnu.idi.idatt.model.IngredientDetail;
 import edu.ntnu.idi.idatt.model.Recipe;
 import edu.ntnu.idi.idatt.model.RecipeBook;
+import edu.ntnu.idi.idatt.model.JournalSync;
+import edu.ntnu.idi.idatt.model.StorageJournal;
+import edu.ntnu.idi.idatt.model.ValuationMode;
 import edu.ntnu.idi.idatt.utils.InputValidation;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.time.LocalDate;
 import java.util.HashMap;
 import java.util.List;
@@ -31,11 +36,16 @@ public class AppInterface {
   private static final int REGISTER_RECIPE = 10;
   private static final int CHECK_FOR_RECIPE = 11;
   private static final int CHECK_AVAILABLE_RECIPES = 12;
+  private static final int PLAN_MEALS = 13;
   private static final int EXIT = 0;
 
+  // The storage and the recipes are kept here, and every change is journaled as it is made
+  private static final Path DATA_DIRECTORY = Path.of("foodwaste-data");
+
   private final Scanner scanner = new Scanner(System.in);
   private FoodStorage mainStorage; // Initialize FoodStorage instance globally
   private RecipeBook recipeBook; // Initialize FoodStorage instance globally
+  private StorageJournal journal; // Null if the data directory could not be opened
 
   /**
    * Presents the menu for the user and awaits input from the user.
@@ -58,9 +68,10 @@ public class AppInterface {
     System.out.println("10. register a new recipe to recipe-book");
     System.out.println("11. Check for a specific recipe");
     System.out.println("12. Check for recipes you can make with current storage:");
+    System.out.println("13. Plan meals that use groceries before they expire");
     System.out.println("0. Quit");
 
-    return InputValidation.getValidInt("\nPlease enter a number between 1 and 12: ");
+    return InputValidation.getValidInt("\nPlease enter a number between 1 and 13: ");
   }
 
   /**
@@ -82,6 +93,7 @@ public class AppInterface {
    *   <li>Viewing total value of groceries</li>
    *   <li>Managing expired groceries</li>
    *   <li>Adding recipes and checking which recipes can be made</li>
+   *   <li>Planning meals that use groceries before they expire</li>
    *   <li>Exiting the program</li>
    * </ul>
    *
@@ -104,6 +116,7 @@ public class AppInterface {
    * @see #createRecipe()
    * @see #checkForSpecificRecipe()
    * @see #checkForAllAvailableRecipes()
+   * @see #planMeals()
    */
 
   public void start() {
@@ -162,7 +175,13 @@ public class AppInterface {
           checkForAllAvailableRecipes();
 
 
+        case PLAN_MEALS ->
+          planMeals();
+
+
         case EXIT -> {
+          mainStorage.stopExpirySweeper();
+          closeJournal();
           System.out.println("Program exited succesfully");
           finished = true;
         }
@@ -186,7 +205,7 @@ public class AppInterface {
 
       double groceryAmount = InputValidation.getValidDouble("Amount of grocery: ", false);
 
-      String groceryUnit = InputValidation.getValidUnit("Corresponding Unit (g, kg, l, ml, dl): ");
+      String groceryUnit = InputValidation.getValidUnit("Corresponding Unit (g, kg, oz, lb, l, ml, dl, cup, tbsp, tsp, stk): ");
 
       LocalDate groceryExpiryDate = InputValidation.getValidDate("Expiry Date (dd-mm-YYYY): ");
 
@@ -196,9 +215,8 @@ public class AppInterface {
 
       mainStorage.registerToStorage(registeredGrocery);
 
-      // Filter and remove expired groceries from storage
-      mainStorage.filterAndGroupExpiredGroceries();
-      mainStorage.removeExpiredGroceries();
+      // Move the grocery to the expired storage right away if it has already expired
+      mainStorage.moveExpiredGroceries();
 
       if (groceryExpiryDate.isBefore(LocalDate.now())) {
         System.out.println("WARNING: Added expired Grocery, moved to expired storage!");
@@ -214,20 +232,25 @@ public class AppInterface {
   }
 
   private void removeAmountOfGroceryFromStorage() {
-    // use sortGroceries here to return a Map<String, List<Grocery>>
+    // sortGroceries returns a read-only view of the storage, so it is not copied
+    Map<String, List<Grocery>> groceries = mainStorage.sortGroceries();
+
     String groceryToRemove = InputValidation.getValidItemToRemove(
-        "\nPlease enter Grocery name: ", mainStorage.sortGroceries());
+        "\nPlease enter Grocery name: ", mainStorage);
 
     String desiredUnit = InputValidation.getValidCompatibleUnit(
         "\nPlease enter the desired unit for removal: ",
-        groceryToRemove, mainStorage.sortGroceries());
+        groceryToRemove, groceries);
 
     double amountToRemove = InputValidation.getValidAmountToRemove(
         "\nPlease enter amount to remove: ",
-        mainStorage.sortGroceries(), groceryToRemove, desiredUnit);
+        groceries, groceryToRemove, desiredUnit);
 
-
-    mainStorage.removeAmountFromStorage(groceryToRemove, amountToRemove, desiredUnit);
+    try {
+      mainStorage.removeAmountFromStorage(groceryToRemove, amountToRemove, desiredUnit);
+    } catch (IllegalArgumentException e) {
+      System.out.println("Error: " + e.getMessage());
+    }
   }
 
   private void sortedStorage() {
@@ -250,6 +273,8 @@ public class AppInterface {
   private void totalValueOfGroceries() {
     System.out.println("The total monetary value of all groceries: \n"
         + mainStorage.totalValueOfGroceries() + "kr");
+    System.out.printf("Value of what is left of the groceries: %n%.2fkr%n",
+        mainStorage.totalValueOfGroceries(ValuationMode.REMAINING_FRACTION));
   }
 
   private void viewExpiredGroceries() {
@@ -281,7 +306,7 @@ public class AppInterface {
       double ingredientAmount = InputValidation.getValidDouble("Insert amount: ", false);
 
       String ingredientUnit = InputValidation.getValidUnit(
-          "Insert one of the following units (g, kg, l, ml, dl): "
+          "Insert one of the following units (g, kg, oz, lb, l, ml, dl, cup, tbsp, tsp, stk): "
       );
 
       recipeIngredients.put(ingredientName, new IngredientDetail(ingredientAmount, ingredientUnit));
@@ -329,17 +354,16 @@ public class AppInterface {
           System.out.println(e.getMessage());
         }
       } else {
-        // Link the FoodStorage to the recipe
-        recipe.setStorage(mainStorage);
-
-        if (recipe.canMakeRecipe()) {
+        // Check against the FoodStorage without linking it to the shared recipe
+        if (recipe.canMakeRecipe(mainStorage)) {
           System.out.println("Here is the recipe you requested:");
           System.out.println(recipe);
+          offerToCook(recipe);
         } else {
           System.out.println(
               "You don't have enough ingredients to make: " + recipe.getNameOfRecipe() + "\n");
           System.out.println("Missing ingredients:");
-          recipe.getMissingIngredients();
+          recipe.getMissingIngredients(mainStorage);
         }
       }
     }
@@ -348,11 +372,28 @@ public class AppInterface {
 
 
 
-  private void checkForAllAvailableRecipes() {
-    if (recipeBook.getAvailableRecipes(mainStorage).isEmpty()) {
-      System.out.println("You do not have enough ingredients to make any recipes in the cookbook.");
+  /**
+   * Asks the user whether to cook a recipe, and if so, for how many servings.
+   * All the ingredients are then removed from the storage at once.
+   *
+   * @param recipe the recipe to cook
+   */
+
+  private void offerToCook(Recipe recipe) {
+    System.out.println("Do you want to cook it? (Y/N)");
+
+    try {
+      if (InputValidation.getValidAnswer(scanner.nextLine().trim().toLowerCase()).equals("y")) {
+        int servings = InputValidation.getValidInt("How many servings?");
+        mainStorage.cookRecipe(recipe, servings);
+        System.out.println("Enjoy your " + recipe.getNameOfRecipe() + "!");
+      }
+    } catch (IllegalArgumentException e) {
+      System.out.println(e.getMessage());
     }
+  }
 
+  private void checkForAllAvailableRecipes() {
     // Fetch all recipes that can be made
     List<Recipe> availableRecipes = recipeBook.getAvailableRecipes(mainStorage);
 
@@ -360,17 +401,74 @@ public class AppInterface {
       System.out.println("You do not have enough ingredients to make any recipes in the cookbook.");
     } else {
       System.out.println("Here are the recipes you can make with your current ingredients:\n");
+      Map<Recipe, Integer> servings = recipeBook.getMaxServings(mainStorage);
       for (Recipe recipe : availableRecipes) {
         System.out.println(recipe); // Print full recipe details using the overridden `toString`
+        System.out.println("Enough for " + servings.get(recipe) + " serving(s).");
         System.out.println();
       }
     }
   }
 
 
+  /**
+   * Asks the user for a number of days, and shows a recipe for each day that uses
+   * the groceries expiring first.
+   */
+
+  private void planMeals() {
+    int days = InputValidation.getValidInt("How many days do you want to plan for?");
+
+    try {
+      System.out.println(recipeBook.planMeals(mainStorage, days));
+    } catch (IllegalArgumentException e) {
+      System.out.println(e.getMessage());
+    }
+  }
+
+
+  /**
+   * Closes the journal, saving the recipes with the storage for the next time the program starts.
+   */
+  private void closeJournal() {
+    if (journal == null) {
+      return;
+    }
+    try {
+      journal.close();
+    } catch (IOException e) {
+      System.out.println("Could not save the storage: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Opens the journal holding the storage and the recipes from the last time the program ran.
+   *
+   * @return true if they were loaded, false if there is nothing saved or it could not be read
+   */
+  private boolean openJournal() {
+    try {
+      journal = StorageJournal.open(DATA_DIRECTORY, JournalSync.FSYNC);
+      mainStorage = journal.getStorage();
+      recipeBook = journal.getRecipeBook();
+      return !mainStorage.sortGroceries().isEmpty() || !recipeBook.getRecipes().isEmpty();
+    } catch (IOException e) {
+      System.out.println("Could not load the saved storage, changes will not be saved: "
+          + e.getMessage());
+      return false;
+    }
+  }
+
   private void init() {
-    mainStorage = new FoodStorage();
-    recipeBook = new RecipeBook();
+    if (openJournal()) {
+      // moves groceries that expired while the program was closed, and then every day
+      mainStorage.startExpirySweeper();
+      return;
+    }
+    if (journal == null) {
+      mainStorage = new FoodStorage();
+      recipeBook = new RecipeBook();
+    }
 
     // DUMMY VALUES----------------
 
@@ -431,13 +529,10 @@ public class AppInterface {
         new Grocery("Flour", 40.0, 3000.0, "g", LocalDate.of(2025, 7, 30)) // 3kg = 3000g
     );
 
-    for (Grocery g : groceryList) {
-      mainStorage.registerToStorage(g);
-    }
+    mainStorage.registerAll(groceryList);
 
-    // automatically filters and removes expired groceries when initiated
-    mainStorage.filterAndGroupExpiredGroceries();
-    mainStorage.removeExpiredGroceries();
+    // moves expired groceries now, and again at the start of every day
+    mainStorage.startExpirySweeper();
 
     // Recipes
     Map<String, IngredientDetail> spaghettiIngredients = new HashMap<>();
@@ -0,0 +1,148 @@
+package edu.ntnu.idi.idatt.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * The batches of a {@link FoodStorage} in order of expiry date, then name, then unit,
+ * so date-range queries are answered by a range scan instead of visiting every grocery item.
+ *
+ * <p>The batches are grouped by the day they expire: a {@link ConcurrentSkipListMap} maps each
+ * day to a sorted array of the batches expiring that day. Finding a day costs time logarithmic
+ * in the number of days, which stays small however many batches are stored, and a batch is
+ * then added or removed by copying that day's array. Many batches are added with a single
+ * copy per day, see {@link #addAll(Grocery[])}, which is what makes a bulk load cheap.
+ * </p>
+ *
+ * <p>An array is never changed once it is in the map; a change replaces it with a changed copy,
+ * so a read never sees half a change to a day. Changes to the same day made by different threads
+ * are retried until one does not overlap another. The class is thread-safe, but a read across
+ * several days may see some changes made meanwhile and not others; {@link FoodStorage}
+ * validates such reads against its locks.
+ * </p>
+ */
+class ExpiryIndex {
+
+  private static final Comparator<Grocery> SAME_DAY_ORDER =
+      Comparator.comparing(Grocery::getName).thenComparing(Grocery::getStandardUnit);
+
+  private final ConcurrentNavigableMap<Long, Grocery[]> days = new ConcurrentSkipListMap<>();
+
+  /**
+   * Adds a batch. No other batch of the same name may expire the same day in the same unit.
+   *
+   * @param batch the batch to add
+   */
+  void add(Grocery batch) {
+    days.merge(batch.getExpiryEpochDay(), new Grocery[] {batch}, ExpiryIndex::merge);
+  }
+
+  /**
+   * Adds many batches, replacing the array of each day once. The batches of each day are
+   * sorted first, which takes linear time when they are already in order.
+   *
+   * @param batches the batches to add, in order of expiry date
+   */
+  void addAll(Grocery[] batches) {
+    int start = 0;
+    while (start < batches.length) {
+      long day = batches[start].getExpiryEpochDay();
+      int end = start + 1;
+      while (end < batches.length && batches[end].getExpiryEpochDay() == day) {
+        end++;
+      }
+
+      Grocery[] run = Arrays.copyOfRange(batches, start, end);
+      Arrays.sort(run, SAME_DAY_ORDER);
+      days.merge(day, run, ExpiryIndex::merge);
+      start = end;
+    }
+  }
+
+  /**
+   * Removes a batch.
+   *
+   * @param batch the batch to remove
+   */
+  void remove(Grocery batch) {
+    days.computeIfPresent(batch.getExpiryEpochDay(), (day, batches) -> {
+      int index = indexOf(batches, batch);
+      if (index < 0) {
+        return batches;
+      }
+      if (batches.length == 1) {
+        return null;
+      }
+      Grocery[] remaining = new Grocery[batches.length - 1];
+      System.arraycopy(batches, 0, remaining, 0, index);
+      System.arraycopy(batches, index + 1, remaining, index, remaining.length - index);
+      return remaining;
+    });
+  }
+
+  /**
+   * Checks whether a batch is in the index. The batch is compared by identity, so a batch
+   * equal to it that was removed meanwhile does not count.
+   *
+   * @param batch the batch to look for
+   * @return {@code true} if the batch is in the index
+   */
+  boolean contains(Grocery batch) {
+    Grocery[] batches = days.get(batch.getExpiryEpochDay());
+    return batches != null && indexOf(batches, batch) >= 0;
+  }
+
+  /**
+   * Returns the batches expiring on or after one day and before another, in index order.
+   *
+   * @param fromDay the first expiry day to include, as an epoch day number
+   * @param untilDay the expiry day to stop at (exclusive), as an epoch day number
+   * @return a read-only list of the batches
+   */
+  List<Grocery> between(long fromDay, long untilDay) {
+    List<Grocery> batches = new ArrayList<>();
+    if (fromDay < untilDay) {
+      for (Grocery[] day : days.subMap(fromDay, untilDay).values()) {
+        batches.addAll(Arrays.asList(day));
+      }
+    }
+    return Collections.unmodifiableList(batches);
+  }
+
+  /**
+   * Helper method for finding a batch in the sorted array of a day.
+   *
+   * @param batches the batches expiring that day
+   * @param batch the batch to find
+   * @return the index of the batch, or a negative number if it is not in the array
+   */
+  private static int indexOf(Grocery[] batches, Grocery batch) {
+    int index = Arrays.binarySearch(batches, batch, SAME_DAY_ORDER);
+    return index >= 0 && batches[index] == batch ? index : -1;
+  }
+
+  /**
+   * Helper method for merging two sorted arrays of batches expiring the same day.
+   *
+   * @param stored the batches in the index
+   * @param added the batches to add
+   * @return a new sorted array holding the batches of both
+   */
+  private static Grocery[] merge(Grocery[] stored, Grocery[] added) {
+    Grocery[] merged = new Grocery[stored.length + added.length];
+    int i = 0;
+    int j = 0;
+    int next = 0;
+    while (i < stored.length && j < added.length) {
+      merged[next++] = SAME_DAY_ORDER.compare(added[j], stored[i]) < 0 ? added[j++] : stored[i++];
+    }
+    System.arraycopy(stored, i, merged, next, stored.length - i);
+    System.arraycopy(added, j, merged, next + stored.length - i, added.length - j);
+    return merged;
+  }
+}
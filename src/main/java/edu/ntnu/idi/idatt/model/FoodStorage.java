@@ -1,16 +1,34 @@
 package edu.ntnu.idi.idatt.model;
 
+import edu.ntnu.idi.idatt.utils.DayClock;
 import edu.ntnu.idi.idatt.utils.ExceptionHandling;
+import edu.ntnu.idi.idatt.utils.NameSearchIndex;
+import edu.ntnu.idi.idatt.utils.Unit;
 import edu.ntnu.idi.idatt.utils.UnitConverter;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
 
 
 
@@ -31,23 +49,343 @@ import java.util.TreeMap;
  * <p>This class is suitable for handling household inventory
  * or tracking stock in smaller-scale food-related systems.
  * </p>
+ *
+ * <p>A {@code FoodStorage} can be shared between threads. Each grocery item is guarded by one of
+ * a fixed set of striped locks, chosen by the item name, so threads working on different
+ * groceries do not wait for each other. The maps and the value totals shared by all
+ * groceries are concurrent structures that do not need a lock.
+ * </p>
+ *
+ * <p>The locks are {@link StampedLock}s, and the query methods read optimistically: they read
+ * without taking a lock and then check that no write happened in the meantime. Only if a write
+ * got in the way is the read repeated while holding the lock, so reads in a mostly-read
+ * workload neither block writers nor each other.
+ * </p>
  */
 
 public class FoodStorage {
 
   /**
    * A map to store groceries by their name,
-   * where each grocery name maps to a list of grocery items.
+   * where each grocery name maps to its batches in order of expiry date.
+   * The names are kept in alphabetical order.
+   */
+
+  private final SortedMap<String, GroceryBatches> storage;
+
+  /**
+   * A read-only view of {@code storage}, handed out by {@link #sortGroceries()}.
    */
 
-  private final Map<String, List<Grocery>> storage = new HashMap<>();
+  private final SortedMap<String, List<Grocery>> sortedView;
 
   /**
    * A map to store the expired groceries by their name,
    * where each grocery name maps to a list of grocery items.
+   * The names are kept in alphabetical order.
+   */
+
+  private final SortedMap<String, List<Grocery>> expiredStorage;
+
+  /**
+   * A read-only view of {@code expiredStorage}, handed out by
+   * {@link #filterAndGroupExpiredGroceries()}.
+   */
+
+  private final Map<String, List<Grocery>> expiredView;
+
+  /**
+   * A secondary index over {@code storage}, ordering every batch by its expiry date.
+   * Date-range queries are answered as range scans on this index
+   * instead of scanning every list in {@code storage}.
+   */
+
+  private final ExpiryIndex expiryIndex;
+
+  /**
+   * Running value totals for {@code storage} and {@code expiredStorage}. Every method that
+   * changes the storages updates these, together with the totals of each
+   * {@link GroceryBatches}, so the value queries do not have to visit every batch.
+   */
+
+  private final ValueTotals storageTotals = new ValueTotals();
+  private final ValueTotals expiredTotals = new ValueTotals();
+
+  /**
+   * The names of the groceries in {@code storage} and {@code expiredStorage}, searchable by
+   * the start of the name or by a misspelled name. A name is added when its key appears in
+   * the storage and removed when it disappears, while holding the item's lock.
+   */
+
+  private final NameSearchIndex<String> storageNames = new NameSearchIndex<>();
+  private final NameSearchIndex<String> expiredNames = new NameSearchIndex<>();
+
+  /**
+   * The striped locks guarding the grocery items, see {@link #lockFor(String)}.
+   */
+
+  private static final int LOCK_STRIPES = 64;
+  private final StampedLock[] locks = new StampedLock[LOCK_STRIPES];
+
+  /**
+   * The executor running the expiry sweeper, or {@code null} if it is not running.
+   */
+
+  private ScheduledExecutorService sweeper;
+
+  /**
+   * The listeners told about changes, see {@link #addListener(StorageListener)}.
+   */
+
+  private final List<StorageListener> listeners = new CopyOnWriteArrayList<>();
+
+  /**
+   * The clock telling which day it is, deciding which groceries have expired.
+   */
+
+  private final DayClock clock;
+
+  /**
+   * The journal every change is recorded in, or {@code null} if changes are not journaled,
+   * see {@link StorageJournal}. Records are appended while holding the locks of the items
+   * they change, so the records of each item are in the order the changes were made.
+   * A record is appended before its change is made, so a change the journal rejects, because
+   * it is closed or could not be written earlier, leaves the storage unchanged.
+   */
+
+  private volatile StorageJournal journal;
+
+  /**
+   * The position returned for a change that was not journaled.
+   */
+
+  private static final long NOT_JOURNALED = -1L;
+
+  /**
+   * Constructs an empty food storage, using the system clock to decide
+   * which groceries have expired.
+   */
+
+  public FoodStorage() {
+    this(DayClock.systemDefault());
+  }
+
+  /**
+   * Constructs an empty food storage, using the given clock to decide
+   * which groceries have expired.
+   *
+   * @param clock the clock telling which day it is
+   * @throws IllegalArgumentException if the clock is null
+   */
+
+  public FoodStorage(DayClock clock) {
+    this(clock, new ConcurrentSkipListMap<>(), new ConcurrentSkipListMap<>(), new ExpiryIndex());
+  }
+
+  /**
+   * Constructs a food storage around the given maps, which must be consistent with each other.
+   *
+   * @param clock the clock telling which day it is
+   * @param storage the batches of each grocery item, by lowercase name
+   * @param expiredStorage the expired batches of each grocery item, by lowercase name
+   * @param expiryIndex every batch in {@code storage}, in order of expiry date
+   * @throws IllegalArgumentException if the clock is null
+   */
+
+  private FoodStorage(DayClock clock, SortedMap<String, GroceryBatches> storage,
+      SortedMap<String, List<Grocery>> expiredStorage,
+      ExpiryIndex expiryIndex) {
+    ExceptionHandling.nullClock(clock);
+    this.clock = clock;
+    this.storage = storage;
+    this.sortedView = Collections.unmodifiableSortedMap(storage);
+    this.expiredStorage = expiredStorage;
+    this.expiredView = Collections.unmodifiableMap(expiredStorage);
+    this.expiryIndex = expiryIndex;
+
+    for (int i = 0; i < LOCK_STRIPES; i++) {
+      locks[i] = new StampedLock();
+    }
+  }
+
+  /**
+   * Constructs a food storage holding the given batches, such as those read from a snapshot
+   * written by {@link #readStorages(BiFunction)}. The batches are trusted and not validated.
+   * The names are already in order, and the batches are put in expiry order without sorting
+   * them by comparison, so the maps are filled in the order of their keys.
+   *
+   * @param clock the clock telling which day it is
+   * @param keys the lowercase names of the grocery items, in alphabetical order
+   * @param items the batches of each grocery item, by the position of its name
+   * @param expiredKeys the lowercase names of the expired grocery items, in alphabetical order
+   * @param expiredItems the expired batches of each grocery item, by the position of its name
+   * @return the food storage
+   * @throws IllegalArgumentException if the clock is null
+   */
+
+  static FoodStorage restore(DayClock clock, List<String> keys, List<GroceryBatches> items,
+      List<String> expiredKeys, List<List<Grocery>> expiredItems) {
+    ExpiryIndex expiryIndex = new ExpiryIndex();
+    expiryIndex.addAll(inExpiryOrder(items));
+
+    FoodStorage restored = new FoodStorage(clock, inKeyOrder(keys, items),
+        inKeyOrder(expiredKeys, expiredItems), expiryIndex);
+
+    for (int i = 0; i < keys.size(); i++) {
+      restored.storageTotals.addAll(items.get(i).getTotals());
+      restored.storageNames.put(keys.get(i), keys.get(i));
+    }
+    for (int i = 0; i < expiredKeys.size(); i++) {
+      expiredItems.get(i).forEach(restored.expiredTotals::add);
+      restored.expiredNames.put(expiredKeys.get(i), expiredKeys.get(i));
+    }
+    return restored;
+  }
+
+  /**
+   * Helper method for filling a map from keys that are already in order.
+   *
+   * @param keys the keys, in ascending order
+   * @param values the value of each key, by the position of the key
+   * @param <V> the type of the values
+   * @return the map
+   */
+
+  private static <V> ConcurrentSkipListMap<String, V> inKeyOrder(List<String> keys,
+      List<? extends V> values) {
+    ConcurrentSkipListMap<String, V> map = new ConcurrentSkipListMap<>();
+    for (int i = 0; i < keys.size(); i++) {
+      map.put(keys.get(i), values.get(i));
+    }
+    return map;
+  }
+
+  /**
+   * Helper method for putting the batches of the grocery items in order of expiry date.
+   *
+   * <p>The items are in order of name, so a stable sort by expiry date alone keeps them in
+   * order of name among the batches expiring on the same day, as the expiry index wants them.
+   * </p>
+   *
+   * @param items the batches of each grocery item, in order of name
+   * @return every batch, in order of expiry date
+   */
+
+  private static Grocery[] inExpiryOrder(List<? extends List<Grocery>> items) {
+    int count = items.stream().mapToInt(List::size).sum();
+    Grocery[] batches = new Grocery[count];
+
+    int next = 0;
+    for (List<Grocery> item : items) {
+      for (Grocery batch : item) {
+        batches[next++] = batch;
+      }
+    }
+    return sortByExpiryDate(batches);
+  }
+
+  /**
+   * Helper method for a stable sort of batches by expiry date, without comparing them.
+   *
+   * <p>The sort is a radix sort on the number of days each batch expires after the first one,
+   * one digit at a time. A digit has at most 16 bits, and no more than that number needs,
+   * so the sort is a single pass when the dates lie within about 180 years of each other,
+   * and a small one when they lie close together. It takes time linear in the number of
+   * batches either way.
+   * </p>
+   *
+   * @param batches the batches to sort
+   * @return the batches in order of expiry date, which may be the given array
+   */
+
+  private static Grocery[] sortByExpiryDate(Grocery[] batches) {
+    if (batches.length == 0) {
+      return batches;
+    }
+    long minDay = Long.MAX_VALUE;
+    long maxDay = Long.MIN_VALUE;
+    for (Grocery batch : batches) {
+      minDay = Math.min(minDay, batch.getExpiryEpochDay());
+      maxDay = Math.max(maxDay, batch.getExpiryEpochDay());
+    }
+
+    long range = maxDay - minDay;
+    int bits = Math.max(1, Math.min(16, Long.SIZE - Long.numberOfLeadingZeros(range)));
+    Grocery[] sorted = new Grocery[batches.length];
+    for (int shift = 0; shift < Long.SIZE && range >>> shift != 0; shift += bits) {
+      int[] starts = new int[(1 << bits) + 1];
+      for (Grocery batch : batches) {
+        starts[digit(batch, minDay, shift, bits) + 1]++;
+      }
+      for (int d = 0; d < 1 << bits; d++) {
+        starts[d + 1] += starts[d];
+      }
+      for (Grocery batch : batches) {
+        sorted[starts[digit(batch, minDay, shift, bits)]++] = batch;
+      }
+      Grocery[] swap = batches;
+      batches = sorted;
+      sorted = swap;
+    }
+    return batches;
+  }
+
+  /**
+   * Helper method for getting a digit of the number of days a batch expires after
+   * a given day.
+   *
+   * @param batch the batch
+   * @param minDay the day to count from
+   * @param shift the position of the digit, in bits
+   * @param bits the size of the digit, in bits
+   * @return the digit
+   */
+
+  private static int digit(Grocery batch, long minDay, int shift, int bits) {
+    return (int) ((batch.getExpiryEpochDay() - minDay) >>> shift) & ((1 << bits) - 1);
+  }
+
+  /**
+   * Reads both storages at one point in time between writes, such as for writing a snapshot.
+   * The read runs like a query: it may run a second time, under the locks, if a write got in
+   * the way, so it must not change any state outside of what it returns.
+   *
+   * @param read the read, given the batches of each grocery item and the expired batches
+   *             of each grocery item, both by lowercase name in alphabetical order
+   * @param <T> the type of the result
+   * @return the result of the read
+   */
+
+  <T> T readStorages(BiFunction<SortedMap<String, ? extends List<Grocery>>,
+      SortedMap<String, List<Grocery>>, T> read) {
+    return readAll(() -> read.apply(sortedView,
+        Collections.unmodifiableSortedMap(expiredStorage)));
+  }
+
+  /**
+   * Reads both storages like {@link #readStorages(BiFunction)}, but while holding every read
+   * lock, so no change is made while the read runs. The read runs exactly once, so it may change
+   * state that must match the storages at that point, such as starting a new journal file.
+   *
+   * @param read the read, given the same maps as in {@link #readStorages(BiFunction)}
+   * @param <T> the type of the result
+   * @return the result of the read
    */
 
-  private final Map<String, List<Grocery>> expiredStorage = new HashMap<>();
+  <T> T readStoragesExclusively(BiFunction<SortedMap<String, ? extends List<Grocery>>,
+      SortedMap<String, List<Grocery>>, T> read) {
+    long[] stamps = new long[LOCK_STRIPES];
+    for (int i = 0; i < LOCK_STRIPES; i++) {
+      stamps[i] = locks[i].readLock();
+    }
+    try {
+      return read.apply(sortedView, Collections.unmodifiableSortedMap(expiredStorage));
+    } finally {
+      for (int i = 0; i < LOCK_STRIPES; i++) {
+        locks[i].unlockRead(stamps[i]);
+      }
+    }
+  }
 
 
   /**
@@ -58,10 +396,11 @@ public class FoodStorage {
    * <p>If the key already exists:
    * <ul>
    *   <li>If a grocery with the same name and expiry date exists in the list,
-   *   their amounts are combined.</li>
+   *   their amounts and prices are combined.</li>
    *   <li>Otherwise, the new grocery is added to the list.</li>
    * </ul>
-   * After adding or updating, the list of groceries is sorted by their earliest expiry date.
+   * The list of groceries is kept sorted by earliest expiry date, so the matching batch is found
+   * with a binary search and a new batch is inserted at its sorted position.
    *
    * <p>@param groceryToAdd the grocery item to be added to the storage
    *
@@ -71,30 +410,120 @@ public class FoodStorage {
   public void registerToStorage(Grocery groceryToAdd) {
     ExceptionHandling.nullGrocery(groceryToAdd);
 
-    List<Grocery> groceries = storage.computeIfAbsent(
-        groceryToAdd.getName().toLowerCase(),
-        key -> new ArrayList<>());
+    String key = groceryToAdd.getName().toLowerCase();
+    JournalRecord record = newRecord();
+    StampedLock lock = lockFor(key);
+    long stamp = lock.writeLock();
+    long position;
 
-    // check if there's an existing grocery item with the same expiry date and unit.
-    groceries.stream()
-        .filter(g -> g.getExpiryDate()
-            .equals(groceryToAdd.getExpiryDate()) && g.getUnit().equals(groceryToAdd.getUnit()))
-        .findFirst()
-        .ifPresentOrElse(
-            existingGrocery -> existingGrocery.increaseAmount(groceryToAdd.getAmount()),
-            () -> groceries.add(groceryToAdd));
+    try {
+      if (record != null) {
+        record.register(groceryToAdd);
+      }
+      position = append(record);
+
+      GroceryBatches groceries = storage.computeIfAbsent(key, k -> new GroceryBatches());
+      storageNames.put(key, key);
 
-    // Sort the groceries list by expiry date.
-    groceries.sort(Comparator.comparing(Grocery::getExpiryDate));
+      // check if there's an existing grocery item with the same expiry date and unit.
+      Grocery existingGrocery =
+          groceries.findBatch(groceryToAdd.getExpiryDate(), groceryToAdd.getStandardUnit());
+
+      if (existingGrocery != null) {
+        double priceBefore = existingGrocery.getPrice();
+        double valueBefore = existingGrocery.getRemainingValue();
+        existingGrocery.merge(groceryToAdd);
+        groceries.getTotals().batchChanged(priceBefore, valueBefore, existingGrocery);
+        storageTotals.batchChanged(priceBefore, valueBefore, existingGrocery);
+      } else {
+        groceries.insert(groceryToAdd);
+        expiryIndex.add(groceryToAdd);
+        groceries.getTotals().add(groceryToAdd);
+        storageTotals.add(groceryToAdd);
+      }
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+    notifyAfterDurable(position, List.of(key));
   }
 
 
+  /**
+   * Adds many grocery items to the storage at once.
+   *
+   * <p>The result is the same as calling {@link #registerToStorage(Grocery)} for each grocery
+   * in order, but the work is done once for the whole collection instead of once per grocery.
+   * The groceries are grouped by name, and the groceries of each item are sorted by expiry date
+   * without comparing them. Each grocery item is then merged with its stored batches in a single
+   * pass, and the new batches are added to the expiry index with one change per expiry day.
+   * The cost is linear in the number of groceries and of the stored batches of their items.
+   * </p>
+   *
+   * <p>The locks of all the items are held for the whole operation, and the groceries are
+   * journaled as one record, so the groceries are either all added or, if the journal
+   * rejects the record, none of them are.
+   * </p>
+   *
+   * @param groceries the grocery items to be added to the storage
+   * @throws IllegalArgumentException if the collection or any grocery in it is null
+   */
+
+  public void registerAll(Collection<Grocery> groceries) {
+    ExceptionHandling.nullGroceries(groceries);
+
+    Map<String, List<Grocery>> groceriesByName = new HashMap<>();
+    for (Grocery grocery : groceries) {
+      groceriesByName.computeIfAbsent(grocery.getName().toLowerCase(), k -> new ArrayList<>())
+          .add(grocery);
+    }
+    List<String> keys = new ArrayList<>(groceriesByName.keySet());
+    Collections.sort(keys);
+
+    // The sort is stable, so groceries with the same expiry date keep their order
+    for (String key : keys) {
+      List<Grocery> item = groceriesByName.get(key);
+      groceriesByName.put(key, Arrays.asList(sortByExpiryDate(item.toArray(new Grocery[0]))));
+    }
+
+    // Locks are taken in stripe order, so two threads changing several items cannot deadlock
+    int[] stripes = keys.stream().mapToInt(this::stripeOf).distinct().sorted().toArray();
+    long[] stamps = new long[stripes.length];
+    for (int i = 0; i < stripes.length; i++) {
+      stamps[i] = locks[stripes[i]].writeLock();
+    }
+    JournalRecord record = newRecord();
+    long position;
+
+    try {
+      if (record != null) {
+        keys.forEach(key -> groceriesByName.get(key).forEach(record::register));
+      }
+      position = append(record);
+
+      // The new batches of each item are in order of expiry date, and the items in order of name
+      List<List<Grocery>> inserted = new ArrayList<>(keys.size());
+      for (String key : keys) {
+        GroceryBatches batches = storage.computeIfAbsent(key, k -> new GroceryBatches());
+        storageNames.put(key, key);
+        inserted.add(batches.mergeAll(groceriesByName.get(key), storageTotals));
+      }
+      expiryIndex.addAll(inExpiryOrder(inserted));
+    } finally {
+      for (int i = stripes.length - 1; i >= 0; i--) {
+        locks[stripes[i]].unlockWrite(stamps[i]);
+      }
+    }
+    notifyAfterDurable(position, keys);
+  }
+
   /**
    * Removes a specified amount of a grocery from the storage.
    *
    * <p>The removal prioritizes items with the earliest expiry date first.
    * If the amount to remove exceeds the available quantity of a single item,
    * it continues to the next item in the list until the amount is fully removed.
+   * Each used-up batch is taken off the head of the item's {@link GroceryBatches} in constant
+   * time, so the removal costs time in proportion to the number of batches it touches.
    *
    * <p>If all items of a grocery are removed, the grocery is also removed from the storage.
    *
@@ -109,51 +538,137 @@ public class FoodStorage {
 
   public void removeAmountFromStorage(String groceryToRemove, double amount, String unit) {
     ExceptionHandling.validateName(groceryToRemove);
-    ExceptionHandling.validateStorageContainsItem(storage, groceryToRemove);
-    ExceptionHandling.validateAmount(amount);
-    ExceptionHandling.validateUnitCompatibility(unit, groceryToRemove, storage);
 
-    amount = UnitConverter.convertUnitAmount(amount, unit);
+    String key = groceryToRemove.toLowerCase();
+    JournalRecord record = newRecord();
+    StampedLock lock = lockFor(key);
+    long stamp = lock.writeLock();
+    long position;
 
-    // Add exception handling after the amount is normalized and converted
-    ExceptionHandling.validateAmountToRemove(storage, amount, groceryToRemove);
+    try {
+      ExceptionHandling.validateStorageContainsItem(storage, groceryToRemove);
+      ExceptionHandling.validateAmount(amount);
+      ExceptionHandling.validateUnitCompatibility(unit, groceryToRemove, storage);
 
-    String key = groceryToRemove.toLowerCase();
-    List<Grocery> itemsToRemove = storage.get(key);
-    Iterator<Grocery> it = itemsToRemove.iterator();
+      long scaledAmount = UnitConverter.convertToScaledAmount(amount, unit);
+      Unit standardUnit = UnitConverter.getStandardUnitOf(unit);
 
-    while (it.hasNext() && amount > 0) {
-      Grocery item = it.next();
-      double currentAmount = item.getAmount();
+      // Add exception handling after the amount is normalized and converted
+      ExceptionHandling.validateAmountToRemove(storage, scaledAmount, standardUnit,
+          groceryToRemove);
 
-      if (amount >= currentAmount) {
-        amount -= currentAmount;
-        it.remove();
-      } else {
-        item.decreaseAmount(amount);
-        amount = 0;
+      if (record != null) {
+        record.consume(key, scaledAmount, standardUnit);
+      }
+      position = append(record);
+
+      if (consume(key, scaledAmount, standardUnit)) {
+        System.out.println("you are out of: " + groceryToRemove);
       }
+    } finally {
+      lock.unlockWrite(stamp);
     }
+    notifyAfterDurable(position, List.of(key));
+  }
 
-    if (itemsToRemove.isEmpty()) {
-      storage.remove(key);
-      System.out.println("you are out of: " + groceryToRemove);
+  /**
+   * Cooks a recipe, removing the ingredients for the given number of servings from the storage.
+   *
+   * <p>The recipe's ingredient amounts are multiplied by {@code servings}. Every ingredient is
+   * checked before any of them is removed, so the recipe is either cooked in full or the storage
+   * is left unchanged. Each ingredient is then removed like in
+   * {@link #removeAmountFromStorage(String, double, String)}, earliest expiry date first.
+   * </p>
+   *
+   * <p>The locks of all the recipe's ingredients are held for the whole operation, so no other
+   * thread sees the storage with only some of the ingredients removed.
+   * Groceries that are not in the recipe are not locked.
+   * </p>
+   *
+   * @param recipe the recipe to cook
+   * @param servings the number of servings to cook
+   *
+   * @throws IllegalArgumentException if the recipe is null, the number of servings is not
+   *         positive, or an ingredient is missing, has an incompatible unit,
+   *         or is not available in the required amount
+   */
+
+  public void cookRecipe(Recipe recipe, int servings) {
+    ExceptionHandling.nullRecipe(recipe);
+    ExceptionHandling.validateServings(servings);
+
+    Set<String> keys = new LinkedHashSet<>();
+    for (String ingredientName : recipe.getIngredients().keySet()) {
+      keys.add(ingredientName.toLowerCase());
+    }
+
+    // Locks are taken in stripe order, so two threads cooking at once cannot deadlock
+    int[] stripes = keys.stream().mapToInt(this::stripeOf).distinct().sorted().toArray();
+    long[] stamps = new long[stripes.length];
+    for (int i = 0; i < stripes.length; i++) {
+      stamps[i] = locks[stripes[i]].writeLock();
     }
+    JournalRecord record = newRecord();
+    long position;
+
+    try {
+      // Sum the required amounts per item, in the unit it is first listed in,
+      // as an item may be listed under names of different case
+      Map<String, Long> required = new LinkedHashMap<>();
+      Map<String, Unit> requiredUnits = new HashMap<>();
+      recipe.getIngredients().forEach((ingredientName, detail) -> {
+        ExceptionHandling.validateStorageContainsItem(storage, ingredientName);
+        ExceptionHandling.validateUnitCompatibility(detail.getUnit(), ingredientName, storage);
+
+        String key = ingredientName.toLowerCase();
+        Unit unit = requiredUnits.computeIfAbsent(key, k -> detail.getStandardUnit());
+        long amount = UnitConverter.convertScaledAmount(detail.getScaledAmount() * servings,
+            detail.getStandardUnit(), unit, key);
+        required.merge(key, amount, Long::sum);
+      });
+      required.forEach((key, amount) ->
+          ExceptionHandling.validateAmountToRemove(storage, amount, requiredUnits.get(key), key));
+
+      // All the ingredients go in one record, so a crash cannot leave the recipe half cooked
+      if (record != null) {
+        required.forEach((key, amount) -> record.consume(key, amount, requiredUnits.get(key)));
+      }
+      position = append(record);
+
+      required.forEach((key, amount) -> {
+        if (consume(key, amount, requiredUnits.get(key))) {
+          System.out.println("you are out of: " + key);
+        }
+      });
+    } finally {
+      for (int i = stripes.length - 1; i >= 0; i--) {
+        locks[stripes[i]].unlockWrite(stamps[i]);
+      }
+    }
+    notifyAfterDurable(position, keys);
   }
 
   /**
-   * Returns a `TreeMap` containing groceries sorted alphabetically by their names.
+   * Returns the groceries sorted alphabetically by their names.
+   *
+   * <p>The storage is a {@link ConcurrentSkipListMap}, which keeps its keys in natural
+   * (alphabetical) order, so this method returns a read-only live view of it instead of a copy.
+   * The view reflects later changes to the storage, and calling this method
+   * repeatedly costs nothing.
+   * </p>
    *
-   * <p>This method converts the internal `HashMap` storage into a `TreeMap`,
-   * which automatically sorts its keys in natural (alphabetical) order.
-   * This can be useful for displaying groceries in a consistent and sorted manner.
+   * <p>The view is only weakly consistent. Iterating over it never throws a
+   * {@link java.util.ConcurrentModificationException}, but it may or may not show groceries
+   * added or removed by other threads while it runs. The view does not take the item locks
+   * either, so a batch list in it may be seen halfway through a change made by another thread.
+   * Use {@link #findGroceriesByName(String)} for a consistent copy of one grocery's batches.
    * </p>
    *
-   * @return a `TreeMap` with groceries sorted alphabetically by name
+   * @return a read-only view of the groceries, sorted alphabetically by name
    */
 
-  public Map<String, List<Grocery>> sortGroceries() {
-    return new TreeMap<>(storage);
+  public SortedMap<String, List<Grocery>> sortGroceries() {
+    return sortedView;
   }
 
   /**
@@ -178,18 +693,27 @@ public class FoodStorage {
     ExceptionHandling.validateName(groceryName);
 
     String key = groceryName.toLowerCase();
-    Map<String, List<Grocery>> targetStorage = searchExpired
-        ? expiredStorage
-        : storage;
+    long today = clock.today();
 
-    // Filter groceries based on expiry status
-    List<Grocery> foundGroceries = targetStorage.getOrDefault(key, new ArrayList<>()).stream()
-        .filter(grocery -> searchExpired || !grocery.getExpiryDate().isBefore(LocalDate.now()))
-        .toList();
+    List<Grocery> foundGroceries = readItem(key, () -> {
+      List<Grocery> targetGroceries = searchExpired
+          ? expiredStorage.getOrDefault(key, new ArrayList<>())
+          : storage.getOrDefault(key, new GroceryBatches());
+
+      // Filter groceries based on expiry status
+      return targetGroceries.stream()
+          .filter(grocery -> searchExpired || !grocery.isExpiredOn(today))
+          .toList();
+    });
 
     String storageType = searchExpired ? "expired storage" : "storage";
     if (foundGroceries.isEmpty()) {
       System.out.printf("No groceries found in %s: %s%n", storageType, groceryName + "\n");
+
+      List<String> suggestions = suggestGroceryNames(groceryName.trim(), 5, searchExpired);
+      if (!suggestions.isEmpty()) {
+        System.out.println("Did you mean: " + String.join(", ", suggestions) + "?\n");
+      }
     } else {
       System.out.printf("Found %s for |%s|:%n",
           searchExpired ? "expired groceries" : "groceries in storage", groceryName);
@@ -202,6 +726,46 @@ public class FoodStorage {
   }
 
 
+  /**
+   * Returns the names of the groceries starting with the given text, ignoring case,
+   * in alphabetical order.
+   *
+   * @param prefix the start of the grocery names
+   * @param limit the largest number of names to return
+   * @param searchExpired whether to search the expired storage instead of the main storage
+   * @return at most {@code limit} lowercase grocery names
+   * @throws IllegalArgumentException if the text is null or the limit is not positive
+   */
+
+  public List<String> completeGroceryName(String prefix, int limit, boolean searchExpired) {
+    return (searchExpired ? expiredNames : storageNames).searchPrefix(prefix, limit);
+  }
+
+  /**
+   * Returns grocery names the user may have meant by the given text: first the names starting
+   * with it, then the names spelled like it, allowing a few typing errors,
+   * see {@link NameSearchIndex#searchFuzzy(String, int)}.
+   *
+   * @param text the text the user typed
+   * @param limit the largest number of names to return
+   * @param searchExpired whether to search the expired storage instead of the main storage
+   * @return at most {@code limit} distinct lowercase grocery names
+   * @throws IllegalArgumentException if the text is null or the limit is not positive
+   */
+
+  public List<String> suggestGroceryNames(String text, int limit, boolean searchExpired) {
+    NameSearchIndex<String> names = searchExpired ? expiredNames : storageNames;
+    Set<String> suggestions = new LinkedHashSet<>(names.searchPrefix(text, limit));
+
+    for (String name : names.searchFuzzy(text, limit)) {
+      if (suggestions.size() == limit) {
+        break;
+      }
+      suggestions.add(name);
+    }
+    return new ArrayList<>(suggestions);
+  }
+
   /**
    * Returns a list of groceries that expire before the specified date.
    *
@@ -213,11 +777,7 @@ public class FoodStorage {
   public List<Grocery> bestBefore(LocalDate date) {
     ExceptionHandling.validateExpiryDate(date);
 
-    List<Grocery> beforeDate =
-        storage.values().stream()
-            .flatMap(List::stream)
-            .filter(bestBefore -> bestBefore.getExpiryDate().isBefore(date))
-            .toList();
+    List<Grocery> beforeDate = groceriesExpiringBetween(LocalDate.MIN, date);
 
     if (beforeDate.isEmpty()) {
       System.out.println("No groceries found with a best-before date for the following date: "
@@ -231,99 +791,253 @@ public class FoodStorage {
   }
 
   /**
-   * Computes the total monetary value of all groceries stored.
+   * Returns the groceries in storage with an expiry date in the given range,
+   * ordered by expiry date and then by name.
    *
-   * <p>This method processes all grocery items within the `storage` map, which organizes
-   * groceries into lists. The total value is calculated by summing the results of
-   * {@link Grocery#getPrice()} for each grocery item. If the storage is empty,
-   * the method returns {@code 0.0}.</p>
+   * <p>The lookup is a range scan on the expiry index, so its cost depends on the number
+   * of matching batches rather than on the total number of batches in storage.
+   * </p>
+   *
+   * @param from the first expiry date to include
+   * @param until the expiry date to stop at (exclusive)
+   * @return a list of groceries expiring on or after {@code from} and before {@code until}
+   * @throws IllegalArgumentException if either date is null
+   */
+
+  public List<Grocery> groceriesExpiringBetween(LocalDate from, LocalDate until) {
+    ExceptionHandling.validateExpiryDate(from);
+    ExceptionHandling.validateExpiryDate(until);
+
+    if (!from.isBefore(until)) {
+      return new ArrayList<>();
+    }
+
+    return readAll(() -> expiryIndex.between(from.toEpochDay(), until.toEpochDay()));
+  }
+
+  /**
+   * Returns the total monetary value of all groceries stored.
+   *
+   * <p>The total value is the sum of {@link Grocery#getPrice()} for each grocery item,
+   * kept up to date as groceries are added and removed, so no batches are visited.
+   * The total is kept in whole øre, so it does not drift as batches come and go.
+   * If the storage is empty, the method returns {@code 0.0}.</p>
    *
    * @return the total value of all groceries as a {@code double}.
    */
 
   public double totalValueOfGroceries() {
-    return storage.values().stream()
-        .flatMap(List::stream)
-        .mapToDouble(Grocery::getPrice)
-        .sum();
+    return totalValueOfGroceries(ValuationMode.FULL_PRICE);
+  }
+
+  /**
+   * Returns the total monetary value of all groceries stored, using the given valuation mode.
+   *
+   * <p>With {@link ValuationMode#REMAINING_FRACTION}, partly used batches only count with
+   * the part of their price matching what is left of them.</p>
+   *
+   * @param mode how each batch is valued
+   * @return the total value of all groceries as a {@code double}.
+   */
+
+  public double totalValueOfGroceries(ValuationMode mode) {
+    return readAll(() -> storageTotals.get(mode));
+  }
+
+  /**
+   * Returns the total monetary value of one grocery item in storage.
+   *
+   * @param groceryName the name of the grocery
+   * @param mode how each batch is valued
+   * @return the total value of all batches of the grocery,
+   *         or {@code 0.0} if the grocery is not in storage
+   * @throws IllegalArgumentException if the grocery name is null or empty
+   */
+
+  public double totalValueOfGrocery(String groceryName, ValuationMode mode) {
+    ExceptionHandling.validateName(groceryName);
+
+    String key = groceryName.toLowerCase();
+
+    return readItem(key, () -> {
+      GroceryBatches groceries = storage.get(key);
+      return groceries == null ? 0.0 : groceries.getTotals().get(mode);
+    });
+  }
+
+  /**
+   * Moves every expired grocery batch from the storage to the expired storage.
+   *
+   * <p>The expiry index keeps the batches ordered by expiry date like a priority queue,
+   * so the expired batches are exactly the ones at its head. Only those are visited,
+   * which makes a move of {@code k} expired batches cost {@code O(k log d)} for {@code d}
+   * expiry dates in storage, plus the copying of each date's batches described in
+   * {@link ExpiryIndex}. Batches that were already moved are not in the index any more,
+   * so calling this method again only moves batches that expired since.
+   * A grocery is considered expired if its expiry date is before today,
+   * matching {@link Grocery#isExpired(DayClock)} with the clock of this storage.
+   * </p>
+   *
+   * @return the number of batches moved
+   */
+
+  public int moveExpiredGroceries() {
+    Set<String> movedKeys = new LinkedHashSet<>();
+    int moved = 0;
+    long position = NOT_JOURNALED;
+
+    try {
+      // Loop variable grocery for each expired batch in the index.
+      for (Grocery grocery : expiredBatches()) {
+        String key = grocery.getName().toLowerCase();
+        StampedLock lock = lockFor(key);
+        long stamp = lock.writeLock();
+
+        try {
+          GroceryBatches groceryList = storage.get(key);
+
+          // Skip batches another thread removed since they were looked up
+          if (groceryList != null && expiryIndex.contains(grocery)) {
+            JournalRecord record = newRecord();
+            if (record != null) {
+              record.expire(grocery);
+            }
+            position = append(record);
+
+            moveToExpired(key, groceryList, grocery);
+            movedKeys.add(key);
+            moved++;
+          }
+        } finally {
+          lock.unlockWrite(stamp);
+        }
+      }
+    } finally {
+      notifyAfterDurable(position, movedKeys);
+    }
+    return moved;
+  }
+
+  /**
+   * Starts a background sweeper that moves expired groceries to the expired storage every day.
+   *
+   * <p>The groceries that have already expired are moved before this method returns.
+   * After that, the sweeper runs {@link #moveExpiredGroceries()} on a daemon thread
+   * at the start of each day, so callers no longer need to move expired groceries themselves.
+   * Starting a sweeper that is already running has no effect.
+   * </p>
+   */
+
+  public synchronized void startExpirySweeper() {
+    if (sweeper != null) {
+      return;
+    }
+
+    sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "expiry-sweeper");
+      thread.setDaemon(true);
+      return thread;
+    });
+    moveExpiredGroceries();
+    scheduleNextSweep(sweeper);
+  }
+
+  /**
+   * Stops the background sweeper started by {@link #startExpirySweeper()}, if it is running.
+   */
+
+  public synchronized void stopExpirySweeper() {
+    if (sweeper != null) {
+      sweeper.shutdownNow();
+      sweeper = null;
+    }
+  }
+
+  /**
+   * Adds a listener that is told whenever the stock of a grocery in this storage changes.
+   *
+   * @param listener the listener to add
+   * @throws IllegalArgumentException if the listener is null
+   */
+
+  public void addListener(StorageListener listener) {
+    ExceptionHandling.nullListener(listener);
+    listeners.add(listener);
+  }
+
+  /**
+   * Removes a listener added with {@link #addListener(StorageListener)}.
+   *
+   * @param listener the listener to remove
+   */
+
+  public void removeListener(StorageListener listener) {
+    listeners.remove(listener);
   }
 
   /**
    * Removes all expired groceries from the storage.
    *
-   * <p>This method iterates through the {@code storage} map and removes expired items from each
-   * {@code List<Grocery>} using {@link List#removeIf(java.util.function.Predicate)}. A grocery is
-   * considered expired if {@link Grocery#isExpired()} returns {@code true}.</p>
+   * <p>The expired batches are moved to the expired storage through
+   * {@link #moveExpiredGroceries()}, so only batches that expired since the last move are
+   * visited, and calling this method repeatedly does not change the storage any further.</p>
    *
    * <p>After execution, the {@code storage} map will only contain non-expired groceries, while
    * maintaining the structure of the map itself.</p>
-   *
-   * <p><b>Note:</b> Ensure that the {@code isExpired} method correctly identifies expired groceries
-   * for accurate removal.</p>
    */
 
   public void removeExpiredGroceries() {
-    //Loop variable groceryList for each list in storage.
-    for (List<Grocery> groceryList : storage.values()) {
-      groceryList.removeIf(Grocery::isExpired);
-    }
+    moveExpiredGroceries();
   }
 
   /**
    * Filters and groups expired groceries by name.
    *
-   * <p>This method scans the {@code storage} map to identify groceries that have expired,
-   * as determined by {@link Grocery#isExpired()}.
+   * <p>Groceries that have expired, as determined by {@link Grocery#isExpired(DayClock)},
+   * are first moved to the expired storage through {@link #moveExpiredGroceries()}.
+   * Each grocery is moved only once, so calling this method repeatedly does not add
+   * the same grocery to the expired storage again.
    * </p>
    *
-   * <p>All expired items are then grouped by their
+   * <p>All expired items are grouped by their
    *    lowercase name in the {@code expiredGroceries} map, ensuring case-insensitive organization.
    *    Each key in the map represents a grocery name (in lowercase), and the value is a list of
    *    expired items with that name.
    * </p>
    *
-   * <p>This method ensures that expired groceries are efficiently organized for further
-   * processing, while leaving the original {@code storage} map unmodified.</p>
-   *
-   * @return a map where keys are grocery names
+   * @return a read-only view of the expired storage, where keys are grocery names
    *        (in lowercase) and values are lists of expired groceries.
    *
    */
 
   public Map<String, List<Grocery>> filterAndGroupExpiredGroceries() {
-    // Temporary list to store expired groceries
-    List<Grocery> listOfExpiredGroceries = new ArrayList<>();
-
-    storage.values().stream()
-        .flatMap(List::stream)
-        .filter(Grocery::isExpired)
-        .forEach(listOfExpiredGroceries::add);
-
-    // Computes a new entry for each expired grocery
-    listOfExpiredGroceries.forEach(grocery ->
-        expiredStorage.computeIfAbsent(grocery.getName().toLowerCase(),
-            k -> new ArrayList<>()).add(grocery)
-    );
-
-    return expiredStorage;
+    moveExpiredGroceries();
+    return expiredView;
   }
 
   /**
-   * Calculates the total value of all expired groceries in the expired storage.
+   * Returns the total value of all expired groceries in the expired storage.
    *
-   * <p>Filters expired groceries from the {@code storage} using {@link Grocery#isExpired()},
-   * retrieves their prices using {@link Grocery#getPrice()}, and sums them up to return the
-   * total value of expired groceries.
+   * <p>The total is the sum of {@link Grocery#getPrice()} for every grocery moved to the
+   * expired storage, kept up to date as groceries are moved, so no batches are visited.
    *
    * @return the total sum of prices of all expired groceries as a {@code double}.
    */
 
   public double totalValueOfExpiredGroceries() {
-    return expiredStorage.values().stream()
-        .flatMap(List::stream)
-        .filter(Grocery::isExpired)
-        .mapToDouble(Grocery::getPrice)
-        .sum();
+    return totalValueOfExpiredGroceries(ValuationMode.FULL_PRICE);
+  }
+
+  /**
+   * Returns the total value of all expired groceries in the expired storage,
+   * using the given valuation mode.
+   *
+   * @param mode how each batch is valued
+   * @return the total value of all expired groceries as a {@code double}.
+   */
+
+  public double totalValueOfExpiredGroceries(ValuationMode mode) {
+    return readAll(() -> expiredTotals.get(mode));
   }
 
 
@@ -350,12 +1064,12 @@ public class FoodStorage {
    * @return a formatted string representing the grocery information in a structured format.
    */
 
-  public String formatGroceries(Map<String, List<Grocery>> groceries) {
+  public String formatGroceries(Map<String, ? extends List<Grocery>> groceries) {
     DateTimeFormatter dateFormat = DateTimeFormatter.ofPattern("dd-MM-yyyy");
     StringBuilder sb = new StringBuilder();
 
     // Iterate through each entry in the groceries map
-    for (Map.Entry<String, List<Grocery>> entry : groceries.entrySet()) {
+    for (Map.Entry<String, ? extends List<Grocery>> entry : groceries.entrySet()) {
       String groceryName = entry.getKey();
       List<Grocery> groceryList = entry.getValue();
 
@@ -386,14 +1100,22 @@ public class FoodStorage {
    *
    * <p>If {@code sorted} is {@code true},
    * the groceries are displayed in alphabetical order by name.
-   * Otherwise, they are displayed in their original order.
+   * Otherwise, they are displayed in the order of the storage,
+   * which is also kept alphabetical.
    *
    * @param sorted whether to sort the groceries by name
    * @return a formatted string of all groceries with their details
    */
 
   public String toString(boolean sorted) {
-    Map<String, List<Grocery>> groceriesToDisplay = sorted ? sortGroceries() : storage;
+    // Copy each item consistently, so the display is not torn by concurrent changes
+    Map<String, List<Grocery>> groceriesToDisplay = new TreeMap<>();
+    for (String key : storage.keySet()) {
+      List<Grocery> groceries = findGroceriesByName(key);
+      if (!groceries.isEmpty()) {
+        groceriesToDisplay.put(key, groceries);
+      }
+    }
     return formatGroceries(groceriesToDisplay);
   }
 
@@ -422,12 +1144,524 @@ public class FoodStorage {
    * If the name is not found in storage, an empty list is returned.
    * </p>
    *
+   * <p>The list is a consistent copy of the grocery's batches, in order of expiry date.
+   * </p>
+   *
    * @param name the name of the grocery to search for
    * @return a list of groceries with the specified name, or an empty list if no groceries are found
    */
 
   public List<Grocery> findGroceriesByName(String name) {
-    return storage.getOrDefault(name.toLowerCase(), new ArrayList<>());
+    String key = name.toLowerCase();
+    return readItem(key, () -> List.copyOf(storage.getOrDefault(key, new GroceryBatches())));
+  }
+
+  /**
+   * Returns how much of a grocery is in storage, converted to the given standard unit.
+   *
+   * <p>Batches in a unit that cannot be converted to the given unit, such as pieces
+   * of a grocery asked for in grams, do not count. Unlike {@link #findGroceriesByName(String)},
+   * the batches are summed where they are, without copying them.
+   * </p>
+   *
+   * @param name the name of the grocery
+   * @param unit the standard unit to give the amount in
+   * @return the available amount, in thousandths of {@code unit}
+   */
+
+  long availableAmount(String name, Unit unit) {
+    String key = name.toLowerCase();
+    return readItem(key, () -> {
+      GroceryBatches batches = storage.get(key);
+      return batches == null ? 0L : UnitConverter.convertedAmount(batches, unit, key);
+    });
+  }
+
+  /**
+   * Returns the amounts in storage of every ingredient used by a recipe, indexed by the slots
+   * of {@link IngredientIds}. Each grocery is counted in every standard unit it can be
+   * converted to, so a recipe can look up the amount it needs by its slot alone,
+   * see {@link Recipe#canMakeWith(long[])}.
+   *
+   * <p>The amounts are read at one point in time between writes. Groceries that no recipe
+   * has used are left out, and ingredients that got their number after the call have no slot
+   * in the array; their amount is 0.
+   * </p>
+   *
+   * @return the available amounts, in thousandths of the standard unit of each slot
+   */
+
+  long[] availableAmounts() {
+    return availableAmounts(IngredientIds::findId, IngredientIds.idCount());
+  }
+
+  /**
+   * Returns the amounts in storage of the groceries that have a number in some numbering of
+   * ingredient names, like {@link #availableAmounts()} does for {@link IngredientIds}.
+   * The amount of the grocery numbered {@code id} in a unit is at
+   * {@code id * Unit.values().length + unit.ordinal()}.
+   *
+   * @param idOf gives the number of a lowercase grocery name, or -1 if it has none
+   * @param idCount one more than the largest number
+   * @return the available amounts, in thousandths of the standard unit of each position
+   */
+
+  long[] availableAmounts(ToIntFunction<String> idOf, int idCount) {
+    Unit[] units = Unit.values();
+
+    return readAll(() -> {
+      long[] amounts = new long[idCount * units.length];
+
+      for (Map.Entry<String, GroceryBatches> entry : storage.entrySet()) {
+        int id = idOf.applyAsInt(entry.getKey());
+        if (id < 0 || id >= idCount) {
+          continue;
+        }
+        for (Unit unit : units) {
+          amounts[id * units.length + unit.ordinal()] =
+              UnitConverter.convertedAmount(entry.getValue(), unit, entry.getKey());
+        }
+      }
+      return amounts;
+    });
+  }
+
+  /**
+   * Returns how much of each of the given groceries is in storage and has not expired,
+   * converted to the given standard units. Batches that have expired but have not been moved
+   * to the expired storage yet do not count, and neither do batches in a unit that cannot be
+   * converted. All the amounts are read at one point in time between writes.
+   *
+   * @param keys the lowercase names of the groceries
+   * @param units the standard unit to give each amount in, by the position of its grocery
+   * @return the amounts, by the position of the grocery, in thousandths of its unit
+   */
+
+  long[] freshAmounts(String[] keys, Unit[] units) {
+    long today = clock.today();
+
+    return readAll(() -> {
+      long[] amounts = new long[keys.length];
+
+      for (int i = 0; i < keys.length; i++) {
+        GroceryBatches batches = storage.get(keys[i]);
+        for (int b = 0; batches != null && b < batches.size(); b++) {
+          Grocery batch = batches.get(b);
+          if (!batch.isExpiredOn(today)
+              && UnitConverter.isConvertible(batch.getStandardUnit(), units[i], keys[i])) {
+            amounts[i] += UnitConverter.convertScaledAmount(batch.getScaledAmount(),
+                batch.getStandardUnit(), units[i], keys[i]);
+          }
+        }
+      }
+      return amounts;
+    });
+  }
+
+  /**
+   * Returns a copy of every batch in storage, read at one point in time between writes.
+   * The batches are copied while the storage is read, so later changes to them are not seen.
+   *
+   * @param copy makes a copy of a batch, and must not change any state,
+   *             since the read may be repeated
+   * @param <T> the type of the copies
+   * @return the copies, by lowercase grocery name, each list in order of expiry date
+   */
+
+  <T> Map<String, List<T>> copyBatches(Function<Grocery, T> copy) {
+    return readAll(() -> {
+      Map<String, List<T>> copies = new HashMap<>();
+
+      for (Map.Entry<String, GroceryBatches> entry : storage.entrySet()) {
+        List<T> batchCopies = new ArrayList<>(entry.getValue().size());
+        for (int i = 0; i < entry.getValue().size(); i++) {
+          batchCopies.add(copy.apply(entry.getValue().get(i)));
+        }
+        copies.put(entry.getKey(), batchCopies);
+      }
+      return copies;
+    });
+  }
+
+  /**
+   * Records every later change to this storage in a journal.
+   *
+   * @param journal the journal
+   */
+
+  void attachJournal(StorageJournal journal) {
+    this.journal = journal;
+  }
+
+  /**
+   * Removes an amount of a grocery item recorded in a journal, without validating it again.
+   * The item is skipped if it is not in storage.
+   *
+   * @param key the lowercase name of the grocery item
+   * @param amount the amount to remove, in thousandths of {@code unit}
+   * @param unit the standard unit of the amount
+   */
+
+  void replayConsume(String key, long amount, Unit unit) {
+    StampedLock lock = lockFor(key);
+    long stamp = lock.writeLock();
+
+    try {
+      if (storage.containsKey(key)) {
+        consume(key, amount, unit);
+      }
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  /**
+   * Moves a batch recorded in a journal to the expired storage, whether or not it has expired
+   * by the clock of this storage. The batch is skipped if it is not in storage.
+   *
+   * @param key the lowercase name of the grocery item
+   * @param expiryEpochDay the expiry date of the batch, as an epoch day number
+   * @param unit the standard unit of the batch
+   */
+
+  void replayExpire(String key, long expiryEpochDay, Unit unit) {
+    StampedLock lock = lockFor(key);
+    long stamp = lock.writeLock();
+
+    try {
+      GroceryBatches groceryList = storage.get(key);
+      Grocery grocery = groceryList == null
+          ? null : groceryList.findBatch(LocalDate.ofEpochDay(expiryEpochDay), unit);
+      if (grocery != null) {
+        moveToExpired(key, groceryList, grocery);
+      }
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  /**
+   * Returns the day it is by the clock of this storage.
+   *
+   * @return today, as days since the epoch
+   */
+
+  long today() {
+    return clock.today();
+  }
+
+  /**
+   * Helper method for getting the batches in the expiry index that expired before today.
+   *
+   * @return the expired batches, in order of expiry date
+   */
+
+  private List<Grocery> expiredBatches() {
+    return expiryIndex.between(Long.MIN_VALUE, clock.today());
+  }
+
+  /**
+   * Helper method for removing an amount of a grocery item, earliest expiry date first.
+   * Used-up batches are taken off the item's {@link GroceryBatches}, and the item
+   * is removed from the storage once it runs out.
+   *
+   * <p>The batches of an item may be in different units, such as flour stored both by weight
+   * and by volume. Each batch is converted to the unit of the amount before it is compared
+   * and used, and batches that cannot be converted to it are skipped, just like they do not
+   * count in {@link UnitConverter#convertedAmount(List, Unit, String)}.
+   * </p>
+   *
+   * <p>The caller must hold the item's write lock and have checked that the amount is available.
+   * </p>
+   *
+   * @param key the lowercase name of the grocery item
+   * @param amount the amount to remove, in thousandths of {@code unit}
+   * @param unit the standard unit of the amount
+   * @return {@code true} if the item ran out and was removed from the storage
+   */
+
+  private boolean consume(String key, long amount, Unit unit) {
+    GroceryBatches itemsToRemove = storage.get(key);
+    int index = 0;
+
+    while (index < itemsToRemove.size() && amount > 0) {
+      Grocery item = itemsToRemove.get(index);
+      Unit itemUnit = item.getStandardUnit();
+
+      if (!UnitConverter.isConvertible(itemUnit, unit, key)) {
+        index++;
+        continue;
+      }
+
+      long currentAmount =
+          UnitConverter.convertScaledAmount(item.getScaledAmount(), itemUnit, unit, key);
+      long usedAmount = amount >= currentAmount ? item.getScaledAmount() : Math.min(
+          UnitConverter.convertScaledAmount(amount, unit, itemUnit, key), item.getScaledAmount());
+      amount = amount >= currentAmount ? amount - currentAmount : 0;
+
+      if (usedAmount == item.getScaledAmount()) {
+        if (index == 0) {
+          itemsToRemove.pollFirst();
+        } else {
+          itemsToRemove.removeBatch(item);
+        }
+        expiryIndex.remove(item);
+        itemsToRemove.getTotals().remove(item);
+        storageTotals.remove(item);
+      } else {
+        double valueBefore = item.getRemainingValue();
+        item.decreaseScaledAmount(usedAmount);
+        itemsToRemove.getTotals().batchChanged(item.getPrice(), valueBefore, item);
+        storageTotals.batchChanged(item.getPrice(), valueBefore, item);
+      }
+    }
+
+    if (itemsToRemove.isEmpty()) {
+      storage.remove(key);
+      storageNames.remove(key);
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Helper method for moving a batch from the storage to the expired storage.
+   *
+   * <p>The caller must hold the item's write lock.
+   * </p>
+   *
+   * @param key the lowercase name of the grocery item
+   * @param groceryList the batches of the grocery item in storage
+   * @param grocery the batch to move, which must be in storage
+   */
+
+  private void moveToExpired(String key, GroceryBatches groceryList, Grocery grocery) {
+    groceryList.removeBatch(grocery);
+    expiryIndex.remove(grocery);
+    groceryList.getTotals().remove(grocery);
+    storageTotals.remove(grocery);
+
+    if (groceryList.isEmpty()) {
+      storage.remove(key);
+      storageNames.remove(key);
+    }
+
+    expiredStorage.computeIfAbsent(key, k -> new ArrayList<>()).add(grocery);
+    expiredNames.put(key, key);
+    expiredTotals.add(grocery);
   }
 
+  /**
+   * Helper method for scheduling the next run of the expiry sweeper at the start of tomorrow.
+   * Each run schedules the one after it, so the sweeper follows the calendar even on days
+   * that are shorter or longer than 24 hours.
+   *
+   * @param executor the sweeper's executor
+   */
+
+  private void scheduleNextSweep(ScheduledExecutorService executor) {
+    executor.schedule(() -> {
+      moveExpiredGroceries();
+      scheduleNextSweep(executor);
+    }, clock.millisUntilTomorrow(), TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Helper method for starting a journal record for a change.
+   *
+   * @return a new record, or {@code null} if changes are not journaled
+   */
+
+  private JournalRecord newRecord() {
+    return journal == null ? null : new JournalRecord();
+  }
+
+  /**
+   * Helper method for appending the record of a change to the journal.
+   * Must be called while holding the locks of the items the change was made to.
+   *
+   * @param record the record, or {@code null} if changes are not journaled
+   * @return the position to wait for with {@link #awaitDurable(long)}
+   */
+
+  private long append(JournalRecord record) {
+    return record == null ? NOT_JOURNALED : journal.append(record.toByteArray());
+  }
+
+  /**
+   * Helper method for waiting until the journal is written up to a position, as set by the
+   * {@link JournalSync} of the journal. Must be called after the locks are released, so other
+   * threads can append their records in the meantime and share the flush.
+   *
+   * @param position the position returned by {@link #append(JournalRecord)}
+   */
+
+  private void awaitDurable(long position) {
+    if (position != NOT_JOURNALED) {
+      journal.awaitDurable(position);
+    }
+  }
+
+  /**
+   * Helper method for waiting until the records of a change are durable, and then telling the
+   * listeners which groceries changed. The listeners are told even if the journal could not
+   * be written, since the change is still made to the storage in memory.
+   * Must be called after the locks are released.
+   *
+   * @param position the position returned by {@link #append(JournalRecord)} for the last record
+   * @param keys the lowercase names of the groceries that changed
+   * @throws java.io.UncheckedIOException if the journal cannot be written
+   */
+
+  private void notifyAfterDurable(long position, Collection<String> keys) {
+    try {
+      awaitDurable(position);
+    } finally {
+      keys.forEach(this::notifyListeners);
+    }
+  }
+
+  /**
+   * Helper method for telling the listeners that the stock of a grocery changed.
+   * Must be called after the grocery's lock is released, so the listeners can read it.
+   *
+   * @param key the lowercase name of the grocery that changed
+   */
+
+  private void notifyListeners(String key) {
+    for (StorageListener listener : listeners) {
+      listener.groceryChanged(this, key);
+    }
+  }
+
+  /**
+   * Helper method for getting the lock guarding a grocery item.
+   *
+   * <p>The locks are striped: every item name maps to one of {@value #LOCK_STRIPES} locks
+   * by its hash code, so groceries with different names rarely share a lock,
+   * without keeping a lock object per grocery.
+   * </p>
+   *
+   * @param key the lowercase name of the grocery item
+   * @return the lock guarding the grocery item
+   */
+
+  private StampedLock lockFor(String key) {
+    return locks[stripeOf(key)];
+  }
+
+  /**
+   * Helper method for getting the index of the lock stripe of a grocery item.
+   *
+   * @param key the lowercase name of the grocery item
+   * @return the index of the item's lock in {@code locks}
+   */
+
+  private int stripeOf(String key) {
+    int hash = key.hashCode();
+    return (hash ^ (hash >>> 16)) & (LOCK_STRIPES - 1);
+  }
+
+  /**
+   * Helper method for reading the state of one grocery item without taking its lock.
+   *
+   * <p>The read first runs optimistically, and its result is used if no write to the item's lock
+   * stripe happened meanwhile. A read that overlapped a write may have seen the batches halfway
+   * through a change, so it may also fail with an exception; in both cases it is repeated while
+   * holding the read lock.
+   * </p>
+   *
+   * @param key the lowercase name of the grocery item
+   * @param read the read to perform, which must not change any state
+   * @param <T> the type of the result
+   * @return the result of a read that did not overlap a write
+   */
+
+  private <T> T readItem(String key, Supplier<T> read) {
+    StampedLock lock = lockFor(key);
+    long stamp = lock.tryOptimisticRead();
+
+    if (stamp != 0L) {
+      try {
+        T result = read.get();
+        if (lock.validate(stamp)) {
+          return result;
+        }
+      } catch (RuntimeException e) {
+        // The read overlapped a write and saw inconsistent state, retry under the lock below
+      }
+    }
+
+    stamp = lock.readLock();
+    try {
+      return read.get();
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  /**
+   * Helper method for reading state shared by all grocery items without taking any lock,
+   * such as the expiry index and the value totals.
+   *
+   * <p>Works like {@link #readItem(String, Supplier)}, but validates the stamps of every lock
+   * stripe, so the result reflects a point in time between writes. If a write got in the way,
+   * the read is repeated while holding every read lock, taken in stripe order.
+   * Validating the stamps costs far less than taking and releasing all {@value #LOCK_STRIPES}
+   * read locks, which is most of the cost of a query such as
+   * {@link #totalValueOfGroceries()} when it takes the locks.
+   * </p>
+   *
+   * @param read the read to perform, which must not change any state
+   * @param <T> the type of the result
+   * @return the result of a read that did not overlap a write
+   */
+
+  private <T> T readAll(Supplier<T> read) {
+    long[] stamps = new long[LOCK_STRIPES];
+    boolean optimistic = true;
+
+    for (int i = 0; i < LOCK_STRIPES && optimistic; i++) {
+      stamps[i] = locks[i].tryOptimisticRead();
+      optimistic = stamps[i] != 0L;
+    }
+
+    if (optimistic) {
+      try {
+        T result = read.get();
+        if (validateAll(stamps)) {
+          return result;
+        }
+      } catch (RuntimeException e) {
+        // The read overlapped a write and saw inconsistent state, retry under the locks below
+      }
+    }
+
+    for (int i = 0; i < LOCK_STRIPES; i++) {
+      stamps[i] = locks[i].readLock();
+    }
+    try {
+      return read.get();
+    } finally {
+      for (int i = 0; i < LOCK_STRIPES; i++) {
+        locks[i].unlockRead(stamps[i]);
+      }
+    }
+  }
+
+  /**
+   * Helper method for checking that no lock stripe was written since the stamps were taken.
+   *
+   * @param stamps an optimistic read stamp for each lock stripe
+   * @return {@code true} if every stamp is still valid
+   */
+
+  private boolean validateAll(long[] stamps) {
+    for (int i = 0; i < LOCK_STRIPES; i++) {
+      if (!locks[i].validate(stamps[i])) {
+        return false;
+      }
+    }
+    return true;
+  }
 }
@@ -1,6 +1,8 @@
 package edu.ntnu.idi.idatt.model;
 
+import edu.ntnu.idi.idatt.utils.DayClock;
 import edu.ntnu.idi.idatt.utils.ExceptionHandling;
+import edu.ntnu.idi.idatt.utils.Unit;
 import edu.ntnu.idi.idatt.utils.UnitConverter;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
@@ -9,15 +11,20 @@ import java.time.format.DateTimeFormatter;
  * Represents a grocery item with its name, price, amount, unit, and expiry date.
  * Provides methods to manipulate and retrieve the details of the grocery item.
  * Includes functionality to check if the grocery is expired and to format the item as a string.
+ *
+ * <p>The amount is kept in thousandths of its standard {@link Unit}, such as milligrams,
+ * so increasing and decreasing it is exact.
  */
 
 public class Grocery {
 
   private final String name;
-  private double amount;
-  private final double price;
-  private final String unit;
+  private long amount;
+  private long initialAmount;
+  private double price;
+  private final Unit unit;
   private final LocalDate expiryDate;
+  private final long expiryEpochDay;
 
   /**
    * Constructs a new Grocery object with the specified details.
@@ -36,6 +43,34 @@ public class Grocery {
     this.unit = validateAndSetUnit(unit);
     validateAndSetAmount(amount, unit);
     this.expiryDate = validateAndSetExpiryDate(expiryDate);
+    this.expiryEpochDay = this.expiryDate.toEpochDay();
+  }
+
+  /**
+   * Constructs a grocery from values that are already valid, such as those read from a
+   * snapshot, without validating them again.
+   *
+   * @param name the lowercase name of the grocery item
+   * @param price the price of the batch
+   * @param amount the amount left, in thousandths of {@code unit}
+   * @param initialAmount the amount the price was paid for, in thousandths of {@code unit}
+   * @param unit the standard unit of the amounts
+   * @param expiryDate the expiry date of the batch
+   */
+
+  Grocery(String name, double price, long amount, long initialAmount, Unit unit,
+      LocalDate expiryDate) {
+    this.name = name;
+    this.price = price;
+    this.amount = amount;
+    this.initialAmount = initialAmount;
+    this.unit = unit;
+    this.expiryDate = expiryDate;
+    this.expiryEpochDay = expiryDate.toEpochDay();
+  }
+
+  long getScaledInitialAmount() {
+    return initialAmount;
   }
 
   // Getters -----------------------------------------
@@ -45,6 +80,10 @@ public class Grocery {
   }
 
   public double getAmount() {
+    return Unit.fromScaled(amount);
+  }
+
+  public long getScaledAmount() {
     return amount;
   }
 
@@ -52,7 +91,15 @@ public class Grocery {
     return price;
   }
 
+  public double getInitialAmount() {
+    return Unit.fromScaled(initialAmount);
+  }
+
   public String getUnit() {
+    return unit.getSymbol();
+  }
+
+  public Unit getStandardUnit() {
     return unit;
   }
 
@@ -60,6 +107,10 @@ public class Grocery {
     return expiryDate;
   }
 
+  long getExpiryEpochDay() {
+    return expiryEpochDay;
+  }
+
   // Private Validation and Setting Methods -----------------------------------------
 
   /**
@@ -96,14 +147,15 @@ public class Grocery {
    * @throws IllegalArgumentException if the unit is invalid
    */
 
-  private String validateAndSetUnit(String unit) {
+  private Unit validateAndSetUnit(String unit) {
     ExceptionHandling.validateUnit(unit); // Validates unit
-    return UnitConverter.getStandardUnit(unit); // Converts to a standard unit
+    return UnitConverter.getStandardUnitOf(unit); // Converts to a standard unit
   }
 
   /**
    * Validates and sets the amount of the grocery.
-   * The amount is converted to its standardized unit (e.g., grams or liters).
+   * The amount is converted to its standardized unit (e.g., grams or liters),
+   * and is also recorded as the initial amount of the batch.
    *
    * @param amount the amount of the grocery to validate and set
    * @param unit the unit of the amount to assist in conversion
@@ -114,8 +166,12 @@ public class Grocery {
     // Validates amount
     ExceptionHandling.validateAmount(amount);
 
-    // Converts to a standardized amount
-    this.amount = UnitConverter.convertToStandardUnit(amount, unit);
+    // Converts to a standardized amount, in thousandths of the standard unit
+    long scaledAmount = UnitConverter.convertToScaledAmount(amount, unit);
+    ExceptionHandling.validateScaledAmount(scaledAmount);
+
+    this.amount = scaledAmount;
+    this.initialAmount = scaledAmount;
   }
 
   /**
@@ -140,12 +196,48 @@ public class Grocery {
    */
 
   public boolean isExpired() {
-    LocalDate currentDate = LocalDate.now(); // Gets the current date
-    return currentDate.isAfter(expiryDate); // Returns true if expired
+    return isExpired(DayClock.systemDefault());
+  }
+
+  /**
+   * Checks if the grocery item is expired on the current date of the given clock.
+   *
+   * @param clock the clock telling which day it is
+   * @return {@code true} if the grocery item is expired, otherwise {@code false}
+   */
+
+  public boolean isExpired(DayClock clock) {
+    return isExpiredOn(clock.today());
+  }
+
+  /**
+   * Checks if the grocery item is expired on the given day.
+   *
+   * @param epochDay the day to check, as an epoch day number
+   * @return {@code true} if the expiry date is before the given day
+   */
+
+  boolean isExpiredOn(long epochDay) {
+    return epochDay > expiryEpochDay; // Returns true if expired
+  }
+
+  /**
+   * Returns the part of the price matching the part of the batch that is left.
+   *
+   * <p>For example, a batch bought for 30kr with 1000 g, where 250 g is left,
+   * has a remaining value of 7.5kr.
+   * </p>
+   *
+   * @return the price prorated by the remaining fraction of the batch
+   */
+
+  public double getRemainingValue() {
+    return price * amount / initialAmount;
   }
 
   /**
    * Increases the amount of the grocery item.
+   * The added amount counts as new stock, so it also increases the initial amount of the batch.
    *
    * @param amountToIncrease the amount to increase the grocery item's amount by
    * @throws IllegalArgumentException if the increase amount is invalid
@@ -153,7 +245,32 @@ public class Grocery {
 
   public void increaseAmount(double amountToIncrease) {
     ExceptionHandling.validateAmountIncrease(amountToIncrease);
-    this.amount += amountToIncrease; // Adds to the new amount
+    increaseScaledAmount(Unit.toScaled(amountToIncrease));
+  }
+
+  /**
+   * Increases the amount of the grocery item by an amount in thousandths of its standard unit.
+   *
+   * @param scaledIncrease the amount to increase by, in thousandths of the standard unit
+   */
+
+  void increaseScaledAmount(long scaledIncrease) {
+    this.amount += scaledIncrease; // Adds to the new amount
+    this.initialAmount += scaledIncrease;
+  }
+
+  /**
+   * Merges another batch with the same name, unit and expiry date into this batch.
+   * The other batch counts as new stock bought at its own price, so both its amount and its
+   * price are added, and the merged batch is valued like the two batches were together.
+   *
+   * @param other the batch to merge into this batch
+   */
+
+  void merge(Grocery other) {
+    this.amount += other.amount;
+    this.initialAmount += other.initialAmount;
+    this.price += other.price;
   }
 
   /**
@@ -165,7 +282,18 @@ public class Grocery {
 
   public void decreaseAmount(double amountToDecrease) {
     ExceptionHandling.validateAmountDecrease(this, amountToDecrease);
-    this.amount -= amountToDecrease;
+    decreaseScaledAmount(Unit.toScaled(amountToDecrease));
+  }
+
+  /**
+   * Decreases the amount of the grocery item by an amount in thousandths of its standard unit.
+   * The caller must make sure the amount is not larger than what is left.
+   *
+   * @param scaledDecrease the amount to decrease by, in thousandths of the standard unit
+   */
+
+  void decreaseScaledAmount(long scaledDecrease) {
+    this.amount -= scaledDecrease;
   }
 
   /**
@@ -179,6 +307,6 @@ public class Grocery {
   public String toString() {
     DateTimeFormatter dateFormat = DateTimeFormatter.ofPattern("dd-MM-yyyy");
     return this.name + ", " + this.price + "kr, "
-        + this.amount + " " + this.unit + ", " + dateFormat.format(expiryDate);
+        + getAmount() + " " + this.unit + ", " + dateFormat.format(expiryDate);
   }
 }
@@ -0,0 +1,297 @@
+package edu.ntnu.idi.idatt.model;
+
+import edu.ntnu.idi.idatt.utils.Unit;
+import java.time.LocalDate;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * The batches of one grocery item in a {@link FoodStorage}, kept in order of expiry date.
+ *
+ * <p>Batches are stored in a sorted array, so a batch with a given expiry date and unit is
+ * found with a binary search. Merging into an existing batch allocates nothing, and a new batch
+ * is inserted at its sorted position instead of re-sorting the whole list. New stock usually
+ * expires later than the stock already stored, so most inserts go at the end of the array.
+ * </p>
+ *
+ * <p>Only the lookup takes {@code O(log n)} time for {@code n} batches. Inserting a new batch
+ * moves the batches on the shorter side of it, so an insert in the middle takes {@code O(n)}
+ * time. This is a deliberate trade-off against a tree with {@code O(log n)} inserts: an item
+ * rarely holds more than a few dozen batches, inserts at either end move nothing, and the array
+ * keeps the batches next to each other in memory for the scans that use them, such as
+ * {@link FoodStorage#removeAmountFromStorage(String, double, String)} and the value queries.
+ * Bulk loads do not insert one batch at a time, see {@link #mergeAll(List, ValueTotals)}.
+ * </p>
+ *
+ * <p>The batches start at a moving {@code head} index rather than at index 0.
+ * Removing the batch that expires first, which is what
+ * {@link FoodStorage#removeAmountFromStorage(String, double, String)} does, only moves the head
+ * forward, so it takes constant time no matter how many batches follow.
+ * </p>
+ *
+ * <p>Batches with the same expiry date keep the order they were added in.
+ * Outside of {@link FoodStorage}, the batches are a read-only list.
+ * The class is not thread-safe; {@link FoodStorage} guards each instance with the lock
+ * of its grocery item.
+ * </p>
+ */
+public class GroceryBatches extends AbstractList<Grocery> implements RandomAccess {
+
+  private static final int INITIAL_CAPACITY = 4;
+
+  private Grocery[] batches;
+  private int head;
+  private int size;
+  private final ValueTotals totals = new ValueTotals();
+
+  /**
+   * Constructs an empty list of batches.
+   */
+  GroceryBatches() {
+    this.batches = new Grocery[INITIAL_CAPACITY];
+  }
+
+  /**
+   * Constructs a list holding the given batches, which must be in order of expiry date,
+   * with no two batches sharing an expiry date and unit. The array is used as it is,
+   * without copying or checking it.
+   *
+   * @param sorted the batches, at least one
+   */
+  GroceryBatches(Grocery[] sorted) {
+    this.batches = sorted;
+    this.size = sorted.length;
+    for (Grocery batch : sorted) {
+      totals.add(batch);
+    }
+  }
+
+  @Override
+  public Grocery get(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+    return batches[head + index];
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Returns the running value totals of these batches.
+   *
+   * @return the value totals
+   */
+  ValueTotals getTotals() {
+    return totals;
+  }
+
+  /**
+   * Finds the batch with the given expiry date and unit.
+   *
+   * @param expiryDate the expiry date of the batch
+   * @param unit the standard unit of the batch
+   * @return the matching batch, or {@code null} if there is none
+   */
+  Grocery findBatch(LocalDate expiryDate, Unit unit) {
+    for (int i = head + searchIndex(expiryDate, false);
+        i < head + size && batches[i].getExpiryDate().equals(expiryDate); i++) {
+      if (batches[i].getStandardUnit() == unit) {
+        return batches[i];
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Inserts a new batch at its position in expiry order,
+   * after any batches with the same expiry date.
+   * Whichever side of the insert position is shorter is moved to make room, so this takes
+   * time linear in the distance to the nearer end, and constant time at either end.
+   *
+   * @param grocery the batch to insert
+   */
+  void insert(Grocery grocery) {
+    int index = searchIndex(grocery.getExpiryDate(), true);
+
+    if (head > 0 && index < size / 2) {
+      // Move the batches before the insert position one step towards the free space at the head
+      System.arraycopy(batches, head, batches, head - 1, index);
+      head--;
+    } else {
+      if (head + size == batches.length) {
+        makeRoomAtTail();
+      }
+      System.arraycopy(batches, head + index, batches, head + index + 1, size - index);
+    }
+    batches[head + index] = grocery;
+    size++;
+    modCount++;
+  }
+
+  /**
+   * Merges many new batches into these batches in one pass, as if each had been registered
+   * on its own: a new batch with the same expiry date and unit as a stored batch, or as an
+   * earlier new batch, is merged into that batch, and the others are inserted in expiry order.
+   *
+   * <p>Runs in time linear in the number of stored and new batches, replaces the batch
+   * array at most once, and counts the value totals once at the end.
+   * </p>
+   *
+   * @param sorted the new batches, sorted by expiry date
+   * @param sharedTotals totals to update along with the totals of these batches,
+   *                     such as those of the whole storage
+   * @return the batches that were inserted, rather than merged into another batch
+   */
+  List<Grocery> mergeAll(List<Grocery> sorted, ValueTotals sharedTotals) {
+    Grocery[] merged = new Grocery[Math.max(INITIAL_CAPACITY, size + sorted.size())];
+    List<Grocery> inserted = new ArrayList<>();
+    int count = 0;
+    int next = head;
+
+    for (Grocery grocery : sorted) {
+      // Stored batches expiring on or before the new batch come first
+      while (next < head + size
+          && !batches[next].getExpiryDate().isAfter(grocery.getExpiryDate())) {
+        merged[count++] = batches[next++];
+      }
+
+      Grocery existing = findInRun(merged, count, grocery);
+      if (existing != null) {
+        existing.merge(grocery);
+      } else {
+        merged[count++] = grocery;
+        inserted.add(grocery);
+      }
+    }
+    while (next < head + size) {
+      merged[count++] = batches[next++];
+    }
+
+    batches = merged;
+    head = 0;
+    size = count;
+    modCount++;
+    totals.recount(this, sharedTotals);
+    return inserted;
+  }
+
+  /**
+   * Searches the run of batches at the end of {@code merged} that share the expiry date of
+   * the given batch, for one with the same unit.
+   *
+   * @param merged the batches merged so far
+   * @param count the number of batches in {@code merged}
+   * @param grocery the batch to find a match for
+   * @return the matching batch, or {@code null} if there is none
+   */
+  private static Grocery findInRun(Grocery[] merged, int count, Grocery grocery) {
+    for (int i = count - 1;
+        i >= 0 && merged[i].getExpiryDate().equals(grocery.getExpiryDate()); i--) {
+      if (merged[i].getStandardUnit() == grocery.getStandardUnit()) {
+        return merged[i];
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Removes and returns the batch that expires first, in constant time.
+   *
+   * @return the first batch, or {@code null} if there are no batches
+   */
+  Grocery pollFirst() {
+    if (size == 0) {
+      return null;
+    }
+    Grocery first = batches[head];
+    batches[head] = null;
+    size--;
+    head = size == 0 ? 0 : head + 1;
+    modCount++;
+    return first;
+  }
+
+  /**
+   * Removes the given batch.
+   *
+   * @param grocery the batch to remove
+   * @return {@code true} if the batch was found and removed
+   */
+  boolean removeBatch(Grocery grocery) {
+    for (int i = searchIndex(grocery.getExpiryDate(), false);
+        i < size && batches[head + i].getExpiryDate().equals(grocery.getExpiryDate()); i++) {
+      if (batches[head + i] == grocery) {
+        removeAt(i);
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Removes the batch at the given index and closes the gap
+   * by moving whichever side of it is shorter.
+   *
+   * @param index the index of the batch to remove
+   */
+  private void removeAt(int index) {
+    if (index < size / 2) {
+      System.arraycopy(batches, head, batches, head + 1, index);
+      batches[head] = null;
+      head++;
+    } else {
+      System.arraycopy(batches, head + index + 1, batches, head + index, size - index - 1);
+      batches[head + size - 1] = null;
+    }
+    size--;
+    if (size == 0) {
+      head = 0;
+    }
+    modCount++;
+  }
+
+  /**
+   * Makes room after the last batch, by moving the batches back to the start of the array
+   * if at least half of it is free, and by doubling the array otherwise.
+   */
+  private void makeRoomAtTail() {
+    Grocery[] target = size * 2 > batches.length ? new Grocery[batches.length * 2] : batches;
+    System.arraycopy(batches, head, target, 0, size);
+
+    if (target == batches) {
+      Arrays.fill(batches, size, head + size, null);
+    }
+    batches = target;
+    head = 0;
+  }
+
+  /**
+   * Binary search for the first batch expiring on or after the given date,
+   * or strictly after it if {@code skipEqual} is {@code true}.
+   *
+   * @param expiryDate the date to search for
+   * @param skipEqual whether batches expiring on {@code expiryDate} are skipped
+   * @return the index of the first matching batch, or {@code size} if there is none
+   */
+  private int searchIndex(LocalDate expiryDate, boolean skipEqual) {
+    int low = 0;
+    int high = size;
+
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      int comparison = batches[head + mid].getExpiryDate().compareTo(expiryDate);
+      if (comparison < 0 || (skipEqual && comparison == 0)) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+}
@@ -1,16 +1,18 @@
 package edu.ntnu.idi.idatt.model;
 
 import edu.ntnu.idi.idatt.utils.ExceptionHandling;
+import edu.ntnu.idi.idatt.utils.Unit;
 import edu.ntnu.idi.idatt.utils.UnitConverter;
 
 /**
  * Represents detailed information about an ingredient, including its amount and unit.
  * Automatically converts the amount and unit to standard forms (grams or liters).
+ * The amount is kept in thousandths of the standard unit, like in {@link Grocery}.
  */
 public class IngredientDetail {
 
-  private double amount; // The amount of the ingredient in its standard unit
-  private String unit;   // The standard unit of the ingredient (e.g., "g", "l")
+  private long amount; // The amount of the ingredient in thousandths of its standard unit
+  private Unit unit;   // The standard unit of the ingredient (e.g., "g", "l")
 
   /**
    * Constructs an IngredientDetail with a specified amount and unit.
@@ -23,12 +25,40 @@ public class IngredientDetail {
     this.setAmountAndUnit(amount, unit); // Automatically validate and convert
   }
 
+  /**
+   * Constructs an IngredientDetail from an amount that is already in a standard unit,
+   * such as one read from a snapshot, without validating it again.
+   *
+   * @param scaledAmount the amount, in thousandths of {@code unit}
+   * @param unit the standard unit of the amount
+   */
+  IngredientDetail(long scaledAmount, Unit unit) {
+    this.amount = scaledAmount;
+    this.unit = unit;
+  }
+
+  /**
+   * Returns a copy of this detail, which can be changed without changing this detail.
+   *
+   * @return the copy
+   */
+  IngredientDetail copy() {
+    return new IngredientDetail(amount, unit);
+  }
 
   public double getAmount() {
+    return Unit.fromScaled(amount);
+  }
+
+  public long getScaledAmount() {
     return amount;
   }
 
   public String getUnit() {
+    return unit.getSymbol();
+  }
+
+  public Unit getStandardUnit() {
     return unit;
   }
 
@@ -44,12 +74,16 @@ public class IngredientDetail {
     ExceptionHandling.validateUnit(unit);
 
     // Convert and standardize the unit and amount
-    this.unit = UnitConverter.getStandardUnit(unit);
-    this.amount = UnitConverter.convertToStandardUnit(amount, unit);
+    Unit standardUnit = UnitConverter.getStandardUnitOf(unit);
+    long scaledAmount = UnitConverter.convertToScaledAmount(amount, unit);
+    ExceptionHandling.validateScaledAmount(scaledAmount);
+
+    this.unit = standardUnit;
+    this.amount = scaledAmount;
   }
 
   @Override
   public String toString() {
-    return String.format("%.2f %s", amount, unit);
+    return String.format("%.2f %s", getAmount(), unit);
   }
 }
@@ -0,0 +1,113 @@
+package edu.ntnu.idi.idatt.model;
+
+import edu.ntnu.idi.idatt.utils.Unit;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Gives every ingredient name a small number, so recipes and storages can describe amounts
+ * as arrays indexed by ingredient instead of maps keyed by name.
+ *
+ * <p>An amount of an ingredient is kept in a slot per standard {@link Unit}, since an
+ * ingredient can be stored in one unit and asked for in another. The slot of an ingredient
+ * and unit is {@code id * Unit.values().length + unit.ordinal()}.
+ * </p>
+ *
+ * <p>Names are matched ignoring case. A name keeps its number for the rest of the program,
+ * so the numbers stay valid in arrays that were made earlier.
+ * </p>
+ */
+
+final class IngredientIds {
+
+  private static final Unit[] UNITS = Unit.values();
+  private static final int UNIT_COUNT = UNITS.length;
+
+  private static final Map<String, Integer> IDS = new ConcurrentHashMap<>();
+  private static final AtomicInteger NEXT_ID = new AtomicInteger();
+
+  private IngredientIds() {
+  }
+
+  /**
+   * Returns the slot of an ingredient in a unit, giving the ingredient a number if it has none.
+   *
+   * @param ingredientName the name of the ingredient
+   * @param unit the standard unit
+   * @return the slot of the ingredient and unit
+   */
+
+  static int slotOf(String ingredientName, Unit unit) {
+    int id = IDS.computeIfAbsent(ingredientName.toLowerCase(),
+        name -> NEXT_ID.getAndIncrement());
+    return id * UNIT_COUNT + unit.ordinal();
+  }
+
+  /**
+   * Returns the slot of an ingredient in a unit, if the ingredient has a number.
+   *
+   * @param key the lowercase name of the ingredient
+   * @param unit the standard unit
+   * @return the slot of the ingredient and unit, or -1 if no recipe has used the ingredient
+   */
+
+  static int findSlot(String key, Unit unit) {
+    Integer id = IDS.get(key);
+    return id == null ? -1 : id * UNIT_COUNT + unit.ordinal();
+  }
+
+  /**
+   * Returns the number of an ingredient, if it has one.
+   *
+   * @param key the lowercase name of the ingredient
+   * @return the number of the ingredient, or -1 if no recipe has used the ingredient
+   */
+
+  static int findId(String key) {
+    Integer id = IDS.get(key);
+    return id == null ? -1 : id;
+  }
+
+  /**
+   * Returns the number of ingredients that have a number.
+   *
+   * @return one more than the largest number given out so far
+   */
+
+  static int idCount() {
+    return NEXT_ID.get();
+  }
+
+  /**
+   * Returns the number of the ingredient a slot belongs to.
+   *
+   * @param slot the slot
+   * @return the number of the ingredient
+   */
+
+  static int idOf(int slot) {
+    return slot / UNIT_COUNT;
+  }
+
+  /**
+   * Returns the standard unit of a slot.
+   *
+   * @param slot the slot
+   * @return the unit the amount in the slot is given in
+   */
+
+  static Unit unitOf(int slot) {
+    return UNITS[slot % UNIT_COUNT];
+  }
+
+  /**
+   * Returns the number of slots needed to hold every ingredient that has a number.
+   *
+   * @return one more than the largest slot given out so far
+   */
+
+  static int slotCount() {
+    return NEXT_ID.get() * UNIT_COUNT;
+  }
+}
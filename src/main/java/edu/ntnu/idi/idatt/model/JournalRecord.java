@@ -0,0 +1,124 @@
+package edu.ntnu.idi.idatt.model;
+
+import edu.ntnu.idi.idatt.utils.Unit;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+
+/**
+ * One record of a {@link StorageJournal}: the changes a single call made to a
+ * {@link FoodStorage}, written to the journal together so they are replayed all or not at all.
+ *
+ * <p>The changes are recorded as they were applied, after validation and unit conversion,
+ * so replaying them does not depend on the clock or on the units of the recipes.
+ * </p>
+ */
+final class JournalRecord {
+
+  private static final int REGISTER = 1;
+  private static final int CONSUME = 2;
+  private static final int EXPIRE = 3;
+  private static final Unit[] UNITS = Unit.values();
+
+  private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+  private final DataOutputStream out = new DataOutputStream(bytes);
+
+  /**
+   * Records a grocery batch added to the storage. Must be called before the batch is added,
+   * since it may be merged into a batch in storage afterwards.
+   *
+   * @param grocery the batch
+   */
+  void register(Grocery grocery) {
+    try {
+      out.writeByte(REGISTER);
+      out.writeUTF(grocery.getName());
+      out.writeDouble(grocery.getPrice());
+      out.writeLong(grocery.getScaledAmount());
+      out.writeLong(grocery.getScaledInitialAmount());
+      out.writeByte(grocery.getStandardUnit().ordinal());
+      out.writeLong(grocery.getExpiryEpochDay());
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Records an amount of a grocery item removed from the storage, earliest expiry date first.
+   *
+   * @param key the lowercase name of the grocery item
+   * @param amount the amount removed, in thousandths of {@code unit}
+   * @param unit the standard unit of the amount
+   */
+  void consume(String key, long amount, Unit unit) {
+    try {
+      out.writeByte(CONSUME);
+      out.writeUTF(key);
+      out.writeLong(amount);
+      out.writeByte(unit.ordinal());
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Records a batch moved to the expired storage.
+   *
+   * @param batch the batch
+   */
+  void expire(Grocery batch) {
+    try {
+      out.writeByte(EXPIRE);
+      out.writeUTF(batch.getName());
+      out.writeLong(batch.getExpiryEpochDay());
+      out.writeByte(batch.getStandardUnit().ordinal());
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  byte[] toByteArray() {
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Applies the changes of a record to a storage, in the order they were recorded.
+   *
+   * @param record the bytes of the record
+   * @param storage the storage to change
+   * @throws IOException if the record cannot be decoded
+   */
+  static void replay(byte[] record, FoodStorage storage) throws IOException {
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+
+    while (in.available() > 0) {
+      int type = in.readUnsignedByte();
+      switch (type) {
+        case REGISTER -> {
+          String name = in.readUTF();
+          double price = in.readDouble();
+          long amount = in.readLong();
+          long initialAmount = in.readLong();
+          Unit unit = readUnit(in);
+          storage.registerToStorage(new Grocery(name, price, amount, initialAmount, unit,
+              LocalDate.ofEpochDay(in.readLong())));
+        }
+        case CONSUME -> storage.replayConsume(in.readUTF(), in.readLong(), readUnit(in));
+        case EXPIRE -> storage.replayExpire(in.readUTF(), in.readLong(), readUnit(in));
+        default -> throw new IOException("Unknown journal record type " + type + ".");
+      }
+    }
+  }
+
+  private static Unit readUnit(DataInputStream in) throws IOException {
+    int ordinal = in.readUnsignedByte();
+    if (ordinal >= UNITS.length) {
+      throw new IOException("Unknown unit " + ordinal + " in journal.");
+    }
+    return UNITS[ordinal];
+  }
+}
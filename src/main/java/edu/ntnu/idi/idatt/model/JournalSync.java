@@ -0,0 +1,19 @@
+package edu.ntnu.idi.idatt.model;
+
+/**
+ * Describes how far a change to a journaled {@link FoodStorage} is written before the method
+ * making it returns, see {@link StorageJournal}.
+ *
+ * <ul>
+ *   <li>{@link #FSYNC}: the change is written to the journal and flushed to the disk,
+ *   so it survives a crash of the whole machine. Threads changing the storage at the same
+ *   time share one flush.</li>
+ *   <li>{@link #WRITE}: the change is handed to the operating system, so it survives a crash
+ *   of the program but may be lost if the machine stops. The journal is flushed to the disk
+ *   at every checkpoint.</li>
+ * </ul>
+ */
+public enum JournalSync {
+  FSYNC,
+  WRITE
+}
@@ -0,0 +1,109 @@
+package edu.ntnu.idi.idatt.model;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A plan of which recipe to make on each day of a period, as made by {@link MealPlanner}.
+ *
+ * <p>A day can be left without a recipe when no recipe uses more of the groceries expiring
+ * in the period. The plan also tells how much of the value of those groceries it uses.
+ * </p>
+ */
+
+public class MealPlan {
+
+  private final LocalDate firstDay;
+  private final List<Recipe> meals;
+  private final double rescuedValue;
+  private final double atRiskValue;
+
+  /**
+   * Constructs a meal plan.
+   *
+   * @param firstDay the first day of the plan
+   * @param meals the recipe for each day, starting at the first day, or null for no recipe
+   * @param rescuedValue the value of the groceries expiring in the period that the plan uses
+   * @param atRiskValue the value of all groceries expiring in the period, whether or not
+   *                    a recipe uses them
+   */
+
+  MealPlan(LocalDate firstDay, Recipe[] meals, double rescuedValue, double atRiskValue) {
+    this.firstDay = firstDay;
+    this.meals = Collections.unmodifiableList(Arrays.asList(meals.clone()));
+    this.rescuedValue = rescuedValue;
+    this.atRiskValue = atRiskValue;
+  }
+
+  public LocalDate getFirstDay() {
+    return firstDay;
+  }
+
+  public int getDays() {
+    return meals.size();
+  }
+
+  /**
+   * Returns the recipes of the plan, one per day starting at the first day.
+   *
+   * @return a read-only list of the recipes, with null for days without a recipe
+   */
+  public List<Recipe> getMeals() {
+    return meals;
+  }
+
+  /**
+   * Returns the recipe planned for a day.
+   *
+   * @param day the day, counted from 0 at the first day of the plan
+   * @return the recipe, or null if no recipe is planned that day
+   * @throws IndexOutOfBoundsException if the day is not in the plan
+   */
+  public Recipe getMeal(int day) {
+    return meals.get(day);
+  }
+
+  /**
+   * Returns the value of the groceries expiring in the period that the plan uses,
+   * counting each batch at its remaining value.
+   *
+   * @return the value used
+   */
+  public double getRescuedValue() {
+    return rescuedValue;
+  }
+
+  /**
+   * Returns the value of all groceries in storage that expire during the period, including
+   * those no recipe uses.
+   *
+   * @return the value at risk of being wasted without a plan
+   */
+  public double getAtRiskValue() {
+    return atRiskValue;
+  }
+
+  /**
+   * Returns a string with the recipe of each day, followed by the value used.
+   *
+   * @return a formatted string of the meal plan
+   */
+  @Override
+  public String toString() {
+    DateTimeFormatter dateFormat = DateTimeFormatter.ofPattern("dd-MM-yyyy");
+    StringBuilder sb = new StringBuilder();
+
+    for (int day = 0; day < meals.size(); day++) {
+      Recipe meal = meals.get(day);
+      sb.append(String.format("%-12s %s\n",
+          dateFormat.format(firstDay.plusDays(day)),
+          meal == null ? "-" : meal.getNameOfRecipe()));
+    }
+    sb.append(String.format("Uses %.2f kr of the %.2f kr of groceries expiring in the period.\n",
+        rescuedValue, atRiskValue));
+    return sb.toString();
+  }
+}
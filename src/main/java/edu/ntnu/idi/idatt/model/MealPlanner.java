@@ -0,0 +1,562 @@
+package edu.ntnu.idi.idatt.model;
+
+import edu.ntnu.idi.idatt.utils.ExceptionHandling;
+import edu.ntnu.idi.idatt.utils.Unit;
+import edu.ntnu.idi.idatt.utils.UnitConverter;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Plans one recipe per day for a number of days, so that as much as possible of the value
+ * of the groceries expiring in that period is used before it expires.
+ *
+ * <p>The planner works on a copy of the storage, read once. Each grocery is used earliest
+ * expiry date first, like {@link FoodStorage#removeAmountFromStorage(String, double, String)}
+ * does, and a batch can no longer be used after its expiry date. A plan is only accepted if
+ * every recipe in it can be made on its day with what is left of the groceries then.
+ * </p>
+ *
+ * <p>The score of a plan is the value of the batches expiring in the period that it uses.
+ * Since each grocery is used independently of the others, the score is a sum over the
+ * groceries, and changing the recipe of a day only rescores the groceries of the old and the
+ * new recipe. The search first fills the days in order with the recipe adding the most,
+ * and then tries random changes to single days and swaps between two days, keeping those that
+ * do not lower the score, until the time budget is spent or no improvement is found for a while.
+ * Only recipes that use a grocery expiring in the period, and that can be made with the
+ * groceries in storage, take part.
+ * </p>
+ */
+
+public final class MealPlanner {
+
+  /**
+   * The time budget used by {@link RecipeBook#planMeals(FoodStorage, int)}.
+   */
+
+  public static final Duration DEFAULT_TIME_BUDGET = Duration.ofMillis(100);
+
+  /**
+   * The number of changes in a row without improvement after which the local search stops.
+   */
+
+  private static final int STALE_MOVE_LIMIT = 20_000;
+
+  /**
+   * The seed of the random changes, fixed so the same storage and recipes give the same plan
+   * when the search is not cut short by the time budget.
+   */
+
+  private static final long SEED = 1L;
+
+  /**
+   * How much a score must grow to count as an improvement,
+   * so rounding errors in the sums are not mistaken for one.
+   */
+
+  private static final double EPSILON = 1e-9;
+
+  private final long firstDay;
+  private final int days;
+  private final long deadline;
+
+  // The batches of each grocery, in order of expiry date, in the unit the grocery is stored in
+  private final long[][] batchExpiry;
+  private final long[][] batchAmount;
+  private final double[][] batchValue;
+  private final boolean[] atRisk;
+  private final double atRiskValue;
+
+  // The groceries and amounts each candidate recipe uses, and the candidates using each grocery
+  private final Recipe[] candidates;
+  private final int[][] recipeGroceries;
+  private final long[][] recipeAmounts;
+  private final int[][] recipesByGrocery;
+
+  // The plan, and the amount of each grocery it uses on each day
+  private final int[] plan;
+  private final long[][] demand;
+
+  // The score of each grocery, NaN where the plan needs more than is left
+  private final double[] groceryScore;
+  private int infeasibleCount;
+  private double score;
+
+  // Scratch space for rescoring the groceries touched by a change
+  private final long[] left;
+  private final int[] touched;
+  private final int[] touchedStamp;
+  private int touchedCount;
+  private int stamp;
+
+  /**
+   * A batch of a grocery, copied from the storage.
+   */
+
+  private record Batch(long expiryDay, long scaledAmount, Unit unit, double value) {
+
+    static Batch of(Grocery grocery) {
+      return new Batch(grocery.getExpiryEpochDay(), grocery.getScaledAmount(),
+          grocery.getStandardUnit(), grocery.getRemainingValue());
+    }
+  }
+
+  /**
+   * Plans one recipe per day, starting today by the clock of the storage, so that as much as
+   * possible of the value of the groceries expiring before the last day has passed is used.
+   * The storage is not changed.
+   *
+   * @param storage the storage with the groceries to use
+   * @param recipes the recipes to choose from
+   * @param days the number of days to plan for
+   * @param timeBudget how long the search may run; the best plan found by then is returned
+   * @return the meal plan
+   * @throws IllegalArgumentException if the storage, the list or any recipe in it is null,
+   *                                  the number of days is not positive,
+   *                                  or the time budget is null or negative
+   */
+
+  public static MealPlan plan(FoodStorage storage, List<Recipe> recipes, int days,
+      Duration timeBudget) {
+    ExceptionHandling.nullStorage(storage);
+    ExceptionHandling.nullRecipes(recipes);
+    ExceptionHandling.validateDays(days);
+    ExceptionHandling.validateTimeBudget(timeBudget);
+
+    long deadline = System.nanoTime() + timeBudget.toNanos();
+    long firstDay = storage.today();
+    Map<String, List<Batch>> stock = storage.copyBatches(Batch::of);
+
+    MealPlanner planner = new MealPlanner(stock, recipes, firstDay, days, deadline);
+    planner.fillGreedily();
+    planner.improveLocally();
+    planner.dropUselessMeals();
+    return planner.toMealPlan();
+  }
+
+  /**
+   * Sets up the search for a copy of the storage, with an empty plan.
+   *
+   * @param stock the batches of each grocery, by lowercase name, in order of expiry date
+   * @param recipes the recipes to choose from
+   * @param firstDay the first day to plan for, as days since the epoch
+   * @param days the number of days to plan for
+   * @param deadline the value of {@link System#nanoTime()} at which the search must stop
+   */
+
+  private MealPlanner(Map<String, List<Batch>> stock, List<Recipe> recipes, long firstDay,
+      int days, long deadline) {
+    this.firstDay = firstDay;
+    this.days = days;
+    this.deadline = deadline;
+    long endDay = firstDay + days;
+
+    // Keep the batches that have not expired, converted to the unit the grocery is stored in.
+    // Groceries no recipe has used have no ingredient number, and no recipe can use them.
+    int[] groceryByIngredient = new int[IngredientIds.idCount()];
+    Arrays.fill(groceryByIngredient, -1);
+    List<String> keys = new ArrayList<>();
+    List<Unit> units = new ArrayList<>();
+    List<long[]> expiries = new ArrayList<>();
+    List<long[]> amounts = new ArrayList<>();
+    List<double[]> values = new ArrayList<>();
+    int maxBatches = 0;
+    double expiringValue = 0;
+
+    for (Map.Entry<String, List<Batch>> entry : stock.entrySet()) {
+      String key = entry.getKey();
+      List<Batch> batches = entry.getValue();
+      // Every batch expiring in the period is at risk, whether or not a recipe can use it
+      for (Batch batch : batches) {
+        if (batch.expiryDay() >= firstDay && batch.expiryDay() < endDay) {
+          expiringValue += batch.value();
+        }
+      }
+      int id = IngredientIds.findId(key);
+      if (batches.isEmpty() || id < 0 || id >= groceryByIngredient.length) {
+        continue;
+      }
+      Unit unit = batches.getFirst().unit();
+      long[] expiry = new long[batches.size()];
+      long[] amount = new long[batches.size()];
+      double[] value = new double[batches.size()];
+      int count = 0;
+
+      for (Batch batch : batches) {
+        if (batch.expiryDay() >= firstDay && batch.scaledAmount() > 0
+            && UnitConverter.isConvertible(batch.unit(), unit, key)) {
+          expiry[count] = batch.expiryDay();
+          amount[count] = UnitConverter.convertScaledAmount(batch.scaledAmount(),
+              batch.unit(), unit, key);
+          value[count] = amount[count] == 0 ? 0 : batch.value() / amount[count];
+          count++;
+        }
+      }
+      if (count > 0) {
+        groceryByIngredient[id] = units.size();
+        keys.add(key);
+        units.add(unit);
+        expiries.add(Arrays.copyOf(expiry, count));
+        amounts.add(Arrays.copyOf(amount, count));
+        values.add(Arrays.copyOf(value, count));
+        maxBatches = Math.max(maxBatches, count);
+      }
+    }
+
+    atRiskValue = expiringValue;
+    int groceryCount = units.size();
+    batchExpiry = expiries.toArray(new long[0][]);
+    batchAmount = amounts.toArray(new long[0][]);
+    batchValue = values.toArray(new double[0][]);
+    atRisk = new boolean[groceryCount];
+    long[] totalAmount = new long[groceryCount];
+    for (int g = 0; g < groceryCount; g++) {
+      atRisk[g] = batchExpiry[g][0] < endDay;
+      totalAmount[g] = Arrays.stream(batchAmount[g]).sum();
+    }
+
+    // Keep the recipes that use an at-risk grocery and can be made with the whole storage
+    List<Recipe> kept = new ArrayList<>();
+    List<int[]> keptGroceries = new ArrayList<>();
+    List<long[]> keptAmounts = new ArrayList<>();
+    int[] recipeCountByGrocery = new int[groceryCount];
+
+    for (Recipe recipe : recipes.toArray(new Recipe[0])) {
+      int[] groceries = new int[recipe.ingredientCount()];
+      long[] needed = new long[groceries.length];
+      int count = neededAmounts(recipe, groceryByIngredient, keys, units, groceries, needed);
+      boolean usable = count >= 0;
+      boolean usesAtRisk = false;
+
+      for (int i = 0; i < count && usable; i++) {
+        usable = needed[i] <= totalAmount[groceries[i]];
+        usesAtRisk |= atRisk[groceries[i]];
+      }
+      if (usable && usesAtRisk) {
+        for (int i = 0; i < count; i++) {
+          recipeCountByGrocery[groceries[i]]++;
+        }
+        kept.add(recipe);
+        keptGroceries.add(Arrays.copyOf(groceries, count));
+        keptAmounts.add(Arrays.copyOf(needed, count));
+      }
+    }
+
+    candidates = kept.toArray(new Recipe[0]);
+    recipeGroceries = keptGroceries.toArray(new int[0][]);
+    recipeAmounts = keptAmounts.toArray(new long[0][]);
+    recipesByGrocery = new int[groceryCount][];
+    for (int g = 0; g < groceryCount; g++) {
+      recipesByGrocery[g] = new int[recipeCountByGrocery[g]];
+      recipeCountByGrocery[g] = 0;
+    }
+    for (int r = 0; r < candidates.length; r++) {
+      for (int g : recipeGroceries[r]) {
+        recipesByGrocery[g][recipeCountByGrocery[g]++] = r;
+      }
+    }
+
+    plan = new int[days];
+    Arrays.fill(plan, -1);
+    demand = new long[groceryCount][days];
+    groceryScore = new double[groceryCount];
+    left = new long[maxBatches];
+    touched = new int[groceryCount];
+    touchedStamp = new int[groceryCount];
+  }
+
+  /**
+   * Helper method for getting the amount of each grocery a recipe needs,
+   * in the unit the grocery is stored in. Ingredients naming the same grocery are added up.
+   *
+   * @param recipe the recipe
+   * @param groceryByIngredient the number of the grocery of each ingredient number, or -1
+   * @param keys the lowercase name of each grocery, by number
+   * @param units the unit each grocery is stored in, by number
+   * @param groceries receives the numbers of the groceries the recipe needs
+   * @param needed receives the amount needed of each of those groceries
+   * @return the number of groceries the recipe needs, or -1 if an ingredient is not in storage
+   *         or cannot be converted to the unit it is stored in
+   */
+
+  private static int neededAmounts(Recipe recipe, int[] groceryByIngredient, List<String> keys,
+      List<Unit> units, int[] groceries, long[] needed) {
+    int count = 0;
+
+    for (int i = 0; i < recipe.ingredientCount(); i++) {
+      int slot = recipe.requiredSlot(i);
+      int id = IngredientIds.idOf(slot);
+      int g = id < groceryByIngredient.length ? groceryByIngredient[id] : -1;
+      if (g < 0) {
+        return -1;
+      }
+
+      Unit unit = IngredientIds.unitOf(slot);
+      String key = keys.get(g);
+      if (!UnitConverter.isConvertible(unit, units.get(g), key)) {
+        return -1;
+      }
+      long amount = UnitConverter.convertScaledAmount(recipe.requiredAmount(i), unit,
+          units.get(g), key);
+
+      int j = 0;
+      while (j < count && groceries[j] != g) {
+        j++;
+      }
+      if (j == count) {
+        groceries[count++] = g;
+      }
+      needed[j] += amount;
+    }
+    return count;
+  }
+
+  /**
+   * Fills the days in order, each with the recipe that adds the most to the score,
+   * or leaves a day empty if no recipe adds anything.
+   */
+
+  private void fillGreedily() {
+    for (int day = 0; day < days && !isPastDeadline(); day++) {
+      int best = -1;
+
+      double bestGain = EPSILON;
+
+      for (int r = 0; r < candidates.length; r++) {
+        if ((r & 63) == 0 && isPastDeadline()) {
+          break;
+        }
+        double gain = gainOf(r, day);
+        if (gain > bestGain) {
+          best = r;
+          bestGain = gain;
+        }
+      }
+      change(day, best);
+    }
+  }
+
+  /**
+   * Helper method for computing how much adding a recipe to an empty day would add to the score,
+   * without changing the plan.
+   *
+   * @param recipe the number of the recipe
+   * @param day the empty day
+   * @return the gain, or NaN if the recipe cannot be made that day
+   */
+
+  private double gainOf(int recipe, int day) {
+    double gain = 0;
+    for (int i = 0; i < recipeGroceries[recipe].length && !Double.isNaN(gain); i++) {
+      int g = recipeGroceries[recipe][i];
+      demand[g][day] += recipeAmounts[recipe][i];
+      gain += scoreOf(g) - groceryScore[g];
+      demand[g][day] -= recipeAmounts[recipe][i];
+    }
+    return gain;
+  }
+
+  /**
+   * Tries random changes to the plan, keeping those that leave it feasible and do not lower
+   * the score. Half of the new recipes are drawn from those using a grocery at risk,
+   * so the changes go where they can help.
+   */
+
+  private void improveLocally() {
+    if (candidates.length == 0) {
+      return;
+    }
+    Random random = new Random(SEED);
+    int[] atRiskGroceries = new int[atRisk.length];
+    int atRiskCount = 0;
+    for (int g = 0; g < atRisk.length; g++) {
+      if (atRisk[g] && recipesByGrocery[g].length > 0) {
+        atRiskGroceries[atRiskCount++] = g;
+      }
+    }
+
+    int staleMoves = 0;
+    while (staleMoves < STALE_MOVE_LIMIT && !isPastDeadline()) {
+      double before = score;
+
+      if (days > 1 && random.nextInt(3) == 0) {
+        int first = random.nextInt(days);
+        int second = random.nextInt(days);
+        int firstRecipe = plan[first];
+        int secondRecipe = plan[second];
+        change(first, secondRecipe);
+        change(second, firstRecipe);
+        if (infeasibleCount > 0 || score < before - EPSILON) {
+          change(second, secondRecipe);
+          change(first, firstRecipe);
+        }
+      } else {
+        int day = random.nextInt(days);
+        int oldRecipe = plan[day];
+        int newRecipe;
+        if (random.nextBoolean()) {
+          newRecipe = random.nextInt(candidates.length + 1) - 1;
+        } else {
+          int[] using = recipesByGrocery[atRiskGroceries[random.nextInt(atRiskCount)]];
+          newRecipe = using[random.nextInt(using.length)];
+        }
+        change(day, newRecipe);
+        if (infeasibleCount > 0 || score < before - EPSILON) {
+          change(day, oldRecipe);
+        }
+      }
+      staleMoves = score > before + EPSILON ? 0 : staleMoves + 1;
+    }
+  }
+
+  /**
+   * Empties the days whose recipe adds nothing to the score. The local search keeps changes
+   * that leave the score as it is, so it can leave such recipes in the plan.
+   */
+
+  private void dropUselessMeals() {
+    for (int day = 0; day < days; day++) {
+      double before = score;
+      int recipe = plan[day];
+      change(day, -1);
+      if (infeasibleCount > 0 || score < before - EPSILON) {
+        change(day, recipe);
+      }
+    }
+  }
+
+  /**
+   * Sets the recipe of a day, and rescores the groceries used by the old and the new recipe.
+   *
+   * @param day the day
+   * @param recipe the number of the new recipe, or -1 for none
+   */
+
+  private void change(int day, int recipe) {
+    int oldRecipe = plan[day];
+    if (oldRecipe == recipe) {
+      return;
+    }
+    stamp++;
+    touchedCount = 0;
+    if (oldRecipe >= 0) {
+      addDemand(oldRecipe, day, -1);
+    }
+    if (recipe >= 0) {
+      addDemand(recipe, day, 1);
+    }
+    plan[day] = recipe;
+
+    for (int i = 0; i < touchedCount; i++) {
+      int g = touched[i];
+      double oldScore = groceryScore[g];
+      double newScore = scoreOf(g);
+
+      if (Double.isNaN(oldScore)) {
+        infeasibleCount--;
+      } else {
+        score -= oldScore;
+      }
+      if (Double.isNaN(newScore)) {
+        infeasibleCount++;
+      } else {
+        score += newScore;
+      }
+      groceryScore[g] = newScore;
+    }
+  }
+
+  /**
+   * Helper method for adding or removing the amounts a recipe uses on a day,
+   * and marking the groceries as touched by the current change.
+   *
+   * @param recipe the number of the recipe
+   * @param day the day
+   * @param sign 1 to add the amounts, -1 to remove them
+   */
+
+  private void addDemand(int recipe, int day, int sign) {
+    for (int i = 0; i < recipeGroceries[recipe].length; i++) {
+      int g = recipeGroceries[recipe][i];
+      demand[g][day] += sign * recipeAmounts[recipe][i];
+      if (touchedStamp[g] != stamp) {
+        touchedStamp[g] = stamp;
+        touched[touchedCount++] = g;
+      }
+    }
+  }
+
+  /**
+   * Uses a grocery day by day as the plan needs it, earliest expiry date first,
+   * skipping batches that have expired on the day.
+   *
+   * @param g the number of the grocery
+   * @return the value of the at-risk batches used, or NaN if some day needs more than is left
+   */
+
+  private double scoreOf(int g) {
+    long[] expiry = batchExpiry[g];
+    double[] value = batchValue[g];
+    int count = expiry.length;
+    long endDay = firstDay + days;
+    System.arraycopy(batchAmount[g], 0, left, 0, count);
+
+    int first = 0;
+    double rescued = 0;
+    for (int day = 0; day < days; day++) {
+      long needed = demand[g][day];
+      if (needed == 0) {
+        continue;
+      }
+      while (first < count && (left[first] == 0 || expiry[first] < firstDay + day)) {
+        first++;
+      }
+      for (int b = first; b < count && needed > 0; b++) {
+        long used = Math.min(left[b], needed);
+        left[b] -= used;
+        needed -= used;
+        if (expiry[b] < endDay) {
+          rescued += used * value[b];
+        }
+      }
+      if (needed > 0) {
+        return Double.NaN;
+      }
+    }
+    return rescued;
+  }
+
+  /**
+   * Helper method for telling if the time budget is spent.
+   *
+   * @return {@code true} if the search must stop
+   */
+
+  private boolean isPastDeadline() {
+    return System.nanoTime() - deadline >= 0;
+  }
+
+  /**
+   * Helper method for making the result from the current plan. The score is summed again
+   * from the groceries, so the rounding errors of the changes are not carried over.
+   *
+   * @return the meal plan
+   */
+
+  private MealPlan toMealPlan() {
+    Recipe[] meals = new Recipe[days];
+    for (int day = 0; day < days; day++) {
+      meals[day] = plan[day] < 0 ? null : candidates[plan[day]];
+    }
+
+    double rescuedValue = 0;
+    for (double score : groceryScore) {
+      rescuedValue += score;
+    }
+    return new MealPlan(LocalDate.ofEpochDay(firstDay), meals, rescuedValue, atRiskValue);
+  }
+}
@@ -1,6 +1,9 @@
 package edu.ntnu.idi.idatt.model;
 
 import edu.ntnu.idi.idatt.utils.ExceptionHandling;
+import edu.ntnu.idi.idatt.utils.Unit;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 /**
@@ -16,7 +19,23 @@ public class Recipe {
   private final String description;
   private final String process;
   private final Map<String, IngredientDetail> ingredients;
-  public FoodStorage storage;
+  private FoodStorage storage;
+
+  /**
+   * The storage a recipe without one of its own is checked against. It is never changed.
+   */
+
+  private static final FoodStorage NO_STORAGE = new FoodStorage();
+
+  /**
+   * The ingredients compiled into parallel arrays: for the ingredient at each position,
+   * its name, its slot in {@link IngredientIds} and the amount the recipe asks for,
+   * in thousandths of its standard unit.
+   */
+
+  private final String[] ingredientNames;
+  private final int[] requiredSlots;
+  private final long[] requiredAmounts;
 
   /**
    * Constructs a Recipe object with the specified details.
@@ -26,7 +45,9 @@ public class Recipe {
    * @param process      the step-by-step cooking process for the recipe
    * @param ingredients  a map of ingredients required for the recipe,
    *                     where the key is the ingredient name,
-   *                     and the value is the required amount
+   *                     and the value is the required amount.
+   *                     The recipe keeps a read-only copy, so later changes to the map
+   *                     or its details do not change the recipe.
    *
    * @throws IllegalArgumentException if the name, description, or process are invalid
    */
@@ -38,7 +59,19 @@ public class Recipe {
     this.description = validateAndSetDescription(description);
     this.process = validateAndSetProcess(process);
     this.ingredients = validateAndSetIngredients(ingredients);
-    this.storage = new FoodStorage();
+
+    int count = this.ingredients.size();
+    this.ingredientNames = new String[count];
+    this.requiredSlots = new int[count];
+    this.requiredAmounts = new long[count];
+
+    int i = 0;
+    for (Map.Entry<String, IngredientDetail> entry : this.ingredients.entrySet()) {
+      ingredientNames[i] = entry.getKey();
+      requiredSlots[i] = IngredientIds.slotOf(entry.getKey(), entry.getValue().getStandardUnit());
+      requiredAmounts[i] = entry.getValue().getScaledAmount();
+      i++;
+    }
   }
 
   public String getNameOfRecipe() {
@@ -53,14 +86,33 @@ public class Recipe {
     return process;
   }
 
+  /**
+   * Returns the ingredients of the recipe, in the order they were given.
+   * The map and its details are copies, so changing them does not change the recipe.
+   *
+   * @return a copy of the ingredients
+   */
   public Map<String, IngredientDetail> getIngredients() {
-    return ingredients;
+    Map<String, IngredientDetail> copy = new LinkedHashMap<>();
+    ingredients.forEach((name, detail) -> copy.put(name, detail.copy()));
+    return copy;
   }
 
   public FoodStorage getStorage() {
     return storage;
   }
 
+  /**
+   * Returns a copy of the recipe with another name. The copy has no storage set.
+   *
+   * @param newName the name of the copy
+   * @return the renamed copy
+   * @throws IllegalArgumentException if the name is invalid
+   */
+  Recipe withName(String newName) {
+    return new Recipe(newName, description, process, ingredients);
+  }
+
   // Set-methods ---------------------------------------------------------
 
   /**
@@ -68,6 +120,9 @@ public class Recipe {
    * This allows the recipe to check available ingredients against
    * the specified {@link FoodStorage}.
    *
+   * <p>A recipe shared between storages or threads should rather be checked with
+   * {@link #canMakeRecipe(FoodStorage)} or {@link RecipeEvaluator}, which do not change it.
+   *
    * @param storage the {@link FoodStorage} instance to associate with the recipe.
    * @throws IllegalArgumentException if the provided storage is null
    */
@@ -114,9 +169,11 @@ public class Recipe {
 
   /**
    * Validates and sets the ingredients of the recipe.
+   * The map and its details are copied, so the arrays compiled from them cannot get out of
+   * step with {@link #getIngredients()}.
    *
    * @param ingredients a map of ingredient names to their respective details
-   * @return the validated map of ingredients
+   * @return a read-only copy of the validated map of ingredients
    * @throws IllegalArgumentException if the ingredients map is null, empty,
    *         or contains invalid data
    *
@@ -126,7 +183,10 @@ public class Recipe {
   @SuppressWarnings("checkstyle:LineLength")
   private Map<String, IngredientDetail> validateAndSetIngredients(Map<String, IngredientDetail> ingredients) {
     ExceptionHandling.validateIngredients(ingredients);
-    return ingredients;
+
+    Map<String, IngredientDetail> copy = new LinkedHashMap<>();
+    ingredients.forEach((name, detail) -> copy.put(name, detail.copy()));
+    return Collections.unmodifiableMap(copy);
   }
 
 
@@ -146,18 +206,32 @@ public class Recipe {
    * - Spaghetti: Missing 100.00 g
    * - Tomato Sauce: Missing 50.00 ml
    * </pre>
+   *
+   * <p>A recipe that has not been given a storage is checked against an empty one.
    */
   public void getMissingIngredients() {
+    getMissingIngredients(storage != null ? storage : NO_STORAGE);
+  }
+
+  /**
+   * Prints ingredients that are missing or insufficient to make the recipe
+   * with the groceries in the given storage, like {@link #getMissingIngredients()}.
+   *
+   * @param storage the storage to check against
+   * @throws IllegalArgumentException if the storage is null
+   */
+  public void getMissingIngredients(FoodStorage storage) {
+    ExceptionHandling.nullStorage(storage);
+
     ingredients.forEach((ingredientName, requiredDetail) -> {
-      double availableAmount = storage.findGroceriesByName(ingredientName).stream()
-          .mapToDouble(Grocery::getAmount)
-          .sum();
+      long availableAmount =
+          storage.availableAmount(ingredientName, requiredDetail.getStandardUnit());
 
-      if (availableAmount < requiredDetail.getAmount()) {
-        double missingAmount = requiredDetail.getAmount() - availableAmount;
+      if (availableAmount < requiredDetail.getScaledAmount()) {
+        long missingAmount = requiredDetail.getScaledAmount() - availableAmount;
         System.out.printf("- %s: Missing %.2f %s%n",
             ingredientName,
-            missingAmount,
+            Unit.fromScaled(missingAmount),
             requiredDetail.getUnit());
       }
     });
@@ -173,25 +247,131 @@ public class Recipe {
    *   <li>Returns {@code false} if any ingredient is insufficient.</li>
    * </ul>
    * <b>Returns:</b> {@code true} if all ingredients are sufficient; {@code false} otherwise.
+   * A recipe that has not been given a storage cannot be made.
    */
   public boolean canMakeRecipe() {
-    // Use Map.entry for control flow mechanisms (e.g. return true/false)
-    for (Map.Entry<String, IngredientDetail> entry : ingredients.entrySet()) {
-      String ingredientName = entry.getKey();
-      IngredientDetail requiredDetail = entry.getValue();
+    return storage != null && canMakeRecipe(storage);
+  }
 
-      double availableAmount = storage.findGroceriesByName(ingredientName).stream()
-          .mapToDouble(Grocery::getAmount)
-          .sum();
+  /**
+   * Determines if the recipe can be made with the groceries in the given storage,
+   * without changing the recipe, see {@link RecipeEvaluator#canMake(Recipe, FoodStorage)}.
+   *
+   * @param storage the storage to check against
+   * @return {@code true} if all ingredients are sufficient; {@code false} otherwise
+   * @throws IllegalArgumentException if the storage is null
+   */
+  public boolean canMakeRecipe(FoodStorage storage) {
+    return RecipeEvaluator.canMake(this, storage);
+  }
 
-      // Check if available amount is less than the required amount
-      if (availableAmount < requiredDetail.getAmount()) {
+  /**
+   * Determines if the recipe can be made with the given available amounts,
+   * as returned by {@link FoodStorage#availableAmounts()}.
+   *
+   * <p>The recipe's slots are gathered from the array and compared with its required amounts,
+   * without looking up any names, so many recipes can be checked against one read
+   * of the storage.
+   * </p>
+   *
+   * @param availableAmounts the available amounts, indexed by slot
+   * @return {@code true} if every ingredient is available in the required amount
+   */
+  boolean canMakeWith(long[] availableAmounts) {
+    for (int i = 0; i < requiredSlots.length; i++) {
+      if (!isIngredientAvailable(i, availableAmounts)) {
         return false;
       }
     }
     return true;
   }
 
+  /**
+   * Returns the largest whole number of servings of the recipe the given available amounts
+   * are enough for, which is the smallest available amount divided by the required amount
+   * over the recipe's ingredients.
+   *
+   * @param availableAmounts the available amounts, indexed by slot,
+   *                         as returned by {@link FoodStorage#availableAmounts()}
+   * @return the number of servings, at most {@link Integer#MAX_VALUE}
+   */
+  int maxServingsWith(long[] availableAmounts) {
+    long servings = Integer.MAX_VALUE;
+
+    for (int i = 0; i < requiredSlots.length && servings > 0; i++) {
+      int slot = requiredSlots[i];
+      long available = slot < availableAmounts.length ? availableAmounts[slot] : 0;
+      servings = Math.min(servings, available / requiredAmounts[i]);
+    }
+    return (int) servings;
+  }
+
+  /**
+   * Returns the number of ingredients in the recipe, which is the number of positions
+   * in its compiled ingredient arrays.
+   *
+   * @return the number of ingredients
+   */
+  int ingredientCount() {
+    return ingredientNames.length;
+  }
+
+  /**
+   * Returns the name of the ingredient at a position, as listed in the recipe.
+   *
+   * @param index the position of the ingredient
+   * @return the name of the ingredient
+   */
+  String ingredientName(int index) {
+    return ingredientNames[index];
+  }
+
+  /**
+   * Returns the slot of the ingredient at a position, see {@link IngredientIds}.
+   *
+   * @param index the position of the ingredient
+   * @return the slot of the ingredient in the unit the recipe asks for it in
+   */
+  int requiredSlot(int index) {
+    return requiredSlots[index];
+  }
+
+  /**
+   * Returns the amount of the ingredient at a position that the recipe asks for.
+   *
+   * @param index the position of the ingredient
+   * @return the amount, in thousandths of the unit of {@link #requiredSlot(int)}
+   */
+  long requiredAmount(int index) {
+    return requiredAmounts[index];
+  }
+
+  /**
+   * Checks whether the available amounts hold enough of the ingredient at a position.
+   *
+   * @param index the position of the ingredient
+   * @param availableAmounts the available amounts, indexed by slot
+   * @return {@code true} if the ingredient is available in the required amount
+   */
+  boolean isIngredientAvailable(int index, long[] availableAmounts) {
+    int slot = requiredSlots[index];
+    long available = slot < availableAmounts.length ? availableAmounts[slot] : 0;
+    return available >= requiredAmounts[index];
+  }
+
+  /**
+   * Checks whether the given storage has enough of the ingredient at a position.
+   *
+   * @param index the position of the ingredient
+   * @param storage the storage to check against
+   * @return {@code true} if the storage has at least the amount the recipe asks for
+   */
+  boolean isIngredientAvailable(int index, FoodStorage storage) {
+    String ingredientName = ingredientNames[index];
+    Unit unit = ingredients.get(ingredientName).getStandardUnit();
+    return storage.availableAmount(ingredientName, unit) >= requiredAmounts[index];
+  }
+
   /**
    * Returns a formatted string representation of the Recipe object.
    * The output includes the recipe's name, description, process,
@@ -1,22 +1,100 @@
 package edu.ntnu.idi.idatt.model;
 
 import edu.ntnu.idi.idatt.utils.ExceptionHandling;
+import edu.ntnu.idi.idatt.utils.NameSearchIndex;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Represents a cookbook that stores recipes and provides functionality
  * to manage and search for recipes.
+ *
+ * <p>The recipes are kept in the order they were added, together with an index by
+ * lowercase name, so a recipe is looked up and a duplicate name is found without
+ * going through the list. A {@link NameSearchIndex} of the names finds recipes by the start
+ * of their name, or by a name with typing errors in it.
+ * </p>
+ *
+ * <p>The cookbook keeps an index from each ingredient name to the recipes using it.
+ * For every storage it has been asked about, it keeps track of which recipes can be made,
+ * and listens for changes to the storage: when the stock of a grocery changes,
+ * only the recipes using that grocery are checked again.
+ * </p>
+ *
+ * <p>A cookbook may be opened on a {@link RecipeCatalog}. The recipes of the catalog are
+ * looked up in the catalog when they are asked for by name, and are included in the recipes
+ * that can be made, but they cannot be removed or renamed, and are not part of
+ * {@link #getRecipes()}, the searches or the planning. Recipes added to the cookbook are kept
+ * with it as usual.
+ * </p>
  */
 public class RecipeBook {
 
   private final List<Recipe> recipes;
 
+  /**
+   * The catalog of read-only recipes, or {@code null} if the cookbook has none.
+   */
+
+  private final RecipeCatalog catalog;
+
+  /**
+   * The recipes by lowercase recipe name.
+   */
+
+  private final Map<String, Recipe> recipesByName = new HashMap<>();
+
+  /**
+   * The recipes, searchable by the start of their name or by a misspelled name.
+   */
+
+  private final NameSearchIndex<Recipe> nameSearch = new NameSearchIndex<>();
+
+  /**
+   * The recipes using each ingredient, by lowercase ingredient name.
+   */
+
+  private final Map<String, List<Recipe>> recipesByIngredient = new ConcurrentHashMap<>();
+
+  /**
+   * The recipe availability kept up to date for each storage.
+   * A storage that is no longer used elsewhere is dropped.
+   */
+
+  private final Map<FoodStorage, Availability> availabilities =
+      Collections.synchronizedMap(new WeakHashMap<>());
+
   /**
    * Constructs an empty cookbook.
    */
   public RecipeBook() {
     this.recipes = new ArrayList<>();
+    this.catalog = null;
+  }
+
+  /**
+   * Constructs a cookbook holding the recipes of a catalog, and no other recipes yet.
+   *
+   * @param catalog the catalog of the cookbook
+   * @throws IllegalArgumentException if the catalog is null
+   */
+  public RecipeBook(RecipeCatalog catalog) {
+    if (catalog == null) {
+      throw new IllegalArgumentException("Catalog cannot be null.");
+    }
+    this.recipes = new ArrayList<>();
+    this.catalog = catalog;
   }
 
   /**
@@ -27,40 +105,480 @@ public class RecipeBook {
    */
   public void addRecipe(Recipe recipe) {
     ExceptionHandling.nullRecipe(recipe);
-    ExceptionHandling.validateExistingRecipe(recipe, recipes);
+    ExceptionHandling.validateExistingRecipe(recipe, recipesByName);
+    validateNotInCatalog(recipe.getNameOfRecipe());
 
     recipes.add(recipe);
+    recipesByName.put(nameKey(recipe.getNameOfRecipe()), recipe);
+    nameSearch.put(recipe.getNameOfRecipe(), recipe);
+    index(recipe);
+  }
+
+  /**
+   * Removes a recipe from the cookbook.
+   *
+   * @param recipeName the name of the recipe to remove, in any case
+   * @return {@code true} if the recipe was in the cookbook
+   */
+  public boolean removeRecipe(String recipeName) {
+    Recipe recipe = recipeName == null ? null : recipesByName.remove(nameKey(recipeName));
+    if (recipe == null) {
+      return false;
+    }
+
+    recipes.remove(recipe);
+    nameSearch.remove(recipeName);
+    unindex(recipe);
+    return true;
   }
 
   /**
-   * Retrieves a recipe by name.
+   * Gives a recipe in the cookbook a new name. The recipe keeps its place in the cookbook,
+   * but is replaced by a copy with the new name, since recipes may be shared.
+   *
+   * @param recipeName the current name of the recipe, in any case
+   * @param newName the new name of the recipe
+   * @return the renamed recipe
+   * @throws IllegalArgumentException if the recipe is not in the cookbook, the new name is
+   *                                  invalid, or another recipe already has the new name
+   */
+  public Recipe renameRecipe(String recipeName, String newName) {
+    Recipe recipe = recipeName == null ? null : recipesByName.get(nameKey(recipeName));
+    if (recipe == null) {
+      throw new IllegalArgumentException("Recipe does not exist in the cookbook.");
+    }
+
+    Recipe renamed = recipe.withName(newName);
+    Recipe existing = recipesByName.get(nameKey(newName));
+    if (existing != null && existing != recipe) {
+      throw new IllegalArgumentException(
+          "Recipe with the same name already exists in the cookbook.");
+    }
+    validateNotInCatalog(newName);
+
+    recipes.set(recipes.indexOf(recipe), renamed);
+    recipesByName.remove(nameKey(recipe.getNameOfRecipe()));
+    recipesByName.put(nameKey(newName), renamed);
+    nameSearch.remove(recipe.getNameOfRecipe());
+    nameSearch.put(newName, renamed);
+    unindexIngredients(recipe);
+    indexIngredients(renamed);
+
+    for (Map.Entry<FoodStorage, Availability> entry : trackedStorages()) {
+      entry.getValue().replaceRecipe(recipe, renamed, entry.getKey());
+    }
+    return renamed;
+  }
+
+  /**
+   * Retrieves a recipe by name, looking in the catalog if the cookbook has one
+   * and the recipe was not added to the cookbook.
    *
    * @param recipeName the name of the recipe to retrieve
    * @return the recipe with the specified name, or null if not found
    */
   public Recipe getRecipe(String recipeName) {
-    return recipes.stream()
-        .filter(recipe -> recipe.getNameOfRecipe().equalsIgnoreCase(recipeName))
-        .findFirst()
-        .orElse(null);
+    if (recipeName == null) {
+      return null;
+    }
+    Recipe recipe = recipesByName.get(nameKey(recipeName));
+    return recipe == null && catalog != null ? catalog.getRecipe(recipeName) : recipe;
+  }
+
+  /**
+   * Returns the recipes whose names start with the given text, ignoring case,
+   * in alphabetical order.
+   *
+   * @param prefix the start of the recipe names
+   * @param limit the largest number of recipes to return
+   * @return at most {@code limit} recipes
+   * @throws IllegalArgumentException if the text is null or the limit is not positive
+   */
+  public List<Recipe> searchByPrefix(String prefix, int limit) {
+    return nameSearch.searchPrefix(prefix, limit);
+  }
+
+  /**
+   * Returns the recipes whose names are spelled like the given text, allowing a few typing
+   * errors, closest first. See {@link NameSearchIndex#searchFuzzy(String, int)}.
+   *
+   * @param query the text to search for
+   * @param limit the largest number of recipes to return
+   * @return at most {@code limit} recipes
+   * @throws IllegalArgumentException if the text is null or the limit is not positive
+   */
+  public List<Recipe> searchFuzzy(String query, int limit) {
+    return nameSearch.searchFuzzy(query, limit);
+  }
+
+  /**
+   * Returns recipes the user may have meant by the given text: first the recipes whose names
+   * start with it, then the recipes whose names are spelled like it.
+   *
+   * @param text the text the user typed
+   * @param limit the largest number of recipes to return
+   * @return at most {@code limit} distinct recipes
+   * @throws IllegalArgumentException if the text is null or the limit is not positive
+   */
+  public List<Recipe> suggestRecipes(String text, int limit) {
+    Set<Recipe> suggestions = new LinkedHashSet<>(searchByPrefix(text, limit));
+
+    for (Recipe recipe : searchFuzzy(text, limit)) {
+      if (suggestions.size() == limit) {
+        break;
+      }
+      suggestions.add(recipe);
+    }
+    return new ArrayList<>(suggestions);
+  }
+
+  /**
+   * Returns every recipe in the cookbook, in the order they were added.
+   *
+   * @return a read-only view of the recipes
+   */
+  public List<Recipe> getRecipes() {
+    return Collections.unmodifiableList(recipes);
   }
 
   /**
    * Returns a list of recipes that can be made with the current storage.
    *
+   * <p>The first call for a storage checks every recipe, and starts listening for changes
+   * to the storage. Later calls return the recipes that are kept up to date, in time
+   * proportional to the number of recipes returned, in the order of the cookbook.
+   * The recipes of the catalog, if the
+   * cookbook has one, are checked against the catalog on every call, and come after the
+   * recipes added to the cookbook.
+   *
    * @param storage the storage to check against
    * @return a list of recipes that can be made
    */
   public List<Recipe> getAvailableRecipes(FoodStorage storage) {
-    List<Recipe> availableRecipes = new ArrayList<>();
+    ExceptionHandling.nullStorage(storage);
+
+    Availability availability;
+    synchronized (availabilities) {
+      availability = availabilities.get(storage);
 
-    for (Recipe recipe : recipes) {
-      recipe.setStorage(storage); // Attach the storage to the recipe
-      if (recipe.canMakeRecipe()) {
-        availableRecipes.add(recipe);
+      if (availability == null) {
+        availability = new Availability();
+        availabilities.put(storage, availability);
+        storage.addListener(availability);
+        availability.addRecipes(recipes, storage);
       }
     }
 
-    return availableRecipes;
+    List<Recipe> available = availability.getAvailableRecipes();
+    if (catalog != null) {
+      available.addAll(catalog.getAvailableRecipes(storage));
+    }
+    return available;
+  }
+
+  /**
+   * Returns the largest whole number of servings of every recipe in the cookbook that can be
+   * made with the groceries in a storage, in the order the recipes were added.
+   * A recipe that cannot be made has 0 servings.
+   * See {@link RecipeEvaluator#maxServings(List, FoodStorage)}.
+   *
+   * @param storage the storage to check against
+   * @return the number of servings of each recipe
+   * @throws IllegalArgumentException if the storage is null
+   */
+  public Map<Recipe, Integer> getMaxServings(FoodStorage storage) {
+    return RecipeEvaluator.maxServings(recipes, storage);
+  }
+
+  /**
+   * Returns what to buy to make a number of servings of each of a set of recipes,
+   * with the amounts of all the recipes added up per ingredient.
+   * See {@link RecipeEvaluator#shoppingList(Map, FoodStorage)}.
+   *
+   * @param servingsByRecipe the number of servings to make of each recipe
+   * @param storage the storage with the groceries already at hand
+   * @return the shopping list
+   * @throws IllegalArgumentException if the map, any recipe or number of servings in it,
+   *                                  or the storage is null,
+   *                                  or a number of servings is not positive
+   */
+  public ShoppingList getShoppingList(Map<Recipe, Integer> servingsByRecipe, FoodStorage storage) {
+    return RecipeEvaluator.shoppingList(servingsByRecipe, storage);
+  }
+
+  /**
+   * Plans one recipe from the cookbook per day, starting today, so that as much as possible
+   * of the value of the groceries expiring in the period is used before it expires.
+   * The search runs for at most {@link MealPlanner#DEFAULT_TIME_BUDGET}.
+   *
+   * @param storage the storage with the groceries to use
+   * @param days the number of days to plan for
+   * @return the meal plan
+   * @throws IllegalArgumentException if the storage is null or the number of days is not positive
+   */
+  public MealPlan planMeals(FoodStorage storage, int days) {
+    return planMeals(storage, days, MealPlanner.DEFAULT_TIME_BUDGET);
+  }
+
+  /**
+   * Plans one recipe from the cookbook per day, starting today, within a time budget.
+   * See {@link MealPlanner#plan(FoodStorage, List, int, Duration)}.
+   *
+   * @param storage the storage with the groceries to use
+   * @param days the number of days to plan for
+   * @param timeBudget how long the search may run
+   * @return the meal plan
+   * @throws IllegalArgumentException if the storage is null, the number of days is not positive,
+   *                                  or the time budget is null or negative
+   */
+  public MealPlan planMeals(FoodStorage storage, int days, Duration timeBudget) {
+    return MealPlanner.plan(storage, recipes, days, timeBudget);
+  }
+
+  /**
+   * Helper method for adding a recipe to the ingredient index, and to the availability
+   * of every tracked storage.
+   *
+   * @param recipe the recipe to add
+   */
+  private void index(Recipe recipe) {
+    indexIngredients(recipe);
+
+    for (Map.Entry<FoodStorage, Availability> entry : trackedStorages()) {
+      entry.getValue().addRecipe(recipe, entry.getKey());
+    }
+  }
+
+  /**
+   * Helper method for removing a recipe from the ingredient index, and from the availability
+   * of every tracked storage.
+   *
+   * @param recipe the recipe to remove
+   */
+  private void unindex(Recipe recipe) {
+    unindexIngredients(recipe);
+
+    for (Map.Entry<FoodStorage, Availability> entry : trackedStorages()) {
+      entry.getValue().removeRecipe(recipe);
+    }
+  }
+
+  /**
+   * Helper method for adding a recipe to the ingredient index.
+   *
+   * @param recipe the recipe to add
+   */
+  private void indexIngredients(Recipe recipe) {
+    for (String key : ingredientKeys(recipe)) {
+      recipesByIngredient.computeIfAbsent(key, k -> new CopyOnWriteArrayList<>()).add(recipe);
+    }
+  }
+
+  /**
+   * Helper method for removing a recipe from the ingredient index.
+   *
+   * @param recipe the recipe to remove
+   */
+  private void unindexIngredients(Recipe recipe) {
+    for (String key : ingredientKeys(recipe)) {
+      List<Recipe> using = recipesByIngredient.get(key);
+      if (using != null) {
+        using.remove(recipe);
+      }
+    }
+  }
+
+  /**
+   * Helper method for copying the tracked storages and their availability,
+   * so they can be updated without holding the lock of the map.
+   *
+   * @return a copy of the entries of {@code availabilities}
+   */
+  private List<Map.Entry<FoodStorage, Availability>> trackedStorages() {
+    synchronized (availabilities) {
+      return new ArrayList<>(availabilities.entrySet());
+    }
+  }
+
+  /**
+   * Helper method for validating that a recipe name is not taken by a recipe in the catalog.
+   *
+   * @param recipeName the name of the recipe
+   * @throws IllegalArgumentException if the catalog has a recipe with the name
+   */
+  private void validateNotInCatalog(String recipeName) {
+    if (catalog != null && catalog.contains(recipeName)) {
+      throw new IllegalArgumentException(
+          "Recipe with the same name already exists in the cookbook.");
+    }
+  }
+
+  /**
+   * Helper method for getting the key of a recipe name in {@code recipesByName}.
+   *
+   * @param recipeName the name of the recipe
+   * @return the lowercase name
+   */
+  private static String nameKey(String recipeName) {
+    return recipeName.toLowerCase();
+  }
+
+  /**
+   * Helper method for getting the distinct lowercase names of a recipe's ingredients.
+   *
+   * @param recipe the recipe
+   * @return the lowercase ingredient names
+   */
+  private static Set<String> ingredientKeys(Recipe recipe) {
+    Set<String> keys = new LinkedHashSet<>();
+    for (String ingredientName : recipe.getIngredients().keySet()) {
+      keys.add(ingredientName.toLowerCase());
+    }
+    return keys;
+  }
+
+  /**
+   * Which recipes can be made with one storage, kept up to date by listening to the storage.
+   *
+   * <p>For each recipe, it keeps which of its ingredients the storage has enough of, and how
+   * many those are. A recipe can be made when that count reaches its number of ingredients.
+   * An ingredient is checked again while holding this object's lock, so a check that reads
+   * an older state of the storage is always followed by one that reads the newer state.
+   * </p>
+   *
+   * <p>Each tracked recipe has a position matching its place in the cookbook: recipes added
+   * later get higher positions, and a renamed recipe takes over the position of the recipe
+   * it replaces. The available recipes are kept by position, so they are listed in the order
+   * of the cookbook, however often they stop and start being available.
+   * </p>
+   */
+  private final class Availability implements StorageListener {
+
+    private final Map<Recipe, boolean[]> satisfied = new IdentityHashMap<>();
+    private final Map<Recipe, Integer> satisfiedCount = new IdentityHashMap<>();
+    private final Map<Recipe, Long> positions = new IdentityHashMap<>();
+    private final TreeMap<Long, Recipe> available = new TreeMap<>();
+    private long nextPosition;
+
+    /**
+     * Starts tracking a recipe, checking all its ingredients against the storage.
+     *
+     * @param recipe the recipe to track
+     * @param storage the storage the recipe is checked against
+     */
+    synchronized void addRecipe(Recipe recipe, FoodStorage storage) {
+      track(recipe, nextPosition++, checkIngredients(recipe, storage));
+    }
+
+    /**
+     * Replaces a tracked recipe with another one at the same position, such as a renamed copy,
+     * checking all its ingredients against the storage.
+     *
+     * @param recipe the recipe to stop tracking
+     * @param replacement the recipe to track in its place
+     * @param storage the storage the replacement is checked against
+     */
+    synchronized void replaceRecipe(Recipe recipe, Recipe replacement, FoodStorage storage) {
+      Long position = positions.get(recipe);
+      removeRecipe(recipe);
+      track(replacement, position != null ? position : nextPosition++,
+          checkIngredients(replacement, storage));
+    }
+
+    /**
+     * Starts tracking many recipes, checking them all against one read of the storage,
+     * in parallel for large lists.
+     * The read is taken while holding this object's lock, so changes made after it
+     * are checked again once the recipes are tracked.
+     *
+     * @param recipes the recipes to track
+     * @param storage the storage the recipes are checked against
+     */
+    synchronized void addRecipes(List<Recipe> recipes, FoodStorage storage) {
+      boolean[][] states =
+          RecipeEvaluator.ingredientStates(recipes, storage.availableAmounts());
+
+      for (int i = 0; i < states.length; i++) {
+        track(recipes.get(i), nextPosition++, states[i]);
+      }
+    }
+
+    /**
+     * Stops tracking a recipe.
+     *
+     * @param recipe the recipe to stop tracking
+     */
+    synchronized void removeRecipe(Recipe recipe) {
+      satisfied.remove(recipe);
+      satisfiedCount.remove(recipe);
+      Long position = positions.remove(recipe);
+      if (position != null) {
+        available.remove(position);
+      }
+    }
+
+    @Override
+    public synchronized void groceryChanged(FoodStorage storage, String groceryName) {
+      for (Recipe recipe : recipesByIngredient.getOrDefault(groceryName, List.of())) {
+        boolean[] ingredientState = satisfied.get(recipe);
+        if (ingredientState == null) {
+          // The recipe is being added, and will be checked in full
+          continue;
+        }
+
+        int count = satisfiedCount.get(recipe);
+        for (int i = 0; i < ingredientState.length; i++) {
+          if (recipe.ingredientName(i).equalsIgnoreCase(groceryName)) {
+            boolean isAvailable = recipe.isIngredientAvailable(i, storage);
+
+            if (isAvailable != ingredientState[i]) {
+              ingredientState[i] = isAvailable;
+              count += isAvailable ? 1 : -1;
+            }
+          }
+        }
+        satisfiedCount.put(recipe, count);
+        updateAvailable(recipe);
+      }
+    }
+
+    /**
+     * Returns the recipes that can be made, in the order of the cookbook.
+     *
+     * @return a copy of the available recipes
+     */
+    synchronized List<Recipe> getAvailableRecipes() {
+      return new ArrayList<>(available.values());
+    }
+
+    private boolean[] checkIngredients(Recipe recipe, FoodStorage storage) {
+      boolean[] ingredientState = new boolean[recipe.ingredientCount()];
+
+      for (int i = 0; i < ingredientState.length; i++) {
+        ingredientState[i] = recipe.isIngredientAvailable(i, storage);
+      }
+      return ingredientState;
+    }
+
+    private void track(Recipe recipe, long position, boolean[] ingredientState) {
+      int count = 0;
+      for (boolean isAvailable : ingredientState) {
+        count += isAvailable ? 1 : 0;
+      }
+
+      satisfied.put(recipe, ingredientState);
+      satisfiedCount.put(recipe, count);
+      positions.put(recipe, position);
+      updateAvailable(recipe);
+    }
+
+    private void updateAvailable(Recipe recipe) {
+      long position = positions.get(recipe);
+      if (satisfiedCount.get(recipe) == recipe.ingredientCount()) {
+        available.put(position, recipe);
+      } else {
+        available.remove(position);
+      }
+    }
   }
 }
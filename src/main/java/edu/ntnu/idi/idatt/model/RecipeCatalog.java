@@ -0,0 +1,529 @@
+package edu.ntnu.idi.idatt.model;
+
+import edu.ntnu.idi.idatt.utils.ExceptionHandling;
+import edu.ntnu.idi.idatt.utils.Unit;
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A read-only catalog of recipes, kept in a file that is mapped into memory. Opening a catalog
+ * does not read the recipes, so it takes the same time however many recipes there are,
+ * and programs that open the same catalog share the pages the operating system has cached
+ * instead of each keeping its own copy.
+ *
+ * <p>A catalog is built once from a collection of recipes with
+ * {@link #build(Collection, Path)}, and is not changed afterwards. The file holds, in order:
+ * <ul>
+ *   <li>A header: the magic bytes {@code FWRC}, the format version, {@value #VERSION},
+ *   the number of recipes and of distinct ingredient names, and where the ingredient names
+ *   and the recipe index start.</li>
+ *   <li>The lowercase ingredient names, sorted. An ingredient of a recipe refers to its name
+ *   by its position here.</li>
+ *   <li>The recipe index: the position of every recipe in the file, sorted by lowercase name.</li>
+ *   <li>The recipes, in the same order: their lowercase name, name, description and process,
+ *   and for each ingredient the position of its lowercase name, its name as written in the
+ *   recipe, its standard unit and the amount, in thousandths of the unit.</li>
+ *   <li>The text, in UTF-8, with every distinct string once. The rest of the file refers to
+ *   a string by where it starts and how many bytes it has.</li>
+ * </ul>
+ * Every number has a fixed width, so a recipe is read where it is without reading what comes
+ * before it. Names are sorted by their UTF-8 bytes and found by binary search.
+ * </p>
+ *
+ * <p>A {@link Recipe} is only made from the file when it is asked for, and is kept, so asking
+ * for it again gives the same recipe. Finding the recipes that can be made with a storage
+ * reads the ingredients and amounts directly from the file, and only makes the recipes that
+ * can be made. Like a snapshot, the file is trusted once its header has been checked.
+ * </p>
+ */
+
+public final class RecipeCatalog {
+
+  /**
+   * The version of the format written. A catalog of another version is not opened.
+   */
+
+  public static final int VERSION = 1;
+
+  private static final byte[] MAGIC = {'F', 'W', 'R', 'C'};
+  private static final Unit[] UNITS = Unit.values();
+  private static final Comparator<String> BY_BYTES =
+      Comparator.comparing(RecipeCatalog::utf8, Arrays::compareUnsigned);
+
+  private static final int RECIPE_COUNT = 8;
+  private static final int INGREDIENT_COUNT = 12;
+  private static final int INGREDIENT_NAMES = 16;
+  private static final int RECIPE_INDEX = 20;
+  private static final int HEADER_SIZE = 24;
+
+  /**
+   * The size of a reference to a string: where it starts, and its length in bytes.
+   */
+
+  private static final int STRING_SIZE = 8;
+
+  private static final int RECIPE_KEY = 0;
+  private static final int RECIPE_NAME = 8;
+  private static final int RECIPE_DESCRIPTION = 16;
+  private static final int RECIPE_PROCESS = 24;
+  private static final int RECIPE_INGREDIENTS = 32;
+  private static final int RECIPE_SIZE = 36;
+
+  private static final int INGREDIENT_ID = 0;
+  private static final int INGREDIENT_NAME = 4;
+  private static final int INGREDIENT_UNIT = 12;
+  private static final int INGREDIENT_AMOUNT = 13;
+  private static final int INGREDIENT_SIZE = 21;
+
+  private final ByteBuffer buffer;
+  private final int recipeCount;
+  private final int ingredientCount;
+  private final int ingredientNames;
+  private final int recipeIndex;
+
+  /**
+   * The recipes made from the file so far, by their position in the file.
+   */
+
+  private final Map<Integer, Recipe> recipes = new ConcurrentHashMap<>();
+
+  private RecipeCatalog(ByteBuffer buffer) {
+    this.buffer = buffer;
+    this.recipeCount = buffer.getInt(RECIPE_COUNT);
+    this.ingredientCount = buffer.getInt(INGREDIENT_COUNT);
+    this.ingredientNames = buffer.getInt(INGREDIENT_NAMES);
+    this.recipeIndex = buffer.getInt(RECIPE_INDEX);
+  }
+
+  /**
+   * Builds a catalog of recipes into a file. The catalog is first written to a temporary file
+   * next to it and flushed to the disk, and then moved in place of the file, so a program that
+   * has the previous catalog open keeps reading it as it was.
+   *
+   * @param recipes the recipes of the catalog
+   * @param file the file to build the catalog in
+   * @throws IOException if the file cannot be written
+   * @throws IllegalArgumentException if the recipes, a recipe or the file is null, if two
+   *                                  recipes have the same name, or if the catalog would be
+   *                                  larger than 2 GB
+   */
+
+  public static void build(Collection<Recipe> recipes, Path file) throws IOException {
+    ExceptionHandling.nullRecipes(recipes);
+    if (file == null) {
+      throw new IllegalArgumentException("File cannot be null.");
+    }
+
+    byte[] catalog = encode(recipes);
+
+    Path directory = file.toAbsolutePath().getParent();
+    Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+    try {
+      try (FileOutputStream out = new FileOutputStream(temporary.toFile())) {
+        out.write(catalog);
+        out.getFD().sync();
+      }
+      Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temporary);
+    }
+  }
+
+  /**
+   * Opens a catalog built by {@link #build(Collection, Path)}, mapping the file into memory
+   * without reading the recipes. The file is not open after the call, but the mapping stays
+   * valid for as long as the catalog is used.
+   *
+   * @param file the file of the catalog
+   * @return the catalog
+   * @throws IOException if the file cannot be read, or is not a catalog of this version
+   * @throws IllegalArgumentException if the file is null
+   */
+
+  public static RecipeCatalog open(Path file) throws IOException {
+    if (file == null) {
+      throw new IllegalArgumentException("File cannot be null.");
+    }
+
+    ByteBuffer buffer;
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+        throw new IOException("Not a recipe catalog.");
+      }
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    }
+
+    for (int i = 0; i < MAGIC.length; i++) {
+      if (buffer.get(i) != MAGIC[i]) {
+        throw new IOException("Not a recipe catalog.");
+      }
+    }
+    int version = buffer.getInt(MAGIC.length);
+    if (version != VERSION) {
+      throw new IOException("Unsupported recipe catalog version " + version + ".");
+    }
+
+    long recipeCount = buffer.getInt(RECIPE_COUNT);
+    long ingredientCount = buffer.getInt(INGREDIENT_COUNT);
+    long ingredientNames = buffer.getInt(INGREDIENT_NAMES);
+    long recipeIndex = buffer.getInt(RECIPE_INDEX);
+    if (recipeCount < 0 || ingredientCount < 0 || ingredientNames != HEADER_SIZE
+        || recipeIndex != ingredientNames + ingredientCount * STRING_SIZE
+        || recipeIndex + recipeCount * Integer.BYTES > buffer.capacity()) {
+      throw new IOException("Recipe catalog is damaged.");
+    }
+    return new RecipeCatalog(buffer);
+  }
+
+  /**
+   * Returns the number of recipes in the catalog.
+   *
+   * @return the number of recipes
+   */
+
+  public int size() {
+    return recipeCount;
+  }
+
+  /**
+   * Checks whether the catalog has a recipe with the given name, ignoring case.
+   *
+   * @param recipeName the name of the recipe
+   * @return {@code true} if the catalog has the recipe
+   */
+
+  public boolean contains(String recipeName) {
+    return recipeName != null && findRecipe(utf8(recipeName.toLowerCase())) >= 0;
+  }
+
+  /**
+   * Retrieves a recipe by name, ignoring case, making it from the file the first time
+   * it is asked for.
+   *
+   * @param recipeName the name of the recipe to retrieve
+   * @return the recipe with the specified name, or null if not found
+   */
+
+  public Recipe getRecipe(String recipeName) {
+    if (recipeName == null) {
+      return null;
+    }
+    int position = findRecipe(utf8(recipeName.toLowerCase()));
+    return position < 0 ? null : recipeAt(position);
+  }
+
+  /**
+   * Returns the recipes in the catalog that can be made with a storage, in the order of their
+   * names. The storage is read once, and the recipes are checked against the amounts read,
+   * going through the ingredients in the file.
+   *
+   * @param storage the storage to check against
+   * @return the recipes that can be made
+   * @throws IllegalArgumentException if the storage is null
+   */
+
+  public List<Recipe> getAvailableRecipes(FoodStorage storage) {
+    ExceptionHandling.nullStorage(storage);
+
+    long[] amounts = storage.availableAmounts(this::findIngredient, ingredientCount);
+    List<Recipe> available = new ArrayList<>();
+
+    for (int i = 0; i < recipeCount; i++) {
+      int position = buffer.getInt(recipeIndex + i * Integer.BYTES);
+      if (canMake(position, amounts)) {
+        available.add(recipeAt(position));
+      }
+    }
+    return available;
+  }
+
+  /**
+   * Helper method for checking whether the recipe at a position in the file can be made.
+   *
+   * @param position the position of the recipe
+   * @param amounts the available amounts, see {@link FoodStorage#availableAmounts}
+   * @return {@code true} if every ingredient is available in the amount the recipe asks for
+   */
+
+  private boolean canMake(int position, long[] amounts) {
+    int count = buffer.getInt(position + RECIPE_INGREDIENTS);
+    int ingredient = position + RECIPE_SIZE;
+
+    for (int i = 0; i < count; i++, ingredient += INGREDIENT_SIZE) {
+      int slot = buffer.getInt(ingredient + INGREDIENT_ID) * UNITS.length
+          + buffer.get(ingredient + INGREDIENT_UNIT);
+      if (amounts[slot] < buffer.getLong(ingredient + INGREDIENT_AMOUNT)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Helper method for getting the recipe at a position in the file,
+   * making it the first time it is asked for.
+   *
+   * @param position the position of the recipe
+   * @return the recipe
+   */
+
+  private Recipe recipeAt(int position) {
+    return recipes.computeIfAbsent(position, this::readRecipe);
+  }
+
+  /**
+   * Helper method for making the recipe at a position in the file.
+   *
+   * @param position the position of the recipe
+   * @return the recipe
+   */
+
+  private Recipe readRecipe(int position) {
+    int count = buffer.getInt(position + RECIPE_INGREDIENTS);
+    Map<String, IngredientDetail> ingredients = new LinkedHashMap<>();
+    int ingredient = position + RECIPE_SIZE;
+
+    for (int i = 0; i < count; i++, ingredient += INGREDIENT_SIZE) {
+      ingredients.put(readString(ingredient + INGREDIENT_NAME),
+          new IngredientDetail(buffer.getLong(ingredient + INGREDIENT_AMOUNT),
+              UNITS[buffer.get(ingredient + INGREDIENT_UNIT)]));
+    }
+    return new Recipe(readString(position + RECIPE_NAME),
+        readString(position + RECIPE_DESCRIPTION), readString(position + RECIPE_PROCESS),
+        ingredients);
+  }
+
+  /**
+   * Helper method for finding a recipe by its lowercase name.
+   *
+   * @param key the lowercase name, in UTF-8
+   * @return the position of the recipe in the file, or -1 if there is none
+   */
+
+  private int findRecipe(byte[] key) {
+    int low = 0;
+    int high = recipeCount - 1;
+
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      int position = buffer.getInt(recipeIndex + middle * Integer.BYTES);
+      int comparison = compareString(position + RECIPE_KEY, key);
+      if (comparison < 0) {
+        low = middle + 1;
+      } else if (comparison > 0) {
+        high = middle - 1;
+      } else {
+        return position;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Helper method for finding the position of an ingredient name among the ingredient names.
+   *
+   * @param key the lowercase name of the ingredient
+   * @return the position of the name, or -1 if no recipe in the catalog uses the ingredient
+   */
+
+  private int findIngredient(String key) {
+    byte[] bytes = utf8(key);
+    int low = 0;
+    int high = ingredientCount - 1;
+
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      int comparison = compareString(ingredientNames + middle * STRING_SIZE, bytes);
+      if (comparison < 0) {
+        low = middle + 1;
+      } else if (comparison > 0) {
+        high = middle - 1;
+      } else {
+        return middle;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Helper method for comparing a string in the file with the given bytes, as unsigned bytes,
+   * without copying the string.
+   *
+   * @param reference the position of the reference to the string
+   * @param bytes the bytes to compare with
+   * @return a negative number, zero or a positive number as the string is before, equal to or
+   *         after the bytes
+   */
+
+  private int compareString(int reference, byte[] bytes) {
+    int start = buffer.getInt(reference);
+    int length = buffer.getInt(reference + Integer.BYTES);
+
+    for (int i = 0; i < Math.min(length, bytes.length); i++) {
+      int comparison = Byte.compareUnsigned(buffer.get(start + i), bytes[i]);
+      if (comparison != 0) {
+        return comparison;
+      }
+    }
+    return Integer.compare(length, bytes.length);
+  }
+
+  /**
+   * Helper method for reading a string in the file.
+   *
+   * @param reference the position of the reference to the string
+   * @return the string
+   */
+
+  private String readString(int reference) {
+    byte[] bytes = new byte[buffer.getInt(reference + Integer.BYTES)];
+    buffer.get(buffer.getInt(reference), bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Helper method for encoding a catalog of recipes.
+   *
+   * @param recipes the recipes of the catalog
+   * @return the bytes of the catalog file
+   * @throws IllegalArgumentException if two recipes have the same name, or if the catalog
+   *                                  would be larger than 2 GB
+   */
+
+  private static byte[] encode(Collection<Recipe> recipes) {
+    Map<String, Recipe> recipesByKey = new HashMap<>();
+    TreeSet<String> ingredientKeys = new TreeSet<>(BY_BYTES);
+    long recipesSize = 0;
+
+    for (Recipe recipe : recipes) {
+      if (recipesByKey.put(recipe.getNameOfRecipe().toLowerCase(), recipe) != null) {
+        throw new IllegalArgumentException(
+            "Recipe with the same name already exists in the catalog.");
+      }
+      for (String ingredientName : recipe.getIngredients().keySet()) {
+        ingredientKeys.add(ingredientName.toLowerCase());
+      }
+      recipesSize += RECIPE_SIZE + (long) recipe.getIngredients().size() * INGREDIENT_SIZE;
+    }
+
+    List<String> recipeKeys = new ArrayList<>(recipesByKey.keySet());
+    recipeKeys.sort(BY_BYTES);
+    Map<String, Integer> ingredientIds = new HashMap<>();
+    for (String key : ingredientKeys) {
+      ingredientIds.put(key, ingredientIds.size());
+    }
+
+    int recipeIndex = HEADER_SIZE + ingredientKeys.size() * STRING_SIZE;
+    long textStart = recipeIndex + (long) recipeKeys.size() * Integer.BYTES + recipesSize;
+    Text text = new Text(textStart);
+    for (String key : ingredientKeys) {
+      text.add(key);
+    }
+    for (String key : recipeKeys) {
+      Recipe recipe = recipesByKey.get(key);
+      text.add(key);
+      text.add(recipe.getNameOfRecipe());
+      text.add(recipe.getDescription());
+      text.add(recipe.getProcess());
+      recipe.getIngredients().keySet().forEach(text::add);
+    }
+    if (textStart + text.size() > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Recipes do not fit in one catalog.");
+    }
+
+    ByteBuffer out = ByteBuffer.allocate((int) (textStart + text.size()));
+    out.put(MAGIC)
+        .putInt(VERSION)
+        .putInt(recipeKeys.size())
+        .putInt(ingredientKeys.size())
+        .putInt(HEADER_SIZE)
+        .putInt(recipeIndex);
+    for (String key : ingredientKeys) {
+      text.putReference(out, key);
+    }
+
+    int position = recipeIndex + recipeKeys.size() * Integer.BYTES;
+    for (String key : recipeKeys) {
+      out.putInt(position);
+      position += RECIPE_SIZE + recipesByKey.get(key).getIngredients().size() * INGREDIENT_SIZE;
+    }
+    for (String key : recipeKeys) {
+      Recipe recipe = recipesByKey.get(key);
+      text.putReference(out, key);
+      text.putReference(out, recipe.getNameOfRecipe());
+      text.putReference(out, recipe.getDescription());
+      text.putReference(out, recipe.getProcess());
+      out.putInt(recipe.getIngredients().size());
+
+      for (Map.Entry<String, IngredientDetail> entry : recipe.getIngredients().entrySet()) {
+        out.putInt(ingredientIds.get(entry.getKey().toLowerCase()));
+        text.putReference(out, entry.getKey());
+        out.put((byte) entry.getValue().getStandardUnit().ordinal());
+        out.putLong(entry.getValue().getScaledAmount());
+      }
+    }
+    out.put(text.toByteArray());
+    return out.array();
+  }
+
+  private static byte[] utf8(String text) {
+    return text.getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * The text of a catalog being built, with every distinct string once.
+   */
+
+  private static final class Text {
+
+    private final long start;
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private final Map<String, int[]> references = new HashMap<>();
+
+    Text(long start) {
+      this.start = start;
+    }
+
+    void add(String string) {
+      references.computeIfAbsent(string, s -> {
+        byte[] encoded = utf8(s);
+        int[] reference = {(int) (start + bytes.size()), encoded.length};
+        bytes.writeBytes(encoded);
+        return reference;
+      });
+    }
+
+    void putReference(ByteBuffer out, String string) {
+      int[] reference = references.get(string);
+      out.putInt(reference[0]).putInt(reference[1]);
+    }
+
+    long size() {
+      return bytes.size();
+    }
+
+    byte[] toByteArray() {
+      return bytes.toByteArray();
+    }
+  }
+}
@@ -0,0 +1,283 @@
+package edu.ntnu.idi.idatt.model;
+
+import edu.ntnu.idi.idatt.utils.ExceptionHandling;
+import edu.ntnu.idi.idatt.utils.Unit;
+import edu.ntnu.idi.idatt.utils.UnitConverter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/**
+ * Utility class checking which recipes can be made with the groceries in a {@link FoodStorage}.
+ *
+ * <p>The evaluator keeps no state, and takes the recipe and the storage as arguments
+ * instead of reading a storage set on the recipe. Recipes can therefore be shared,
+ * and checked against different storages from different threads at the same time.
+ * </p>
+ *
+ * <p>Many recipes are checked against one read of the storage,
+ * see {@link FoodStorage#availableAmounts()}. From {@value #PARALLEL_THRESHOLD} recipes on,
+ * the recipes are split between the threads of the common {@link ForkJoinPool},
+ * so large recipe books use every core.
+ * </p>
+ */
+
+public final class RecipeEvaluator {
+
+  /**
+   * The number of recipes from which the checks are split between threads.
+   * Each part gets at least half as many.
+   */
+
+  static final int PARALLEL_THRESHOLD = 256;
+
+  private RecipeEvaluator() {
+  }
+
+  /**
+   * Determines if a recipe can be made with the groceries in a storage.
+   *
+   * @param recipe the recipe to check
+   * @param storage the storage to check against
+   * @return {@code true} if every ingredient is available in the required amount
+   * @throws IllegalArgumentException if the recipe or the storage is null
+   */
+
+  public static boolean canMake(Recipe recipe, FoodStorage storage) {
+    ExceptionHandling.nullRecipe(recipe);
+    ExceptionHandling.nullStorage(storage);
+
+    for (int i = 0; i < recipe.ingredientCount(); i++) {
+      if (!recipe.isIngredientAvailable(i, storage)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the recipes that can be made with the groceries in a storage.
+   *
+   * @param recipes the recipes to check
+   * @param storage the storage to check against
+   * @return the recipes that can be made, in the order they were given
+   * @throws IllegalArgumentException if the list, any recipe in it, or the storage is null
+   */
+
+  public static List<Recipe> findMakeable(List<Recipe> recipes, FoodStorage storage) {
+    ExceptionHandling.nullRecipes(recipes);
+    ExceptionHandling.nullStorage(storage);
+
+    Recipe[] toCheck = recipes.toArray(new Recipe[0]);
+    long[] availableAmounts = storage.availableAmounts();
+    boolean[] makeable = new boolean[toCheck.length];
+
+    forEachIndex(toCheck.length, i -> makeable[i] = toCheck[i].canMakeWith(availableAmounts));
+
+    List<Recipe> result = new ArrayList<>();
+    for (int i = 0; i < toCheck.length; i++) {
+      if (makeable[i]) {
+        result.add(toCheck[i]);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns, for every recipe, the largest whole number of servings that can be made with the
+   * groceries in a storage. For each recipe, that is the smallest available amount divided by
+   * the required amount over its ingredients.
+   *
+   * <p>The available amount of every ingredient is read once per call, so the time taken grows
+   * with the total number of ingredients in the recipes.
+   * </p>
+   *
+   * @param recipes the recipes to check
+   * @param storage the storage to check against
+   * @return the number of servings of each recipe, in the order the recipes were given
+   * @throws IllegalArgumentException if the list, any recipe in it, or the storage is null
+   */
+
+  public static Map<Recipe, Integer> maxServings(List<Recipe> recipes, FoodStorage storage) {
+    ExceptionHandling.nullRecipes(recipes);
+    ExceptionHandling.nullStorage(storage);
+
+    Recipe[] toCheck = recipes.toArray(new Recipe[0]);
+    long[] availableAmounts = storage.availableAmounts();
+    int[] servings = new int[toCheck.length];
+
+    forEachIndex(toCheck.length, i -> servings[i] = toCheck[i].maxServingsWith(availableAmounts));
+
+    Map<Recipe, Integer> result = new LinkedHashMap<>();
+    for (int i = 0; i < toCheck.length; i++) {
+      result.put(toCheck[i], servings[i]);
+    }
+    return result;
+  }
+
+  /**
+   * Returns what to buy to make a number of servings of each of a set of recipes.
+   *
+   * <p>The required amounts are added up per ingredient, in the unit the first recipe asking
+   * for it uses, converting the amounts of the other recipes to it where the ingredient has
+   * a known density. The storage is then read once, and the amount of each ingredient that
+   * is in storage and has not expired is subtracted from its total. The recipes are gone
+   * through once, so the time taken grows with the total number of ingredients in the recipes,
+   * and not with the number of recipes times the size of the storage.
+   * </p>
+   *
+   * @param servingsByRecipe the number of servings to make of each recipe
+   * @param storage the storage with the groceries already at hand
+   * @return the ingredients that are missing, in alphabetical order
+   * @throws IllegalArgumentException if the map, any recipe or number of servings in it,
+   *                                  or the storage is null,
+   *                                  or a number of servings is not positive
+   */
+
+  public static ShoppingList shoppingList(Map<Recipe, Integer> servingsByRecipe,
+      FoodStorage storage) {
+    ExceptionHandling.validateServingsByRecipe(servingsByRecipe);
+    ExceptionHandling.nullStorage(storage);
+
+    // One line per ingredient and group of convertible units. The lines of an ingredient
+    // are chained, starting from firstLine of its number.
+    int[] firstLine = new int[IngredientIds.idCount()];
+    Arrays.fill(firstLine, -1);
+    List<String> names = new ArrayList<>();
+    List<String> keys = new ArrayList<>();
+    List<Unit> units = new ArrayList<>();
+    long[] required = new long[16];
+    int[] nextLine = new int[16];
+
+    for (Map.Entry<Recipe, Integer> entry : servingsByRecipe.entrySet()) {
+      Recipe recipe = entry.getKey();
+      int servings = entry.getValue();
+
+      for (int i = 0; i < recipe.ingredientCount(); i++) {
+        int slot = recipe.requiredSlot(i);
+        int id = IngredientIds.idOf(slot);
+        Unit unit = IngredientIds.unitOf(slot);
+        String key = recipe.ingredientName(i).toLowerCase();
+
+        int line = firstLine[id];
+        int previous = -1;
+        while (line >= 0 && !UnitConverter.isConvertible(unit, units.get(line), key)) {
+          previous = line;
+          line = nextLine[line];
+        }
+        if (line < 0) {
+          line = names.size();
+          if (line == required.length) {
+            required = Arrays.copyOf(required, line * 2);
+            nextLine = Arrays.copyOf(nextLine, line * 2);
+          }
+          names.add(recipe.ingredientName(i));
+          keys.add(key);
+          units.add(unit);
+          nextLine[line] = -1;
+          if (previous < 0) {
+            firstLine[id] = line;
+          } else {
+            nextLine[previous] = line;
+          }
+        }
+        required[line] += UnitConverter.convertScaledAmount(
+            recipe.requiredAmount(i) * servings, unit, units.get(line), key);
+      }
+    }
+
+    long[] available = storage.freshAmounts(keys.toArray(new String[0]),
+        units.toArray(new Unit[0]));
+
+    List<ShoppingItem> items = new ArrayList<>();
+    for (int line = 0; line < names.size(); line++) {
+      if (available[line] < required[line]) {
+        items.add(new ShoppingItem(names.get(line), units.get(line), required[line],
+            available[line]));
+      }
+    }
+    items.sort(Comparator.comparing(ShoppingItem::getName, String.CASE_INSENSITIVE_ORDER));
+    return new ShoppingList(items);
+  }
+
+  /**
+   * Checks every ingredient of every recipe against the given available amounts.
+   *
+   * @param recipes the recipes to check
+   * @param availableAmounts the available amounts, as returned by
+   *                         {@link FoodStorage#availableAmounts()}
+   * @return for each recipe, whether each of its ingredients is available,
+   *         by position in the recipe
+   */
+
+  static boolean[][] ingredientStates(List<Recipe> recipes, long[] availableAmounts) {
+    Recipe[] toCheck = recipes.toArray(new Recipe[0]);
+    boolean[][] states = new boolean[toCheck.length][];
+
+    forEachIndex(toCheck.length, i -> {
+      boolean[] state = new boolean[toCheck[i].ingredientCount()];
+      for (int j = 0; j < state.length; j++) {
+        state[j] = toCheck[i].isIngredientAvailable(j, availableAmounts);
+      }
+      states[i] = state;
+    });
+    return states;
+  }
+
+  /**
+   * Helper method for running an action for every index below a count, in parallel
+   * if the count reaches {@link #PARALLEL_THRESHOLD}. Returns once every index is done,
+   * and everything the actions wrote is then visible to the caller.
+   *
+   * @param count the number of indexes
+   * @param action the action to run for each index, which may only write to its own index
+   */
+
+  private static void forEachIndex(int count, IntConsumer action) {
+    if (count < PARALLEL_THRESHOLD) {
+      for (int i = 0; i < count; i++) {
+        action.accept(i);
+      }
+    } else {
+      ForkJoinPool.commonPool().invoke(new IndexRange(0, count, action));
+    }
+  }
+
+  /**
+   * A range of indexes to run an action for, split in halves until each part
+   * is smaller than {@link #PARALLEL_THRESHOLD}.
+   */
+
+  private static final class IndexRange extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int from;
+    private final int to;
+    private final transient IntConsumer action;
+
+    IndexRange(int from, int to, IntConsumer action) {
+      this.from = from;
+      this.to = to;
+      this.action = action;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from < PARALLEL_THRESHOLD) {
+        for (int i = from; i < to; i++) {
+          action.accept(i);
+        }
+      } else {
+        int middle = (from + to) >>> 1;
+        invokeAll(new IndexRange(from, middle, action), new IndexRange(middle, to, action));
+      }
+    }
+  }
+}
@@ -0,0 +1,70 @@
+package edu.ntnu.idi.idatt.model;
+
+import edu.ntnu.idi.idatt.utils.Unit;
+
+/**
+ * An ingredient on a {@link ShoppingList}: how much of it the recipes need in total,
+ * how much of it is in storage and has not expired, and how much is missing.
+ * All amounts are in the same standard unit, and kept in thousandths of it,
+ * like in {@link Grocery}.
+ */
+public class ShoppingItem {
+
+  private final String name;
+  private final Unit unit;
+  private final long requiredAmount;
+  private final long availableAmount;
+
+  /**
+   * Constructs a shopping list item.
+   *
+   * @param name the name of the ingredient, as written in the first recipe that needs it
+   * @param unit the standard unit of the amounts
+   * @param requiredAmount the amount the recipes need, in thousandths of {@code unit}
+   * @param availableAmount the amount in storage, in thousandths of {@code unit}
+   */
+  ShoppingItem(String name, Unit unit, long requiredAmount, long availableAmount) {
+    this.name = name;
+    this.unit = unit;
+    this.requiredAmount = requiredAmount;
+    this.availableAmount = availableAmount;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public String getUnit() {
+    return unit.getSymbol();
+  }
+
+  public Unit getStandardUnit() {
+    return unit;
+  }
+
+  public double getRequiredAmount() {
+    return Unit.fromScaled(requiredAmount);
+  }
+
+  public double getAvailableAmount() {
+    return Unit.fromScaled(availableAmount);
+  }
+
+  public double getMissingAmount() {
+    return Unit.fromScaled(getScaledMissingAmount());
+  }
+
+  /**
+   * Returns the amount to buy, which is the required amount less the amount in storage.
+   *
+   * @return the missing amount, in thousandths of the unit, or 0 if nothing is missing
+   */
+  public long getScaledMissingAmount() {
+    return Math.max(0, requiredAmount - availableAmount);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s: %.2f %s", name, getMissingAmount(), unit);
+  }
+}
@@ -0,0 +1,70 @@
+package edu.ntnu.idi.idatt.model;
+
+import java.util.List;
+
+/**
+ * The ingredients to buy to make a set of recipes, as made by
+ * {@link RecipeEvaluator#shoppingList(java.util.Map, FoodStorage)}.
+ *
+ * <p>Each ingredient is listed once, with the amounts of all the recipes added up,
+ * and only if the storage does not already hold enough of it. An ingredient asked for
+ * in units that cannot be converted to each other, such as pieces and grams,
+ * is listed once per unit.
+ * </p>
+ */
+public class ShoppingList {
+
+  private final List<ShoppingItem> items;
+
+  /**
+   * Constructs a shopping list.
+   *
+   * @param items the items to buy, in the order they are shown
+   */
+  ShoppingList(List<ShoppingItem> items) {
+    this.items = List.copyOf(items);
+  }
+
+  /**
+   * Returns the items to buy, in alphabetical order of their names.
+   *
+   * @return a read-only list of the items
+   */
+  public List<ShoppingItem> getItems() {
+    return items;
+  }
+
+  /**
+   * Returns the item for an ingredient.
+   *
+   * @param name the name of the ingredient, in any case
+   * @return the first item with the name, or null if nothing needs to be bought of it
+   */
+  public ShoppingItem getItem(String name) {
+    return items.stream()
+        .filter(item -> item.getName().equalsIgnoreCase(name))
+        .findFirst()
+        .orElse(null);
+  }
+
+  public boolean isEmpty() {
+    return items.isEmpty();
+  }
+
+  /**
+   * Returns the shopping list with one item per line.
+   *
+   * @return a formatted string of the items to buy
+   */
+  @Override
+  public String toString() {
+    if (items.isEmpty()) {
+      return "You have everything you need.\n";
+    }
+    StringBuilder sb = new StringBuilder();
+    for (ShoppingItem item : items) {
+      sb.append("- ").append(item).append("\n");
+    }
+    return sb.toString();
+  }
+}
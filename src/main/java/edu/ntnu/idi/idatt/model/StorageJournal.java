@@ -0,0 +1,591 @@
+package edu.ntnu.idi.idatt.model;
+
+import edu.ntnu.idi.idatt.utils.DayClock;
+import edu.ntnu.idi.idatt.utils.ExceptionHandling;
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps a {@link FoodStorage} and a {@link RecipeBook} in a directory, so that no change to the
+ * storage is lost when the program stops, even if it crashes.
+ *
+ * <p>The directory holds a {@link StorageSnapshot} and a journal of every change made to the
+ * storage since: groceries registered, amounts removed and cooked, and batches moved to the
+ * expired storage. A method changing the storage returns only after its change is in the
+ * journal, written as far as the {@link JournalSync} asks for. The change is appended while the
+ * storage holds the locks of the groceries it changes, and written after they are released,
+ * so threads changing the storage at the same time have their changes written, and flushed to
+ * the disk, together.
+ * </p>
+ *
+ * <p>Opening a journal loads the latest snapshot and replays the journal on top of it.
+ * A change that was only partly written when the program stopped was never acknowledged,
+ * and is left out. A checkpoint saves a new snapshot and starts a new journal, after which
+ * the old files are deleted. A checkpoint is made when the journal is opened, when it is closed,
+ * and in the background whenever the journal grows past a given size, so the time it takes to
+ * open it stays bounded.
+ * </p>
+ *
+ * <p>The recipes are saved with each snapshot, but changes to them are not journaled. Recipes
+ * added since the last checkpoint are saved by {@link #close()} or {@link #checkpoint()}.
+ * </p>
+ */
+
+public final class StorageJournal implements Closeable {
+
+  /**
+   * The journal size, in bytes, at which a checkpoint is made by default.
+   */
+
+  public static final long DEFAULT_COMPACTION_BYTES = 64L << 20;
+
+  private static final byte[] MAGIC = {'F', 'W', 'J', 'L'};
+  private static final int VERSION = 2;
+  private static final int RECORD_HEADER_SIZE = 8;
+  private static final int INITIAL_BUFFER_SIZE = 1 << 12;
+  private static final String SNAPSHOT = "snapshot-";
+  private static final String JOURNAL = "journal-";
+  private static final Pattern FILE_NAME = Pattern.compile("(snapshot|journal)-(\\d+)");
+
+  private final Path directory;
+  private final JournalSync sync;
+  private final long compactionBytes;
+  private final FoodStorage storage;
+  private final RecipeBook recipeBook;
+
+  /**
+   * Guards the fields below it. Positions count the bytes of records appended since the journal
+   * was opened, across all journal files.
+   */
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition flushed = lock.newCondition();
+  private FileChannel channel;
+  private long generation;
+  private long generationStart;
+  private long appendedPosition;
+  private long durablePosition;
+  private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+  private int bufferSize;
+  private byte[] spare = new byte[INITIAL_BUFFER_SIZE];
+  private boolean flushing;
+  private IOException failure;
+  private boolean closed;
+
+  /**
+   * Makes sure only one checkpoint runs at a time, and that at most one is waiting to run
+   * in the background.
+   */
+
+  private final Object checkpointLock = new Object();
+  private final AtomicBoolean compactionScheduled = new AtomicBoolean();
+  private Exception compactionFailure; // Guarded by checkpointLock
+  private final ExecutorService compactor = Executors.newSingleThreadExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "journal-compactor");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private StorageJournal(Path directory, JournalSync sync, long compactionBytes,
+      FoodStorage storage, RecipeBook recipeBook, long generation) {
+    this.directory = directory;
+    this.sync = sync;
+    this.compactionBytes = compactionBytes;
+    this.storage = storage;
+    this.recipeBook = recipeBook;
+    this.generation = generation;
+  }
+
+  /**
+   * Opens the journal in a directory, using the system clock and compacting the journal at
+   * {@link #DEFAULT_COMPACTION_BYTES}.
+   *
+   * @param directory the directory, which is created if it does not exist
+   * @param sync how far a change is written before it is acknowledged
+   * @return the journal, holding the storage and the cookbook as they were last saved
+   * @throws IOException if the directory cannot be read or written, or a file in it is damaged
+   * @throws IllegalArgumentException if the directory or the sync policy is null
+   */
+
+  public static StorageJournal open(Path directory, JournalSync sync) throws IOException {
+    return open(directory, sync, DayClock.systemDefault(), DEFAULT_COMPACTION_BYTES);
+  }
+
+  /**
+   * Opens the journal in a directory. The latest snapshot is loaded, the journal files after it
+   * are replayed in order, and a checkpoint is made, so the directory then holds one snapshot
+   * and an empty journal. An empty directory gives an empty storage and cookbook.
+   *
+   * @param directory the directory, which is created if it does not exist
+   * @param sync how far a change is written before it is acknowledged
+   * @param clock the clock the storage uses to decide which groceries have expired
+   * @param compactionBytes the journal size, in bytes, at which a checkpoint is made
+   * @return the journal, holding the storage and the cookbook as they were last saved
+   * @throws IOException if the directory cannot be read or written, or a file in it is damaged
+   * @throws IllegalArgumentException if the directory, the sync policy or the clock is null,
+   *         or the compaction size is not positive
+   */
+
+  public static StorageJournal open(Path directory, JournalSync sync, DayClock clock,
+      long compactionBytes) throws IOException {
+    if (directory == null) {
+      throw new IllegalArgumentException("Directory cannot be null.");
+    }
+    if (sync == null) {
+      throw new IllegalArgumentException("Sync policy cannot be null.");
+    }
+    ExceptionHandling.nullClock(clock);
+    if (compactionBytes <= 0) {
+      throw new IllegalArgumentException("Compaction size must be positive.");
+    }
+
+    Files.createDirectories(directory);
+    TreeMap<Long, Path> snapshots = new TreeMap<>();
+    TreeMap<Long, Path> journals = new TreeMap<>();
+    for (Path file : listFiles(directory)) {
+      String name = file.getFileName().toString();
+      Matcher matcher = FILE_NAME.matcher(name);
+      if (name.endsWith(".tmp")) {
+        // Left by a snapshot that was being saved when the program stopped
+        Files.delete(file);
+      } else if (matcher.matches()) {
+        (matcher.group(1).equals("snapshot") ? snapshots : journals)
+            .put(Long.parseLong(matcher.group(2)), file);
+      }
+    }
+
+    FoodStorage storage = new FoodStorage(clock);
+    RecipeBook recipeBook = new RecipeBook();
+    long generation = 0;
+    if (!snapshots.isEmpty()) {
+      generation = snapshots.lastKey();
+      StorageSnapshot snapshot = StorageSnapshot.load(snapshots.lastEntry().getValue(), clock);
+      storage = snapshot.getStorage();
+      recipeBook = snapshot.getRecipeBook();
+    }
+
+    // Only the last journal can end in a record that was being written when the program stopped
+    for (Long journalGeneration : journals.tailMap(generation, true).keySet()) {
+      Path file = journals.get(journalGeneration);
+      if (!replay(file, storage) && !journalGeneration.equals(journals.lastKey())) {
+        throw new IOException("Journal " + file + " is damaged before its end.");
+      }
+      generation = journalGeneration;
+    }
+
+    StorageJournal journal =
+        new StorageJournal(directory, sync, compactionBytes, storage, recipeBook, generation);
+    storage.attachJournal(journal);
+    journal.checkpoint();
+    return journal;
+  }
+
+  public FoodStorage getStorage() {
+    return storage;
+  }
+
+  public RecipeBook getRecipeBook() {
+    return recipeBook;
+  }
+
+  /**
+   * Saves a snapshot of the storage and the cookbook, and starts a new journal holding the
+   * changes made after it. The journal and snapshot files it replaces are then deleted.
+   *
+   * <p>Changes to the storage wait while it is read for the snapshot, but not while the
+   * snapshot is written to the disk. If the program stops during a checkpoint, the previous
+   * snapshot and the journals after it are still there, and are loaded the next time.
+   * </p>
+   *
+   * <p>If a background checkpoint failed since the last checkpoint, its failure is attached
+   * as suppressed to the exception thrown if this checkpoint fails as well. A checkpoint
+   * that succeeds clears it, since the journal it could not compact is then compacted.
+   * </p>
+   *
+   * @throws IOException if the snapshot or the new journal cannot be written
+   * @throws IllegalStateException if the journal is closed
+   */
+
+  public void checkpoint() throws IOException {
+    synchronized (checkpointLock) {
+      Exception earlier = compactionFailure;
+      compactionFailure = null;
+      try {
+        saveCheckpoint();
+      } catch (IOException | RuntimeException e) {
+        if (earlier != null) {
+          e.addSuppressed(earlier);
+        }
+        throw e;
+      }
+    }
+  }
+
+  /**
+   * Helper method for saving a snapshot and starting the journal after it, see
+   * {@link #checkpoint()}. The caller must hold the checkpoint lock.
+   *
+   * @throws IOException if the snapshot or the new journal cannot be written
+   * @throws IllegalStateException if the journal is closed
+   */
+
+  private void saveCheckpoint() throws IOException {
+    lock.lock();
+    try {
+      if (closed) {
+        throw new IllegalStateException("The journal is closed.");
+      }
+    } finally {
+      lock.unlock();
+    }
+
+    long next = generation + 1;
+    try {
+      StorageSnapshot.save(storage, recipeBook, directory.resolve(SNAPSHOT + next),
+          () -> startGeneration(next));
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+    syncDirectory(directory);
+    compactionScheduled.set(false);
+
+    for (Path file : listFiles(directory)) {
+      Matcher matcher = FILE_NAME.matcher(file.getFileName().toString());
+      if (matcher.matches() && Long.parseLong(matcher.group(2)) < next) {
+        Files.delete(file);
+      }
+    }
+  }
+
+  /**
+   * Makes a last checkpoint, so the next time the journal is opened only the snapshot is loaded,
+   * and closes the journal. The storage must not be changed after it is closed.
+   *
+   * @throws IOException if the checkpoint cannot be written
+   */
+
+  @Override
+  public void close() throws IOException {
+    synchronized (checkpointLock) {
+      if (closed) {
+        return;
+      }
+      try {
+        checkpoint();
+      } finally {
+        compactor.shutdownNow();
+        lock.lock();
+        try {
+          closed = true;
+          if (channel != null) {
+            channel.close();
+          }
+        } finally {
+          lock.unlock();
+        }
+      }
+    }
+  }
+
+  /**
+   * Appends the record of a change. The record is only kept in memory until a thread waits for
+   * it with {@link #awaitDurable(long)}.
+   *
+   * @param record the bytes of the record, see {@link JournalRecord}
+   * @return the position after the record
+   * @throws IllegalStateException if the journal is closed
+   * @throws UncheckedIOException if writing the journal failed earlier
+   */
+
+  long append(byte[] record) {
+    CRC32 crc = new CRC32();
+    crc.update(record);
+
+    lock.lock();
+    try {
+      if (closed) {
+        throw new IllegalStateException("The journal is closed.");
+      }
+      checkFailure();
+
+      int size = RECORD_HEADER_SIZE + record.length;
+      if (bufferSize + size > buffer.length) {
+        buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, bufferSize + size));
+      }
+      ByteBuffer.wrap(buffer, bufferSize, RECORD_HEADER_SIZE)
+          .putInt(record.length)
+          .putInt((int) crc.getValue());
+      System.arraycopy(record, 0, buffer, bufferSize + RECORD_HEADER_SIZE, record.length);
+      bufferSize += size;
+      appendedPosition += size;
+
+      if (appendedPosition - generationStart >= compactionBytes
+          && compactionScheduled.compareAndSet(false, true)) {
+        compactor.execute(this::compact);
+      }
+      return appendedPosition;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Waits until the journal is written up to a position. If no other thread is writing the
+   * journal, this thread writes every record appended so far, its own and those of other
+   * threads; otherwise it waits for that write, and then writes the records appended meanwhile
+   * if its own is among them. This way, one write and one flush serve every thread waiting
+   * at that time.
+   *
+   * @param position the position returned by {@link #append(byte[])}
+   * @throws UncheckedIOException if the journal cannot be written
+   */
+
+  void awaitDurable(long position) {
+    lock.lock();
+    try {
+      while (durablePosition < position) {
+        checkFailure();
+        if (flushing) {
+          flushed.awaitUninterruptibly();
+        } else {
+          flush();
+        }
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Helper method for writing the records appended so far to the journal file, and flushing
+   * them to the disk if the sync policy asks for it. The lock is released while writing,
+   * so other threads can append records meanwhile.
+   *
+   * <p>The caller must hold the lock, and no other thread may be flushing.
+   * </p>
+   */
+
+  private void flush() {
+    flushing = true;
+    byte[] records = buffer;
+    int size = bufferSize;
+    long position = appendedPosition;
+    FileChannel target = channel;
+    buffer = spare;
+    bufferSize = 0;
+    lock.unlock();
+
+    IOException error = null;
+    try {
+      ByteBuffer bytes = ByteBuffer.wrap(records, 0, size);
+      while (bytes.hasRemaining()) {
+        target.write(bytes);
+      }
+      if (sync == JournalSync.FSYNC) {
+        target.force(false);
+      }
+    } catch (IOException e) {
+      error = e;
+    } finally {
+      lock.lock();
+    }
+
+    spare = records;
+    flushing = false;
+    if (error != null) {
+      failure = error;
+    } else {
+      durablePosition = position;
+    }
+    flushed.signalAll();
+  }
+
+  /**
+   * Helper method for finishing the current journal file and starting the next one. Runs while
+   * the storage holds every lock, so no record is appended meanwhile, and the new file holds
+   * exactly the changes made after the snapshot being saved.
+   *
+   * @param next the generation of the new journal file
+   * @throws UncheckedIOException if a journal file cannot be written
+   */
+
+  private void startGeneration(long next) {
+    lock.lock();
+    try {
+      while (flushing) {
+        flushed.awaitUninterruptibly();
+      }
+      checkFailure();
+
+      try {
+        if (channel != null) {
+          if (durablePosition < appendedPosition) {
+            flush();
+            checkFailure();
+          }
+          channel.force(false);
+          channel.close();
+          channel = null;
+        }
+
+        FileChannel journal = FileChannel.open(directory.resolve(JOURNAL + next),
+            StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(MAGIC.length + Integer.BYTES)
+            .put(MAGIC)
+            .putInt(VERSION)
+            .flip();
+        while (header.hasRemaining()) {
+          journal.write(header);
+        }
+        journal.force(false);
+        syncDirectory(directory);
+        channel = journal;
+      } catch (IOException e) {
+        failure = e;
+        throw new UncheckedIOException(e);
+      }
+
+      generation = next;
+      generationStart = appendedPosition;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Helper method for the background checkpoint made when the journal grows too large.
+   * A failure is kept and reported by the next call to {@link #checkpoint()}, since there is
+   * no caller to throw it to, and the journal can still be written without the checkpoint.
+   */
+
+  private void compact() {
+    synchronized (checkpointLock) {
+      try {
+        saveCheckpoint();
+      } catch (IllegalStateException e) {
+        // The journal was closed meanwhile, which made a checkpoint of its own
+      } catch (IOException | RuntimeException e) {
+        compactionScheduled.set(false);
+        if (compactionFailure == null) {
+          compactionFailure = e;
+        } else {
+          compactionFailure.addSuppressed(e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Helper method for failing every write after the journal could not be written once,
+   * since the records after a lost one cannot be replayed on their own.
+   *
+   * @throws UncheckedIOException if writing the journal failed
+   */
+
+  private void checkFailure() {
+    if (failure != null) {
+      throw new UncheckedIOException("The storage journal could not be written.", failure);
+    }
+  }
+
+  /**
+   * Helper method for replaying the records of a journal file on a storage.
+   * Reading stops at the first record that was not written in full.
+   *
+   * @param file the journal file
+   * @param storage the storage to apply the records to
+   * @return {@code true} if every record in the file was whole
+   * @throws IOException if the file cannot be read, or is not a journal of this version
+   */
+
+  private static boolean replay(Path file, FoodStorage storage) throws IOException {
+    long remaining = Files.size(file);
+
+    try (InputStream in = new BufferedInputStream(Files.newInputStream(file), 1 << 16)) {
+      byte[] fileHeader = in.readNBytes(MAGIC.length + Integer.BYTES);
+      if (fileHeader.length < MAGIC.length + Integer.BYTES) {
+        // The program stopped before the new file got its header, so it holds no records
+        return fileHeader.length == 0;
+      }
+      if (!Arrays.equals(fileHeader, 0, MAGIC.length, MAGIC, 0, MAGIC.length)) {
+        throw new IOException(file + " is not a storage journal.");
+      }
+      int version = ByteBuffer.wrap(fileHeader, MAGIC.length, Integer.BYTES).getInt();
+      if (version != VERSION) {
+        throw new IOException("Unsupported journal version " + version + ", expected "
+            + VERSION + ".");
+      }
+      remaining -= fileHeader.length;
+
+      CRC32 crc = new CRC32();
+      while (remaining > 0) {
+        byte[] header = in.readNBytes(RECORD_HEADER_SIZE);
+        ByteBuffer fields = ByteBuffer.wrap(header);
+        if (header.length < RECORD_HEADER_SIZE
+            || fields.getInt(0) < 0 || fields.getInt(0) > remaining - RECORD_HEADER_SIZE) {
+          return false;
+        }
+
+        byte[] record = in.readNBytes(fields.getInt(0));
+        crc.reset();
+        crc.update(record);
+        if ((int) crc.getValue() != fields.getInt(Integer.BYTES)) {
+          return false;
+        }
+        JournalRecord.replay(record, storage);
+        remaining -= RECORD_HEADER_SIZE + record.length;
+      }
+      return true;
+    }
+  }
+
+  /**
+   * Helper method for listing the files in a directory.
+   *
+   * @param directory the directory
+   * @return the files in it
+   * @throws IOException if the directory cannot be read
+   */
+
+  private static List<Path> listFiles(Path directory) throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.toList();
+    }
+  }
+
+  /**
+   * Helper method for flushing the entries of a directory to the disk, so that files created,
+   * renamed and deleted in it stay that way after a crash. Not every platform can flush
+   * a directory; there, the files themselves are still flushed.
+   *
+   * @param directory the directory
+   */
+
+  private static void syncDirectory(Path directory) {
+    try (FileChannel entries = FileChannel.open(directory, StandardOpenOption.READ)) {
+      entries.force(true);
+    } catch (IOException e) {
+      // The directory cannot be flushed on this platform
+    }
+  }
+}
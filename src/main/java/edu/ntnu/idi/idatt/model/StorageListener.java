@@ -0,0 +1,22 @@
+package edu.ntnu.idi.idatt.model;
+
+/**
+ * A listener that is told when the stock of a grocery in a {@link FoodStorage} changes.
+ *
+ * <p>Listeners are called after the change is done and the storage's locks are released,
+ * on the thread that made the change, so they may read the storage. A listener is told
+ * at least once after every change, but may be told about a grocery that did not change.
+ * </p>
+ */
+
+@FunctionalInterface
+public interface StorageListener {
+
+  /**
+   * Called after the stock of a grocery has changed.
+   *
+   * @param storage the storage that changed
+   * @param groceryName the lowercase name of the grocery that changed
+   */
+  void groceryChanged(FoodStorage storage, String groceryName);
+}
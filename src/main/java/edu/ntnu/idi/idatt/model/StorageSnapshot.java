@@ -0,0 +1,545 @@
+package edu.ntnu.idi.idatt.model;
+
+import edu.ntnu.idi.idatt.utils.DayClock;
+import edu.ntnu.idi.idatt.utils.ExceptionHandling;
+import edu.ntnu.idi.idatt.utils.Unit;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+/**
+ * Saves a {@link FoodStorage} and a {@link RecipeBook} to a compact binary file,
+ * and loads them back, so the application can start where it left off.
+ *
+ * <p>The file holds, in order:
+ * <ul>
+ *   <li>The magic bytes {@code FWSS} and the format version, {@value #VERSION}.</li>
+ *   <li>A dictionary of every string in the snapshot. The rest of the file refers to a string
+ *   by its position in the dictionary, so a grocery or ingredient name is stored once.</li>
+ *   <li>The storage and the expired storage: for each grocery item, its name and its batches.
+ *   A batch is its expiry date as the number of days since the previous batch, its unit,
+ *   the amount left, how much was used, and its price, in øre when that is exact.</li>
+ *   <li>The recipes, with their ingredients.</li>
+ * </ul>
+ * Numbers are written as varints, seven bits per byte with the top bit set on every byte but
+ * the last, so small numbers take one byte. Numbers that may be negative are zigzag encoded.
+ * </p>
+ *
+ * <p>Loading trusts the snapshot: batches are made without validating them again, and the
+ * storage is built from them in order, without sorting them by comparison, see
+ * {@link FoodStorage}. Loading is therefore mostly limited by how fast the file is read.
+ * </p>
+ */
+
+public final class StorageSnapshot {
+
+  /**
+   * The version of the format written. A snapshot of another version is not read.
+   */
+
+  public static final int VERSION = 1;
+
+  private static final byte[] MAGIC = {'F', 'W', 'S', 'S'};
+  private static final Unit[] UNITS = Unit.values();
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private final FoodStorage storage;
+  private final RecipeBook recipeBook;
+
+  private StorageSnapshot(FoodStorage storage, RecipeBook recipeBook) {
+    this.storage = storage;
+    this.recipeBook = recipeBook;
+  }
+
+  public FoodStorage getStorage() {
+    return storage;
+  }
+
+  public RecipeBook getRecipeBook() {
+    return recipeBook;
+  }
+
+  /**
+   * Saves a storage and a cookbook to a file. The snapshot is first written to a temporary
+   * file next to it and flushed to the disk, and then moved in place of the file,
+   * so a crash while saving leaves the previous snapshot as it was.
+   *
+   * @param storage the storage to save
+   * @param recipeBook the cookbook to save
+   * @param file the file to save to
+   * @throws IOException if the file cannot be written
+   * @throws IllegalArgumentException if the storage, the cookbook or the file is null
+   */
+
+  public static void save(FoodStorage storage, RecipeBook recipeBook, Path file)
+      throws IOException {
+    ExceptionHandling.nullStorage(storage);
+    validateRecipeBook(recipeBook);
+    if (file == null) {
+      throw new IllegalArgumentException("File cannot be null.");
+    }
+    save(storage, recipeBook, file, null);
+  }
+
+  /**
+   * Saves a storage and a cookbook to a file like {@link #save(FoodStorage, RecipeBook, Path)},
+   * optionally running an action at the point in time the storage is read.
+   *
+   * <p>With an action, the storage is read while holding every lock, and the action runs just
+   * before, so no change to the storage happens between the two. This is how a
+   * {@link StorageJournal} starts a new journal file that holds exactly the changes made after
+   * the snapshot. Changes to the storage wait while it is encoded.
+   * </p>
+   *
+   * @param storage the storage to save
+   * @param recipeBook the cookbook to save
+   * @param file the file to save to
+   * @param atCut the action to run when the storage is read, or {@code null} for none
+   * @throws IOException if the file cannot be written
+   */
+
+  static void save(FoodStorage storage, RecipeBook recipeBook, Path file, Runnable atCut)
+      throws IOException {
+    Encoder body = atCut == null
+        ? storage.readStorages(StorageSnapshot::encodeStorages)
+        : storage.readStoragesExclusively((items, expiredItems) -> {
+          atCut.run();
+          return encodeStorages(items, expiredItems);
+        });
+
+    Path directory = file.toAbsolutePath().getParent();
+    Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+    try {
+      try (FileOutputStream out = new FileOutputStream(temporary.toFile())) {
+        write(body, recipeBook, out);
+        out.getFD().sync();
+      }
+      Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temporary);
+    }
+  }
+
+  /**
+   * Writes a snapshot of a storage and a cookbook to a stream. The storage is read at one point
+   * in time between writes, and encoded in memory before anything is written to the stream,
+   * so the storage is not kept locked while the stream is slow.
+   *
+   * @param storage the storage to write
+   * @param recipeBook the cookbook to write
+   * @param out the stream to write to, which is not closed
+   * @throws IOException if the stream cannot be written to
+   * @throws IllegalArgumentException if the storage or the cookbook is null
+   */
+
+  public static void write(FoodStorage storage, RecipeBook recipeBook, OutputStream out)
+      throws IOException {
+    ExceptionHandling.nullStorage(storage);
+    validateRecipeBook(recipeBook);
+    write(storage.readStorages(StorageSnapshot::encodeStorages), recipeBook, out);
+  }
+
+  /**
+   * Helper method for encoding both storages, as read by
+   * {@link FoodStorage#readStorages(BiFunction)}. Changes no state, so the read can be repeated.
+   *
+   * @param items the batches of each grocery item
+   * @param expiredItems the expired batches of each grocery item
+   * @return an encoder holding the encoded storages
+   */
+
+  private static Encoder encodeStorages(SortedMap<String, ? extends List<Grocery>> items,
+      SortedMap<String, List<Grocery>> expiredItems) {
+    Encoder encoder = new Encoder();
+    encoder.writeItems(items);
+    encoder.writeItems(expiredItems);
+    return encoder;
+  }
+
+  /**
+   * Helper method for writing a snapshot, given the encoded storages.
+   *
+   * @param body an encoder holding the encoded storages, to which the recipes are added
+   * @param recipeBook the cookbook to write
+   * @param out the stream to write to
+   * @throws IOException if the stream cannot be written to
+   */
+
+  private static void write(Encoder body, RecipeBook recipeBook, OutputStream out)
+      throws IOException {
+    body.writeRecipes(recipeBook.getRecipes());
+
+    Encoder header = new Encoder();
+    header.writeBytes(MAGIC);
+    header.writeVarLong(VERSION);
+    header.writeVarLong(body.dictionary.size());
+    for (String string : body.dictionary.keySet()) {
+      byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+      header.writeVarLong(bytes.length);
+      header.writeBytes(bytes);
+    }
+
+    out.write(header.buffer, 0, header.size);
+    out.write(body.buffer, 0, body.size);
+    out.flush();
+  }
+
+  /**
+   * Loads a snapshot from a file, deciding which groceries have expired by the system clock.
+   *
+   * @param file the file to load
+   * @return the loaded storage and cookbook
+   * @throws IOException if the file cannot be read, or is not a snapshot of this version
+   * @throws IllegalArgumentException if the file is null
+   */
+
+  public static StorageSnapshot load(Path file) throws IOException {
+    return load(file, DayClock.systemDefault());
+  }
+
+  /**
+   * Loads a snapshot from a file.
+   *
+   * @param file the file to load
+   * @param clock the clock the loaded storage uses to decide which groceries have expired
+   * @return the loaded storage and cookbook
+   * @throws IOException if the file cannot be read, or is not a snapshot of this version
+   * @throws IllegalArgumentException if the file or the clock is null
+   */
+
+  public static StorageSnapshot load(Path file, DayClock clock) throws IOException {
+    if (file == null) {
+      throw new IllegalArgumentException("File cannot be null.");
+    }
+    try (InputStream in = Files.newInputStream(file)) {
+      return read(in, clock);
+    }
+  }
+
+  /**
+   * Reads a snapshot from a stream.
+   *
+   * @param in the stream to read from, which is not closed
+   * @param clock the clock the loaded storage uses to decide which groceries have expired
+   * @return the loaded storage and cookbook
+   * @throws IOException if the stream cannot be read, or does not hold a snapshot of this
+   *                     version
+   * @throws IllegalArgumentException if the clock is null
+   */
+
+  public static StorageSnapshot read(InputStream in, DayClock clock) throws IOException {
+    ExceptionHandling.nullClock(clock);
+    Decoder decoder = new Decoder(in);
+
+    byte[] magic = new byte[MAGIC.length];
+    for (int i = 0; i < magic.length; i++) {
+      magic[i] = (byte) decoder.readByte();
+    }
+    if (!Arrays.equals(magic, MAGIC)) {
+      throw new IOException("Not a storage snapshot.");
+    }
+    long version = decoder.readVarLong();
+    if (version != VERSION) {
+      throw new IOException("Unsupported snapshot version " + version + ", expected "
+          + VERSION + ".");
+    }
+
+    String[] dictionary = new String[decoder.readCount()];
+    for (int i = 0; i < dictionary.length; i++) {
+      dictionary[i] = new String(decoder.readBytes(decoder.readCount()), StandardCharsets.UTF_8);
+    }
+    decoder.dictionary = dictionary;
+
+    List<String> keys = new ArrayList<>();
+    List<GroceryBatches> items = new ArrayList<>();
+    decoder.readItems(keys, batches -> items.add(new GroceryBatches(batches)));
+
+    List<String> expiredKeys = new ArrayList<>();
+    List<List<Grocery>> expiredItems = new ArrayList<>();
+    decoder.readItems(expiredKeys,
+        batches -> expiredItems.add(new ArrayList<>(Arrays.asList(batches))));
+
+    RecipeBook recipeBook = new RecipeBook();
+    int recipeCount = decoder.readCount();
+    for (int i = 0; i < recipeCount; i++) {
+      recipeBook.addRecipe(decoder.readRecipe());
+    }
+
+    FoodStorage storage = FoodStorage.restore(clock, keys, items, expiredKeys, expiredItems);
+    return new StorageSnapshot(storage, recipeBook);
+  }
+
+  /**
+   * Helper method for validating that a cookbook is not null.
+   *
+   * @param recipeBook the cookbook to validate
+   * @throws IllegalArgumentException if the cookbook is null
+   */
+
+  private static void validateRecipeBook(RecipeBook recipeBook) {
+    if (recipeBook == null) {
+      throw new IllegalArgumentException("Recipe book cannot be null.");
+    }
+  }
+
+  /**
+   * Encodes a snapshot into a growing byte array, collecting the strings it refers to.
+   */
+
+  private static final class Encoder {
+
+    private byte[] buffer = new byte[BUFFER_SIZE];
+    private int size;
+    private final Map<String, Integer> dictionary = new LinkedHashMap<>();
+    private long previousDay;
+
+    /**
+     * Writes the grocery items of a storage, with their batches.
+     */
+    void writeItems(SortedMap<String, ? extends List<Grocery>> items) {
+      writeVarLong(items.size());
+      previousDay = 0;
+
+      for (Map.Entry<String, ? extends List<Grocery>> item : items.entrySet()) {
+        writeString(item.getKey());
+        writeVarLong(item.getValue().size());
+
+        for (Grocery batch : item.getValue()) {
+          long day = batch.getExpiryEpochDay();
+          writeVarLong(zigzag(day - previousDay) << 2 | batch.getStandardUnit().ordinal());
+          previousDay = day;
+          writeVarLong(batch.getScaledAmount());
+          writeVarLong(batch.getScaledInitialAmount() - batch.getScaledAmount());
+          writePrice(batch.getPrice());
+        }
+      }
+    }
+
+    /**
+     * Writes recipes, with their ingredients.
+     */
+    void writeRecipes(List<Recipe> recipes) {
+      writeVarLong(recipes.size());
+
+      for (Recipe recipe : recipes) {
+        writeString(recipe.getNameOfRecipe());
+        writeString(recipe.getDescription());
+        writeString(recipe.getProcess());
+        writeVarLong(recipe.getIngredients().size());
+
+        for (Map.Entry<String, IngredientDetail> ingredient : recipe.getIngredients().entrySet()) {
+          writeString(ingredient.getKey());
+          writeVarLong(ingredient.getValue().getScaledAmount() << 2
+              | ingredient.getValue().getStandardUnit().ordinal());
+        }
+      }
+    }
+
+    /**
+     * Writes a price as a whole number of øre if that gives back the same price,
+     * and as the bits of the double otherwise. The lowest bit tells which.
+     */
+    void writePrice(double price) {
+      long cents = Math.round(price * 100);
+      if (cents >= 0 && cents < 1L << 52 && cents / 100.0 == price) {
+        writeVarLong(cents << 1);
+      } else {
+        writeVarLong(1);
+        writeVarLong(Double.doubleToRawLongBits(price));
+      }
+    }
+
+    void writeString(String string) {
+      Integer id = dictionary.get(string);
+      if (id == null) {
+        id = dictionary.size();
+        dictionary.put(string, id);
+      }
+      writeVarLong(id);
+    }
+
+    void writeVarLong(long value) {
+      ensureCapacity(10);
+      while ((value & ~0x7FL) != 0) {
+        buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+        value >>>= 7;
+      }
+      buffer[size++] = (byte) value;
+    }
+
+    void writeBytes(byte[] bytes) {
+      ensureCapacity(bytes.length);
+      System.arraycopy(bytes, 0, buffer, size, bytes.length);
+      size += bytes.length;
+    }
+
+    private void ensureCapacity(int extra) {
+      if (size + extra > buffer.length) {
+        buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+      }
+    }
+
+    private static long zigzag(long value) {
+      return (value << 1) ^ (value >> 63);
+    }
+  }
+
+  /**
+   * Decodes a snapshot from a stream, reading it in large blocks.
+   */
+
+  private static final class Decoder {
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private int limit;
+    private String[] dictionary;
+
+    Decoder(InputStream in) {
+      this.in = in;
+    }
+
+    /**
+     * Reads the grocery items of a storage, passing the batches of each item on in order.
+     */
+    void readItems(List<String> keys, Consumer<Grocery[]> itemAction)
+        throws IOException {
+      int itemCount = readCount();
+      long previousDay = 0;
+      LocalDate previousDate = null;
+      // Items mostly share a few prices, so equal prices are read into the same Double
+      Map<Long, Double> prices = new HashMap<>();
+
+      for (int i = 0; i < itemCount; i++) {
+        String key = readString();
+        Grocery[] batches = new Grocery[readCount()];
+
+        for (int b = 0; b < batches.length; b++) {
+          long dayAndUnit = readVarLong();
+          long day = previousDay + unzigzag(dayAndUnit >>> 2);
+          Unit unit = unit(dayAndUnit);
+          if (previousDate == null || day != previousDay) {
+            previousDate = LocalDate.ofEpochDay(day);
+          }
+          previousDay = day;
+
+          long amount = readVarLong();
+          long initialAmount = amount + readVarLong();
+          double price = readPrice();
+          batches[b] = new Grocery(key, price, amount, initialAmount, unit, previousDate);
+        }
+        keys.add(key);
+        itemAction.accept(batches);
+      }
+    }
+
+    Recipe readRecipe() throws IOException {
+      String name = readString();
+      String description = readString();
+      String process = readString();
+      int ingredientCount = readCount();
+
+      Map<String, IngredientDetail> ingredients = new LinkedHashMap<>();
+      for (int i = 0; i < ingredientCount; i++) {
+        String ingredientName = readString();
+        long amountAndUnit = readVarLong();
+        ingredients.put(ingredientName,
+            new IngredientDetail(amountAndUnit >>> 2, unit(amountAndUnit)));
+      }
+      return new Recipe(name, description, process, ingredients);
+    }
+
+    double readPrice() throws IOException {
+      long encoded = readVarLong();
+      return (encoded & 1) == 0
+          ? (encoded >>> 1) / 100.0
+          : Double.longBitsToDouble(readVarLong());
+    }
+
+    String readString() throws IOException {
+      int id = readCount();
+      if (id >= dictionary.length) {
+        throw new IOException("Snapshot refers to string " + id + " of " + dictionary.length
+            + ".");
+      }
+      return dictionary[id];
+    }
+
+    /**
+     * Reads a varint that counts or numbers something, and so fits in an int.
+     */
+    int readCount() throws IOException {
+      long count = readVarLong();
+      if (count < 0 || count > Integer.MAX_VALUE) {
+        throw new IOException("Invalid count " + count + " in snapshot.");
+      }
+      return (int) count;
+    }
+
+    long readVarLong() throws IOException {
+      long value = 0;
+      for (int shift = 0; shift < Long.SIZE; shift += 7) {
+        int b = readByte();
+        value |= (long) (b & 0x7F) << shift;
+        if ((b & 0x80) == 0) {
+          return value;
+        }
+      }
+      throw new IOException("Invalid varint in snapshot.");
+    }
+
+    byte[] readBytes(int length) throws IOException {
+      byte[] bytes = new byte[length];
+      for (int i = 0; i < length; i++) {
+        bytes[i] = (byte) readByte();
+      }
+      return bytes;
+    }
+
+    int readByte() throws IOException {
+      if (position == limit) {
+        limit = in.read(buffer, 0, buffer.length);
+        position = 0;
+        if (limit <= 0) {
+          limit = 0;
+          throw new EOFException("Snapshot ends too early.");
+        }
+      }
+      return buffer[position++] & 0xFF;
+    }
+
+    private static long unzigzag(long value) {
+      return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Decodes the unit held in the two lowest bits of a varint, which can number a unit that
+     * does not exist if the snapshot is damaged.
+     */
+    private static Unit unit(long encoded) throws IOException {
+      int ordinal = (int) (encoded & 3);
+      if (ordinal >= UNITS.length) {
+        throw new IOException("Unknown unit " + ordinal + " in snapshot.");
+      }
+      return UNITS[ordinal];
+    }
+  }
+}
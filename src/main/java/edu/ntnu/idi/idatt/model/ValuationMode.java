@@ -0,0 +1,16 @@
+package edu.ntnu.idi.idatt.model;
+
+/**
+ * Describes how the value of a grocery batch is counted when summing up the value of a storage.
+ *
+ * <ul>
+ *   <li>{@link #FULL_PRICE}: every batch counts with its full price,
+ *   no matter how much of it has been used.</li>
+ *   <li>{@link #REMAINING_FRACTION}: every batch counts with the part of its price
+ *   matching the part of the batch that is left (see {@link Grocery#getRemainingValue()}).</li>
+ * </ul>
+ */
+public enum ValuationMode {
+  FULL_PRICE,
+  REMAINING_FRACTION
+}
@@ -0,0 +1,113 @@
+package edu.ntnu.idi.idatt.model;
+
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Running value totals for a group of grocery batches.
+ *
+ * <p>Used by {@link FoodStorage} to keep the value of the whole storage, the expired storage
+ * and each grocery item up to date as batches are added, used and removed, so the value
+ * queries do not have to visit every batch.
+ * </p>
+ *
+ * <p>The totals are whole numbers of øre, with the value of each batch rounded to the nearest
+ * øre, so adding and removing batches is exact: a group that is emptied again totals exactly 0,
+ * however many batches passed through it. The totals are {@link LongAdder}s, so threads
+ * updating the totals of the whole storage for different grocery items do not block each other.
+ * </p>
+ */
+class ValueTotals {
+
+  private final LongAdder fullValue = new LongAdder();
+  private final LongAdder remainingValue = new LongAdder();
+
+  /**
+   * Adds a batch to the totals.
+   *
+   * @param grocery the batch to add
+   */
+  void add(Grocery grocery) {
+    fullValue.add(toOre(grocery.getPrice()));
+    remainingValue.add(toOre(grocery.getRemainingValue()));
+  }
+
+  /**
+   * Adds every batch counted in other totals to these totals.
+   *
+   * @param other the totals to add
+   */
+  void addAll(ValueTotals other) {
+    fullValue.add(other.fullValue.sum());
+    remainingValue.add(other.remainingValue.sum());
+  }
+
+  /**
+   * Removes a batch from the totals. The batch must have the price and amount it had when it
+   * was added, or when the totals were last told about a change to it.
+   *
+   * @param grocery the batch to remove
+   */
+  void remove(Grocery grocery) {
+    fullValue.add(-toOre(grocery.getPrice()));
+    remainingValue.add(-toOre(grocery.getRemainingValue()));
+  }
+
+  /**
+   * Adjusts the totals after the price or amount of a batch has changed.
+   *
+   * @param priceBefore the price of the batch before the change
+   * @param remainingValueBefore the remaining value of the batch before the change
+   * @param grocery the batch after the change
+   */
+  void batchChanged(double priceBefore, double remainingValueBefore, Grocery grocery) {
+    fullValue.add(toOre(grocery.getPrice()) - toOre(priceBefore));
+    remainingValue.add(toOre(grocery.getRemainingValue()) - toOre(remainingValueBefore));
+  }
+
+  /**
+   * Counts the totals again from the batches of the group, and adjusts other totals by the
+   * change, such as those of the whole storage. Used after many batches were added or changed
+   * at once, so the totals are updated once rather than once per batch. The result is the same,
+   * since the totals are the sum of the rounded value of each batch either way.
+   *
+   * @param batches every batch of the group
+   * @param sharedTotals the totals to adjust along with these totals
+   */
+  void recount(List<Grocery> batches, ValueTotals sharedTotals) {
+    long full = 0;
+    long remaining = 0;
+    for (Grocery batch : batches) {
+      full += toOre(batch.getPrice());
+      remaining += toOre(batch.getRemainingValue());
+    }
+
+    long fullChange = full - fullValue.sum();
+    long remainingChange = remaining - remainingValue.sum();
+    fullValue.add(fullChange);
+    remainingValue.add(remainingChange);
+    sharedTotals.fullValue.add(fullChange);
+    sharedTotals.remainingValue.add(remainingChange);
+  }
+
+  /**
+   * Returns the total value of the group for the given valuation mode.
+   *
+   * @param mode how each batch is valued
+   * @return the total value, in kr
+   */
+  double get(ValuationMode mode) {
+    long ore = mode == ValuationMode.REMAINING_FRACTION ? remainingValue.sum() : fullValue.sum();
+    return ore / 100.0;
+  }
+
+  /**
+   * Helper method for rounding a value in kr to a whole number of øre.
+   *
+   * @param value the value, in kr
+   * @return the value, in øre
+   */
+  private static long toOre(double value) {
+    return Math.round(value * 100);
+  }
+}
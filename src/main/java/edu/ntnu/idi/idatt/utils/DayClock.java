@@ -0,0 +1,115 @@
+package edu.ntnu.idi.idatt.utils;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+
+/**
+ * Utility class telling which day it is, for checking whether groceries have expired.
+ *
+ * <p>The current day is looked up from the underlying {@link Clock} once per day,
+ * and cached as an epoch day number together with the time the next day starts.
+ * Asking for today then only costs reading the clock's milliseconds and comparing them,
+ * instead of a time zone lookup and a date calculation, so an expiry check
+ * becomes a comparison of two numbers.
+ * </p>
+ *
+ * <p>The clock can be replaced, so tests can set the current day without waiting for it,
+ * for example with {@link Clock#fixed(java.time.Instant, java.time.ZoneId)}.
+ * </p>
+ *
+ * <p>Supported operations include:
+ * <ul>
+ *   <li>Getting today as an epoch day or as a {@link LocalDate}.</li>
+ *   <li>Getting the milliseconds left until the next day starts.</li>
+ * </ul>
+ */
+
+public class DayClock {
+
+  private static final DayClock SYSTEM = new DayClock(Clock.systemDefaultZone());
+
+  private final Clock clock;
+  private volatile Day current;
+
+  /**
+   * A cached day: its epoch day number, its date, and the time the next day starts.
+   */
+
+  private record Day(long epochDay, LocalDate date, long nextDayStartMillis) {}
+
+  /**
+   * Constructs a day clock reading the time from the given clock.
+   *
+   * @param clock the clock to read the time and time zone from
+   * @throws IllegalArgumentException if the clock is null
+   */
+
+  public DayClock(Clock clock) {
+    if (clock == null) {
+      throw new IllegalArgumentException("Clock cannot be null.");
+    }
+    this.clock = clock;
+  }
+
+  /**
+   * Returns the day clock shared by everything that uses the system clock and time zone.
+   *
+   * @return the shared system day clock
+   */
+
+  public static DayClock systemDefault() {
+    return SYSTEM;
+  }
+
+  /**
+   * Returns today as an epoch day number, as in {@link LocalDate#toEpochDay()}.
+   *
+   * @return the number of days from 1970-01-01 to today
+   */
+
+  public long today() {
+    return currentDay().epochDay();
+  }
+
+  /**
+   * Returns today as a date.
+   *
+   * @return today's date
+   */
+
+  public LocalDate todayDate() {
+    return currentDay().date();
+  }
+
+  /**
+   * Returns the milliseconds left until the start of tomorrow.
+   *
+   * @return the milliseconds until the next day starts, at least 0
+   */
+
+  public long millisUntilTomorrow() {
+    return Math.max(0, currentDay().nextDayStartMillis() - clock.millis());
+  }
+
+  /**
+   * Helper method for getting the cached day, looking it up again once the next day has started.
+   *
+   * @return the current day
+   */
+
+  private Day currentDay() {
+    Day day = current;
+
+    if (day == null || clock.millis() >= day.nextDayStartMillis()) {
+      // Two threads may both look the day up at midnight, and both get the same answer
+      ZonedDateTime now = ZonedDateTime.now(clock);
+      LocalDate date = now.toLocalDate();
+      long nextDayStart = date.plusDays(1).atStartOfDay(now.getZone()).toInstant().toEpochMilli();
+
+      day = new Day(date.toEpochDay(), date, nextDayStart);
+      current = day;
+    }
+    return day;
+  }
+}
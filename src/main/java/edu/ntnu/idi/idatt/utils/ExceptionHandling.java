@@ -4,7 +4,10 @@ import edu.ntnu.idi.idatt.model.FoodStorage;
 import edu.ntnu.idi.idatt.model.Grocery;
 import edu.ntnu.idi.idatt.model.IngredientDetail;
 import edu.ntnu.idi.idatt.model.Recipe;
+import edu.ntnu.idi.idatt.model.StorageListener;
+import java.time.Duration;
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -45,6 +48,23 @@ public class ExceptionHandling {
     }
   }
 
+  /**
+   * Validates the text and the number of results of a search.
+   *
+   * @param query the text to search for
+   * @param limit the largest number of results to return
+   * @throws IllegalArgumentException if the text is null or the limit is not positive
+   */
+
+  public static void validateSearch(String query, int limit) {
+    if (query == null) {
+      throw new IllegalArgumentException("Search text cannot be null.");
+    }
+    if (limit <= 0) {
+      throw new IllegalArgumentException("Number of results must be greater than 0.");
+    }
+  }
+
   /**
    * Ensures the given price is valid by verifying it is a positive value.
    *
@@ -73,6 +93,59 @@ public class ExceptionHandling {
     }
   }
 
+  /**
+   * Validates that the provided number of servings is greater than zero.
+   *
+   * @param servings the number of servings to validate
+   * @throws IllegalArgumentException if the number of servings is less than or equal to zero
+   */
+
+  public static void validateServings(int servings) {
+    if (servings <= 0) {
+      throw new IllegalArgumentException("Number of servings must be greater than 0.");
+    }
+  }
+
+  /**
+   * Validates that the provided number of days to plan for is greater than zero.
+   *
+   * @param days the number of days to validate
+   * @throws IllegalArgumentException if the number of days is less than or equal to zero
+   */
+
+  public static void validateDays(int days) {
+    if (days <= 0) {
+      throw new IllegalArgumentException("Number of days must be greater than 0.");
+    }
+  }
+
+  /**
+   * Validates that the provided time budget is not null or negative.
+   *
+   * @param timeBudget the time budget to validate
+   * @throws IllegalArgumentException if the time budget is null or negative
+   */
+
+  public static void validateTimeBudget(Duration timeBudget) {
+    if (timeBudget == null || timeBudget.isNegative()) {
+      throw new IllegalArgumentException("Time budget cannot be null or negative.");
+    }
+  }
+
+  /**
+   * Validates that an amount converted to thousandths of its standard unit is not zero,
+   * which happens when the amount is smaller than half a thousandth of the unit.
+   *
+   * @param scaledAmount the amount to validate, in thousandths of its standard unit
+   * @throws IllegalArgumentException if the amount is less than or equal to zero
+   */
+
+  public static void validateScaledAmount(long scaledAmount) {
+    if (scaledAmount <= 0) {
+      throw new IllegalArgumentException("Amount is too small, the smallest amount is 0.001.");
+    }
+  }
+
   /**
    * Validates that the provided unit is not null or empty.
    *
@@ -148,6 +221,46 @@ public class ExceptionHandling {
     }
   }
 
+  /**
+   * Validates that the provided collection of groceries, and every grocery in it, is not null.
+   *
+   * @param groceries the grocery items to validate
+   * @throws IllegalArgumentException if the collection or any of its groceries is null
+   */
+
+  public static void nullGroceries(Collection<Grocery> groceries) {
+    if (groceries == null) {
+      throw new IllegalArgumentException("Groceries cannot be null.");
+    }
+    groceries.forEach(ExceptionHandling::nullGrocery);
+  }
+
+  /**
+   * Validates that the provided clock is not null.
+   *
+   * @param clock the clock to validate
+   * @throws IllegalArgumentException if the clock is null
+   */
+
+  public static void nullClock(DayClock clock) {
+    if (clock == null) {
+      throw new IllegalArgumentException("Clock cannot be null.");
+    }
+  }
+
+  /**
+   * Validates that the provided storage listener is not null.
+   *
+   * @param listener the listener to validate
+   * @throws IllegalArgumentException if the listener is null
+   */
+
+  public static void nullListener(StorageListener listener) {
+    if (listener == null) {
+      throw new IllegalArgumentException("Listener cannot be null.");
+    }
+  }
+
   /**
    * Validates that the provided storage is not null.
    *
@@ -173,6 +286,42 @@ public class ExceptionHandling {
     }
   }
 
+  /**
+   * Validates that the provided collection of recipes, and every recipe in it, is not null.
+   *
+   * @param recipes the recipes to validate
+   * @throws IllegalArgumentException if the collection or any of its recipes is null
+   */
+
+  public static void nullRecipes(Collection<Recipe> recipes) {
+    if (recipes == null) {
+      throw new IllegalArgumentException("Recipes cannot be null.");
+    }
+    recipes.forEach(ExceptionHandling::nullRecipe);
+  }
+
+  /**
+   * Validates that the provided recipes and their numbers of servings are not null,
+   * and that every number of servings is greater than zero.
+   *
+   * @param servingsByRecipe the number of servings of each recipe
+   * @throws IllegalArgumentException if the map, any recipe or number of servings in it is null,
+   *                                  or a number of servings is less than or equal to zero
+   */
+
+  public static void validateServingsByRecipe(Map<Recipe, Integer> servingsByRecipe) {
+    if (servingsByRecipe == null) {
+      throw new IllegalArgumentException("Recipes cannot be null.");
+    }
+    servingsByRecipe.forEach((recipe, servings) -> {
+      nullRecipe(recipe);
+      if (servings == null) {
+        throw new IllegalArgumentException("Number of servings cannot be null.");
+      }
+      validateServings(servings);
+    });
+  }
+
   /**
    * Validates that the specified item exists in the storage.
    *
@@ -183,7 +332,7 @@ public class ExceptionHandling {
 
   // Suppressed line length check as breaking the method definition reduces readability
   @SuppressWarnings("checkstyle:LineLength")
-  public static void validateStorageContainsItem(Map<String, List<Grocery>> storage, String itemName) {
+  public static void validateStorageContainsItem(Map<String, ? extends List<Grocery>> storage, String itemName) {
     if (!storage.containsKey(itemName.toLowerCase()) || storage.get(itemName.toLowerCase())
         .isEmpty()) {
       throw new IllegalArgumentException(
@@ -193,20 +342,23 @@ public class ExceptionHandling {
 
   /**
    * Validates that the amount to remove is within the allowable range for the given item in
-   * storage.
+   * storage. The batches of the item are each converted to the unit of the amount, see
+   * {@link UnitConverter#convertedAmount(List, Unit, String)}, so batches stored by weight
+   * and by volume both count.
    *
    * @param storage        the storage map to check
-   * @param amountToRemove the amount to validate
+   * @param amountToRemove the amount to validate, in thousandths of {@code unit}
+   * @param unit           the standard unit of the amount
    * @param itemName       the name of the grocery item to validate against
    * @throws IllegalArgumentException if the amount to remove exceeds the total available amount
    */
 
-  public static void validateAmountToRemove(Map<String, List<Grocery>> storage, Double amountToRemove, String itemName) {
-    double totalAmount = storage.values().stream()
-        .flatMap(List::stream)
-        .filter(g -> g.getName().equalsIgnoreCase(itemName))
-        .mapToDouble(Grocery::getAmount)
-        .sum();
+  // Suppressed line length check as breaking the method definition reduces readability
+  @SuppressWarnings("checkstyle:LineLength")
+  public static void validateAmountToRemove(Map<String, ? extends List<Grocery>> storage, long amountToRemove, Unit unit, String itemName) {
+    List<Grocery> groceries = storage.get(itemName.toLowerCase());
+    long totalAmount = groceries == null
+        ? 0 : UnitConverter.convertedAmount(groceries, unit, itemName.toLowerCase());
 
     if (amountToRemove > totalAmount) {
       throw new IllegalArgumentException(
@@ -216,6 +368,8 @@ public class ExceptionHandling {
 
   /**
    * Validates that the unit is compatible with the existing unit for a given grocery item.
+   * A weight and a volume are compatible if the grocery has a known density,
+   * see {@link UnitConverter#isConvertible(Unit, Unit, String)}.
    *
    * @param unit        the unit to validate
    * @param groceryName the name of the grocery item to check
@@ -225,13 +379,13 @@ public class ExceptionHandling {
 
   // Suppressed line length check as breaking the method definition reduces readability
   @SuppressWarnings("checkstyle:LineLength")
-  public static void validateUnitCompatibility(String unit, String groceryName, Map<String, List<Grocery>> storage) {
-    String standardUnit = UnitConverter.getStandardUnit(unit);
+  public static void validateUnitCompatibility(String unit, String groceryName, Map<String, ? extends List<Grocery>> storage) {
+    Unit standardUnit = UnitConverter.getStandardUnitOf(unit);
     List<Grocery> groceries = storage.get(groceryName.toLowerCase());
 
-    String groceryStandardUnit = UnitConverter.getStandardUnit(groceries.get(0).getUnit());
+    Unit groceryStandardUnit = groceries.get(0).getStandardUnit();
 
-    if (!standardUnit.equals(groceryStandardUnit)) {
+    if (!UnitConverter.isConvertible(standardUnit, groceryStandardUnit, groceryName)) {
       throw new IllegalArgumentException(
           "Unit mismatch: Cannot use '" + unit + "' with groceries measured in '"
               + groceryStandardUnit + "'.");
@@ -255,13 +409,12 @@ public class ExceptionHandling {
    * Validates that the recipe does not already exist in the provided recipe book.
    *
    * @param recipe the recipe to check
-   * @param recipes the list of existing recipes
+   * @param recipesByName the existing recipes, by lowercase recipe name
    * @throws IllegalArgumentException if a recipe with the same name already exists
    */
 
-  public static void validateExistingRecipe(Recipe recipe, List<Recipe> recipes) {
-    if (recipes.stream()
-        .anyMatch(rcp -> rcp.getNameOfRecipe().equalsIgnoreCase(recipe.getNameOfRecipe()))) {
+  public static void validateExistingRecipe(Recipe recipe, Map<String, Recipe> recipesByName) {
+    if (recipesByName.containsKey(recipe.getNameOfRecipe().toLowerCase())) {
       throw new IllegalArgumentException(
           "Recipe with the same name already exists in the cookbook.");
     }
@@ -1,5 +1,6 @@
 package edu.ntnu.idi.idatt.utils;
 
+import edu.ntnu.idi.idatt.model.FoodStorage;
 import edu.ntnu.idi.idatt.model.Grocery;
 import edu.ntnu.idi.idatt.model.Recipe;
 import edu.ntnu.idi.idatt.model.RecipeBook;
@@ -175,22 +176,28 @@ public class InputValidation {
   /**
    * Prompts the user to input the name of a grocery item and validates its existence in storage.
    *
-   * <p>If the item does not exist, the user is prompted again until a valid item name is provided.
+   * <p>If the item does not exist, the names the user may have meant are shown, and the user
+   * is prompted again until a valid item name is provided.
    *
    * @param prompt the message displayed to the user
-   * @param storage the map of storage containing grocery items
+   * @param storage the storage containing grocery items
    * @return the name of a valid grocery item
    */
 
-  public static String getValidItemToRemove(String prompt, Map<String, List<Grocery>> storage) {
+  public static String getValidItemToRemove(String prompt, FoodStorage storage) {
     System.out.println(prompt);
     String input = sc.nextLine().trim();
 
     try {
-      ExceptionHandling.validateStorageContainsItem(storage, input);
+      ExceptionHandling.validateStorageContainsItem(storage.sortGroceries(), input);
       return input;
     } catch (IllegalArgumentException e) {
       System.out.println("Error: " + e.getMessage());
+
+      List<String> suggestions = storage.suggestGroceryNames(input, 5, false);
+      if (!input.isEmpty() && !suggestions.isEmpty()) {
+        System.out.println("Did you mean: " + String.join(", ", suggestions) + "?");
+      }
       return getValidItemToRemove(prompt, storage);
     }
   }
@@ -237,9 +244,10 @@ public class InputValidation {
 
     try {
       double amount = Double.parseDouble(input);
-      double standardizedAmount = UnitConverter.convertUnitAmount(amount, unit);
-      ExceptionHandling.validateAmountToRemove(storage, standardizedAmount, itemName);
-      ExceptionHandling.validateAmount(standardizedAmount);
+      long standardizedAmount = UnitConverter.convertToScaledAmount(amount, unit);
+      ExceptionHandling.validateAmountToRemove(storage, standardizedAmount,
+          UnitConverter.getStandardUnitOf(unit), itemName);
+      ExceptionHandling.validateScaledAmount(standardizedAmount);
       return amount;
 
     } catch (NumberFormatException e) {
@@ -266,6 +274,12 @@ public class InputValidation {
     Recipe toCheck = recipebook.getRecipe(recipeName);
     if (toCheck == null) {
       System.out.println("error: This recipe doesnt exist in your recipe-book.");
+
+      List<Recipe> suggestions = recipebook.suggestRecipes(recipeName.trim(), 5);
+      if (!recipeName.isBlank() && !suggestions.isEmpty()) {
+        System.out.println("Did you mean:");
+        suggestions.forEach(recipe -> System.out.println("- " + recipe.getNameOfRecipe()));
+      }
       return null;
     }
     return toCheck;
@@ -0,0 +1,348 @@
+package edu.ntnu.idi.idatt.utils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Utility class for searching values by name, both by the start of the name
+ * and by names that are spelled almost the same.
+ *
+ * <p>Names are matched ignoring case, and each name holds one value. The index keeps:
+ * <ul>
+ *   <li>A trie of the names, with the children of each node in alphabetical order,
+ *   so the names starting with a prefix are found by walking the prefix and then
+ *   collecting the first names below it, without looking at any other name.</li>
+ *   <li>An index from every trigram (three letters in a row) to the numbers of the names
+ *   containing it. A name within a few typing errors of the search text shares most of its
+ *   trigrams, so the shared trigrams are counted per name in an array, and only names sharing
+ *   enough of them are compared letter by letter and ranked by their edit distance to the
+ *   search text.</li>
+ * </ul>
+ *
+ * <p>Both are updated as names are added and removed. The index can be shared between threads;
+ * every method holds the index's lock.
+ * </p>
+ *
+ * @param <T> the type of the values
+ */
+
+public class NameSearchIndex<T> {
+
+  private static final int GRAM_LENGTH = 3;
+  private static final String PADDING = "$".repeat(GRAM_LENGTH - 1);
+  private static final int MAX_TYPING_ERRORS = 2;
+
+  private final Node<T> root = new Node<>();
+  private final Map<String, T> values = new HashMap<>();
+
+  /**
+   * Every name has a number, its index in {@code names}. Numbers of removed names are reused.
+   */
+
+  private final Map<String, Integer> ids = new HashMap<>();
+  private final List<String> names = new ArrayList<>();
+  private final IdList freeIds = new IdList();
+  private final Map<String, IdList> idsByGram = new HashMap<>();
+
+  /**
+   * The number of shared trigrams per name number, used by {@link #searchFuzzy(String, int)}
+   * and left all zero between searches.
+   */
+
+  private int[] sharedCounts = new int[0];
+
+  /**
+   * A node in the trie. It holds the value of the name ending at it, if any.
+   */
+
+  private static final class Node<T> {
+    private final TreeMap<Character, Node<T>> children = new TreeMap<>();
+    private T value;
+  }
+
+  /**
+   * Adds a name with its value, or replaces the value of a name that is already in the index.
+   *
+   * @param name the name
+   * @param value the value to find by the name
+   * @throws IllegalArgumentException if the name or value is null
+   */
+
+  public synchronized void put(String name, T value) {
+    if (name == null || value == null) {
+      throw new IllegalArgumentException("Name and value cannot be null.");
+    }
+    String key = name.toLowerCase();
+
+    Node<T> node = root;
+    for (int i = 0; i < key.length(); i++) {
+      node = node.children.computeIfAbsent(key.charAt(i), c -> new Node<>());
+    }
+    node.value = value;
+
+    if (values.put(key, value) == null) {
+      int id = freeIds.isEmpty() ? names.size() : freeIds.removeLast();
+      if (id == names.size()) {
+        names.add(key);
+      } else {
+        names.set(id, key);
+      }
+      ids.put(key, id);
+
+      for (String gram : grams(key)) {
+        idsByGram.computeIfAbsent(gram, g -> new IdList()).add(id);
+      }
+    }
+  }
+
+  /**
+   * Removes a name and its value.
+   *
+   * @param name the name to remove, in any case
+   * @return {@code true} if the name was in the index
+   */
+
+  public synchronized boolean remove(String name) {
+    String key = name == null ? null : name.toLowerCase();
+    if (key == null || values.remove(key) == null) {
+      return false;
+    }
+
+    // Walk down, remembering the path, then prune the nodes left without a name below them
+    Deque<Node<T>> path = new ArrayDeque<>();
+    Node<T> node = root;
+    for (int i = 0; i < key.length(); i++) {
+      path.push(node);
+      node = node.children.get(key.charAt(i));
+    }
+    node.value = null;
+
+    for (int i = key.length() - 1; i >= 0 && node.value == null && node.children.isEmpty(); i--) {
+      Node<T> parent = path.pop();
+      parent.children.remove(key.charAt(i));
+      node = parent;
+    }
+
+    int id = ids.remove(key);
+    names.set(id, null);
+    freeIds.add(id);
+
+    for (String gram : grams(key)) {
+      IdList withGram = idsByGram.get(gram);
+      withGram.remove(id);
+      if (withGram.isEmpty()) {
+        idsByGram.remove(gram);
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the values of the names starting with a prefix, in alphabetical order of the names.
+   *
+   * @param prefix the start of the names, in any case
+   * @param limit the largest number of values to return
+   * @return at most {@code limit} values
+   * @throws IllegalArgumentException if the prefix is null or the limit is not positive
+   */
+
+  public synchronized List<T> searchPrefix(String prefix, int limit) {
+    ExceptionHandling.validateSearch(prefix, limit);
+    String key = prefix.toLowerCase();
+
+    Node<T> node = root;
+    for (int i = 0; i < key.length() && node != null; i++) {
+      node = node.children.get(key.charAt(i));
+    }
+
+    List<T> result = new ArrayList<>();
+    if (node != null) {
+      collect(node, result, limit);
+    }
+    return result;
+  }
+
+  /**
+   * Returns the values of the names spelled closest to a search text, allowing one typing error
+   * per four letters, at least one and at most {@value #MAX_TYPING_ERRORS}. A typing error is
+   * a letter that is added, removed or replaced. The closest names come first, and names
+   * equally close in alphabetical order.
+   *
+   * @param query the search text, in any case
+   * @param limit the largest number of values to return
+   * @return at most {@code limit} values
+   * @throws IllegalArgumentException if the search text is null or the limit is not positive
+   */
+
+  public synchronized List<T> searchFuzzy(String query, int limit) {
+    ExceptionHandling.validateSearch(query, limit);
+    String key = query.toLowerCase();
+    int maxDistance = Math.clamp(key.length() / 4, 1, MAX_TYPING_ERRORS);
+
+    // Each typing error changes at most GRAM_LENGTH of the trigrams,
+    // so a close name shares at least minShared of them
+    Set<String> queryGrams = grams(key);
+    int minShared = Math.max(1, queryGrams.size() - maxDistance * GRAM_LENGTH);
+
+    if (sharedCounts.length < names.size()) {
+      sharedCounts = new int[names.size()];
+    }
+    IdList candidates = new IdList();
+    for (String gram : queryGrams) {
+      IdList withGram = idsByGram.get(gram);
+      for (int i = 0; withGram != null && i < withGram.size; i++) {
+        int id = withGram.ids[i];
+        if (sharedCounts[id]++ == 0) {
+          candidates.add(id);
+        }
+      }
+    }
+
+    List<Match> matches = new ArrayList<>();
+    for (int i = 0; i < candidates.size; i++) {
+      int id = candidates.ids[i];
+      String name = names.get(id);
+
+      if (sharedCounts[id] >= minShared
+          && Math.abs(name.length() - key.length()) <= maxDistance) {
+        int distance = editDistance(key, name, maxDistance);
+        if (distance <= maxDistance) {
+          matches.add(new Match(name, distance));
+        }
+      }
+      sharedCounts[id] = 0;
+    }
+    matches.sort(Comparator.comparingInt(Match::distance).thenComparing(Match::name));
+
+    List<T> result = new ArrayList<>();
+    for (Iterator<Match> it = matches.iterator(); it.hasNext() && result.size() < limit; ) {
+      result.add(values.get(it.next().name()));
+    }
+    return result;
+  }
+
+  /**
+   * A name found by a fuzzy search, with its edit distance to the search text.
+   */
+
+  private record Match(String name, int distance) {}
+
+  /**
+   * Helper method for collecting the values below a node, in alphabetical order of the names.
+   *
+   * @param node the node to start at
+   * @param result the list to add the values to
+   * @param limit the size at which the list is full
+   */
+
+  private static <T> void collect(Node<T> node, List<T> result, int limit) {
+    if (node.value != null) {
+      result.add(node.value);
+    }
+    for (Iterator<Node<T>> it = node.children.values().iterator();
+        it.hasNext() && result.size() < limit; ) {
+      collect(it.next(), result, limit);
+    }
+  }
+
+  /**
+   * Helper method for getting the distinct trigrams of a name. The name is padded,
+   * so its first and last letters are part of as many trigrams as the others.
+   *
+   * @param key the lowercase name
+   * @return the trigrams of the name
+   */
+
+  private static Set<String> grams(String key) {
+    String padded = PADDING + key + PADDING;
+    Set<String> grams = new HashSet<>();
+
+    for (int i = 0; i + GRAM_LENGTH <= padded.length(); i++) {
+      grams.add(padded.substring(i, i + GRAM_LENGTH));
+    }
+    return grams;
+  }
+
+  /**
+   * Helper method for computing the Levenshtein distance between two names, stopping early
+   * once it is known to be larger than a bound.
+   *
+   * @param a the first name
+   * @param b the second name
+   * @param bound the largest distance of interest
+   * @return the distance, or {@code bound + 1} if it is larger than {@code bound}
+   */
+
+  private static int editDistance(String a, String b, int bound) {
+    int[] previous = new int[b.length() + 1];
+    int[] current = new int[b.length() + 1];
+    for (int j = 0; j <= b.length(); j++) {
+      previous[j] = j;
+    }
+
+    for (int i = 1; i <= a.length(); i++) {
+      current[0] = i;
+      int rowMin = current[0];
+
+      for (int j = 1; j <= b.length(); j++) {
+        int substitution = previous[j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1);
+        current[j] = Math.min(substitution, Math.min(previous[j], current[j - 1]) + 1);
+        rowMin = Math.min(rowMin, current[j]);
+      }
+      if (rowMin > bound) {
+        return bound + 1;
+      }
+
+      int[] swap = previous;
+      previous = current;
+      current = swap;
+    }
+    return Math.min(previous[b.length()], bound + 1);
+  }
+
+  /**
+   * A growable list of name numbers, without boxing them.
+   */
+
+  private static final class IdList {
+    private int[] ids = new int[4];
+    private int size;
+
+    void add(int id) {
+      if (size == ids.length) {
+        ids = Arrays.copyOf(ids, size * 2);
+      }
+      ids[size++] = id;
+    }
+
+    /**
+     * Removes a number by moving the last number into its place, so the order is not kept.
+     */
+    void remove(int id) {
+      for (int i = 0; i < size; i++) {
+        if (ids[i] == id) {
+          ids[i] = ids[--size];
+          return;
+        }
+      }
+    }
+
+    int removeLast() {
+      return ids[--size];
+    }
+
+    boolean isEmpty() {
+      return size == 0;
+    }
+  }
+}
@@ -0,0 +1,73 @@
+package edu.ntnu.idi.idatt.utils;
+
+/**
+ * The standard units that amounts of groceries and ingredients are stored in.
+ *
+ * <p>Amounts are stored as whole numbers of thousandths of their standard unit,
+ * see {@link #SCALE}: milligrams for {@link #GRAM}, millilitres for {@link #LITRE}
+ * and thousandths of a piece for {@link #PIECE}. Adding, subtracting and comparing
+ * such amounts is exact, so removing an amount in several steps leaves no rounding
+ * error behind.
+ * </p>
+ *
+ * <p>Every unit a user can type, such as "kg" or "dl", is converted to one of these by
+ * {@link UnitConverter#getStandardUnitOf(String)}. The units are compared by identity,
+ * without looking at their symbols.
+ * </p>
+ */
+
+public enum Unit {
+  GRAM("g"),
+  LITRE("l"),
+  PIECE("stk");
+
+  /**
+   * The number of stored steps per standard unit.
+   */
+
+  public static final long SCALE = 1000;
+
+  private final String symbol;
+
+  Unit(String symbol) {
+    this.symbol = symbol;
+  }
+
+  /**
+   * Returns the symbol of the unit, as shown to the user.
+   *
+   * @return the symbol of the unit, such as "g"
+   */
+
+  public String getSymbol() {
+    return symbol;
+  }
+
+  /**
+   * Converts an amount in a standard unit to the number of thousandths it is stored as,
+   * rounding to the nearest thousandth.
+   *
+   * @param amount the amount, in a standard unit
+   * @return the amount in thousandths of the unit
+   */
+
+  public static long toScaled(double amount) {
+    return Math.round(amount * SCALE);
+  }
+
+  /**
+   * Converts a stored number of thousandths back to an amount in the standard unit.
+   *
+   * @param scaledAmount the amount in thousandths of the unit
+   * @return the amount, in the standard unit
+   */
+
+  public static double fromScaled(long scaledAmount) {
+    return (double) scaledAmount / SCALE;
+  }
+
+  @Override
+  public String toString() {
+    return symbol;
+  }
+}
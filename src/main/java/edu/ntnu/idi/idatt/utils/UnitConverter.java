@@ -1,5 +1,11 @@
 package edu.ntnu.idi.idatt.utils;
 
+import edu.ntnu.idi.idatt.model.Grocery;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
 /**
  * Utility class for handling unit conversions in a grocery or recipe context.
  *
@@ -7,20 +13,132 @@ package edu.ntnu.idi.idatt.utils;
  * <ul>
  *   <li>Convert amounts between different units to standard units (e.g., grams, liters).</li>
  *   <li>Determine the standard unit for a given input unit.</li>
+ *   <li>Convert amounts between weight and volume for ingredients with a known density.</li>
  * </ul>
  *
  * <p>Supported units include:
  * <ul>
- *   <li>Weight: "g", "kg".</li>
- *   <li>Volume: "l", "ml", "dl".</li>
+ *   <li>Weight: "g", "kg", "oz", "lb".</li>
+ *   <li>Volume: "l", "ml", "dl", "cup", "tbsp", "tsp".</li>
  *   <li>Count: "stk" (for discrete items).</li>
  * </ul>
  *
+ * <p>The units are kept in a table, mapping each unit to its standard {@link Unit} and the
+ * factor converting it. A unit is looked up once, and the conversion is a multiplication,
+ * so no unit text is copied or compared character by character on the way.
+ * Units are matched ignoring case.
+ *
+ * <p>More units and densities can be added at any time with {@link #registerUnit} and
+ * {@link #registerDensity}. A unit or density that is already defined cannot be redefined:
+ * stored amounts and compiled recipes are kept in standard units, so redefining one later
+ * would silently change what they mean.
+ *
+ * <p>The tables are copied on write. Adding an entry builds a new table and publishes it
+ * in a single write, so conversions read the tables without locking and never see one
+ * halfway through a change. Additions are rare, so the copying costs little.
+ *
  * <p>Unsupported or invalid units will result in an {@link IllegalArgumentException}.
  */
 
 public class UnitConverter {
 
+  /**
+   * A unit in the table: its standard unit, and how many thousandths of the standard unit
+   * one of it is.
+   */
+
+  private record UnitDefinition(Unit standardUnit, double scaledFactor) {}
+
+  /**
+   * The density of an ingredient, as factors converting its amount between thousandths of
+   * a liter and thousandths of a gram, in both directions.
+   */
+
+  private record Density(double litreToGram, double gramToLitre) {}
+
+  // Replaced, never changed, when an entry is added, so they can be read without locking
+  private static volatile Map<String, UnitDefinition> units = Map.of();
+  private static volatile Map<String, Density> densities = Map.of();
+
+  static {
+    registerUnit("g", Unit.GRAM, 1);
+    registerUnit("kg", Unit.GRAM, 1000);
+    registerUnit("oz", Unit.GRAM, 28.349523125);
+    registerUnit("lb", Unit.GRAM, 453.59237);
+
+    registerUnit("l", Unit.LITRE, 1);
+    registerUnit("dl", Unit.LITRE, 0.1);
+    registerUnit("ml", Unit.LITRE, 0.001);
+    registerUnit("cup", Unit.LITRE, 0.2365882365);
+    registerUnit("tbsp", Unit.LITRE, 0.01478676478125);
+    registerUnit("tsp", Unit.LITRE, 0.00492892159375);
+
+    registerUnit("stk", Unit.PIECE, 1);
+
+    // Densities in grams per milliliter
+    registerDensity("water", 1.0);
+    registerDensity("flour", 0.53);
+    registerDensity("sugar", 0.85);
+    registerDensity("salt", 1.2);
+    registerDensity("butter", 0.91);
+    registerDensity("rice", 0.85);
+    registerDensity("oil", 0.92);
+  }
+
+  /**
+   * Adds a unit to the table, so amounts can be given in it.
+   *
+   * <p>For example, {@code registerUnit("pinch", Unit.GRAM, 0.36)} lets recipes
+   * list salt by the pinch.
+   *
+   * @param symbol the symbol of the unit, such as "cup"
+   * @param standardUnit the standard unit amounts in the unit are converted to
+   * @param factor how many of the standard unit one of the unit is
+   * @throws IllegalArgumentException if the symbol is empty or already in the table,
+   *                                  the standard unit is null, or the factor is not positive
+   */
+
+  public static synchronized void registerUnit(String symbol, Unit standardUnit, double factor) {
+    ExceptionHandling.validateUnit(symbol);
+    ExceptionHandling.validateAmount(factor);
+    if (standardUnit == null) {
+      throw new IllegalArgumentException("Standard unit cannot be null.");
+    }
+
+    Map<String, UnitDefinition> table = new HashMap<>(units);
+    if (table.putIfAbsent(symbol.toLowerCase(Locale.ROOT),
+        new UnitDefinition(standardUnit, factor * Unit.SCALE)) != null) {
+      throw new IllegalArgumentException("Unit '" + symbol + "' is already defined.");
+    }
+    units = table;
+  }
+
+  /**
+   * Sets the density of an ingredient, so its amount can be converted between weight
+   * and volume.
+   *
+   * @param ingredientName the name of the ingredient
+   * @param gramsPerMilliliter the density of the ingredient, in grams per milliliter
+   * @throws IllegalArgumentException if the name is empty or already has a density,
+   *                                  or the density is not positive
+   */
+
+  public static synchronized void registerDensity(String ingredientName,
+      double gramsPerMilliliter) {
+    ExceptionHandling.validateName(ingredientName);
+    ExceptionHandling.validateAmount(gramsPerMilliliter);
+
+    // A thousandth of a liter is a milliliter, and a thousandth of a gram is a milligram
+    double milligramsPerMilliliter = gramsPerMilliliter * 1000;
+    Map<String, Density> table = new HashMap<>(densities);
+    if (table.putIfAbsent(ingredientName.toLowerCase(Locale.ROOT),
+        new Density(milligramsPerMilliliter, 1 / milligramsPerMilliliter)) != null) {
+      throw new IllegalArgumentException(
+          "The density of '" + ingredientName + "' is already defined.");
+    }
+    densities = table;
+  }
+
   /**
    * Converts a given amount from a specified unit to its base unit.
    *
@@ -38,13 +156,7 @@ public class UnitConverter {
    */
 
   public static double convertUnitAmount(double amount, String unit) {
-    return switch (unit.toLowerCase()) {
-      case "ml" -> amount / 1000;
-      case "dl" -> amount / 10;
-      case "kg" -> amount * 1000;
-      case "g", "l", "stk" -> amount;
-      default -> throw new IllegalArgumentException("Unsupported unit: " + unit);
-    };
+    return amount * lookUp(unit).scaledFactor() / Unit.SCALE;
   }
 
   /**
@@ -52,8 +164,8 @@ public class UnitConverter {
    *
    * <p>For example:
    * <ul>
-   *   <li>"ml" and "dl" standardize to "l".</li>
-   *   <li>"kg" and "mg" standardize to "g".</li>
+   *   <li>"ml", "dl" and "cup" standardize to "l".</li>
+   *   <li>"kg" and "oz" standardize to "g".</li>
    *   <li>"g", "l", and "stk" remain unchanged.</li>
    * </ul>
    *
@@ -63,14 +175,7 @@ public class UnitConverter {
    */
 
   public static String getStandardUnit(String unit) {
-    return switch (unit.toLowerCase()) {
-      case "ml", "dl" -> "l";
-      case "kg" -> "g";
-      case "g" -> "g";  // Standardize weight to grams
-      case "l" -> "l";  // Standardize volume to liters
-      case "stk" -> "stk";  // Stock Items stay as they are
-      default -> throw new IllegalArgumentException("Unsupported unit: " + unit);
-    };
+    return getStandardUnitOf(unit).getSymbol();
   }
 
 
@@ -90,4 +195,140 @@ public class UnitConverter {
     // Converts the amount to its standard unit (g for weight, l for volume)
     return convertUnitAmount(amount, unit);
   }
-}
\ No newline at end of file
+
+  /**
+   * Returns the standard unit corresponding to the given unit, as a {@link Unit}.
+   *
+   * <p>Works like {@link #getStandardUnit(String)}, but the result can be compared by identity
+   * and stored without keeping the unit's text.
+   *
+   * @param unit the unit to standardize
+   * @return the standard unit
+   * @throws IllegalArgumentException if the unit is unsupported
+   */
+
+  public static Unit getStandardUnitOf(String unit) {
+    return lookUp(unit).standardUnit();
+  }
+
+  /**
+   * Converts a given amount to the number of thousandths of its standard unit
+   * it is stored as.
+   *
+   * <p>For example, 2.5 "dl" is 0.25 liters, which is stored as 250.
+   *
+   * @param amount the amount to convert
+   * @param unit the unit of the amount
+   * @return the amount in thousandths of its standard unit
+   * @throws IllegalArgumentException if the unit is unsupported
+   */
+
+  public static long convertToScaledAmount(double amount, String unit) {
+    return Math.round(amount * lookUp(unit).scaledFactor());
+  }
+
+  /**
+   * Checks whether amounts of an ingredient can be converted from one standard unit to another.
+   * That is the case if the units are the same, or if one is a weight and the other a volume
+   * and the ingredient has a known density.
+   *
+   * @param from the standard unit to convert from
+   * @param to the standard unit to convert to
+   * @param ingredientName the name of the ingredient
+   * @return {@code true} if the amounts can be converted
+   */
+
+  public static boolean isConvertible(Unit from, Unit to, String ingredientName) {
+    return from == to
+        || (from != Unit.PIECE && to != Unit.PIECE && density(ingredientName) != null);
+  }
+
+  /**
+   * Converts a stored amount of an ingredient from one standard unit to another,
+   * using the ingredient's density to convert between weight and volume.
+   *
+   * <p>For example, 1 "cup" of flour is stored as 236 milliliters, which is 125 grams.
+   *
+   * @param scaledAmount the amount, in thousandths of {@code from}
+   * @param from the standard unit of the amount
+   * @param to the standard unit to convert to
+   * @param ingredientName the name of the ingredient
+   * @return the amount in thousandths of {@code to}
+   * @throws IllegalArgumentException if the amount cannot be converted between the units,
+   *                                  see {@link #isConvertible(Unit, Unit, String)}
+   */
+
+  public static long convertScaledAmount(long scaledAmount, Unit from, Unit to,
+      String ingredientName) {
+    if (from == to) {
+      return scaledAmount;
+    }
+    if (!isConvertible(from, to, ingredientName)) {
+      throw new IllegalArgumentException("Cannot convert " + ingredientName + " from '"
+          + from + "' to '" + to + "'.");
+    }
+
+    Density density = density(ingredientName);
+    double factor = to == Unit.GRAM ? density.litreToGram() : density.gramToLitre();
+    return Math.round(scaledAmount * factor);
+  }
+
+  /**
+   * Sums the batches of a grocery that can be converted to a standard unit, each converted to it.
+   * Batches in a unit that cannot be converted, such as pieces of a grocery summed in grams,
+   * do not count.
+   *
+   * @param batches the batches of the grocery
+   * @param unit the standard unit to sum in
+   * @param ingredientName the name of the grocery
+   * @return the sum, in thousandths of {@code unit}
+   */
+
+  public static long convertedAmount(List<Grocery> batches, Unit unit, String ingredientName) {
+    long amount = 0;
+
+    for (int i = 0; i < batches.size(); i++) {
+      Grocery batch = batches.get(i);
+      if (isConvertible(batch.getStandardUnit(), unit, ingredientName)) {
+        amount += convertScaledAmount(batch.getScaledAmount(), batch.getStandardUnit(), unit,
+            ingredientName);
+      }
+    }
+    return amount;
+  }
+
+  /**
+   * Helper method for looking up a unit in the table, ignoring case.
+   *
+   * @param unit the unit to look up
+   * @return the unit's definition
+   * @throws IllegalArgumentException if the unit is unsupported
+   */
+
+  private static UnitDefinition lookUp(String unit) {
+    Map<String, UnitDefinition> table = units;
+    UnitDefinition definition = table.get(unit);
+
+    if (definition == null) {
+      // Units are usually typed in lower case, so only other spellings need a lowercase copy
+      definition = table.get(unit.toLowerCase(Locale.ROOT));
+    }
+    if (definition == null) {
+      throw new IllegalArgumentException("Unsupported unit: " + unit);
+    }
+    return definition;
+  }
+
+  /**
+   * Helper method for looking up the density of an ingredient, ignoring case.
+   *
+   * @param ingredientName the name of the ingredient
+   * @return the density, or {@code null} if it is not known
+   */
+
+  private static Density density(String ingredientName) {
+    Map<String, Density> table = densities;
+    Density density = table.get(ingredientName);
+    return density != null ? density : table.get(ingredientName.toLowerCase(Locale.ROOT));
+  }
+}
@@ -5,10 +5,20 @@ import static org.junit.jupiter.api.Assertions.*;
 
 import edu.ntnu.idi.idatt.model.FoodStorage;
 import edu.ntnu.idi.idatt.model.Grocery;
+import edu.ntnu.idi.idatt.model.IngredientDetail;
+import edu.ntnu.idi.idatt.model.Recipe;
+import edu.ntnu.idi.idatt.model.ValuationMode;
+import edu.ntnu.idi.idatt.utils.DayClock;
+import java.time.Clock;
 import java.time.LocalDate;
+import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
@@ -65,6 +75,23 @@ public class FoodStorageTest {
     assertEquals(grocery1, milkGroceries.get(2));
   }
 
+  @Test
+  void AddingGroceryWithSameDateAndOtherUnit_AddsNewBatch() {
+    Grocery grocery1 = new Grocery("Milk", 35.0, 1.5, "l", LocalDate.now().plusDays(5));
+    Grocery grocery2 = new Grocery("Milk", 35.0, 500.0, "g", LocalDate.now().plusDays(5));
+    Grocery grocery3 = new Grocery("Milk", 35.0, 0.5, "l", LocalDate.now().plusDays(5));
+    Grocery grocery4 = new Grocery("Milk", 35.0, 1.0, "l", LocalDate.now().plusDays(1));
+
+    foodStorage.registerToStorage(grocery1);
+    foodStorage.registerToStorage(grocery2);
+    foodStorage.registerToStorage(grocery3);
+    foodStorage.registerToStorage(grocery4);
+
+    List<Grocery> milkGroceries = foodStorage.findGroceriesByName("milk");
+    assertEquals(List.of(grocery4, grocery1, grocery2), milkGroceries);
+    assertEquals(2.0, grocery1.getAmount());
+  }
+
   @Test
   void removingAmountFromStorage_PartialRemoval() {
     Grocery grocery1 = new Grocery("Milk", 35.0, 5.0, "l", LocalDate.now());
@@ -105,6 +132,35 @@ public class FoodStorageTest {
     assertEquals(1, groceries.getFirst().getAmount());
   }
 
+  @Test
+  void removingAmountFromStorage_DrainsManyBatchesInExpiryOrder() {
+    for (int i = 100; i > 0; i--) {
+      foodStorage.registerToStorage(new Grocery("Milk", 10.0, 1.0, "l", LocalDate.now().plusDays(i)));
+    }
+
+    foodStorage.removeAmountFromStorage("milk", 60.5, "l");
+
+    List<Grocery> groceries = foodStorage.findGroceriesByName("milk");
+    assertEquals(40, groceries.size());
+    assertEquals(0.5, groceries.getFirst().getAmount());
+    assertEquals(LocalDate.now().plusDays(61), groceries.getFirst().getExpiryDate());
+  }
+
+  @Test
+  void removingAmountInSmallSteps_LeavesNoRoundingRest() {
+    foodStorage.registerToStorage(new Grocery("Milk", 35.0, 1.0, "l", LocalDate.now().plusDays(1)));
+    foodStorage.registerToStorage(new Grocery("Milk", 35.0, 0.3, "l", LocalDate.now().plusDays(2)));
+
+    for (int i = 0; i < 12; i++) {
+      foodStorage.removeAmountFromStorage("milk", 1.0, "dl");
+    }
+    assertEquals(0.1, foodStorage.findGroceriesByName("milk").getFirst().getAmount());
+    assertEquals(100, foodStorage.findGroceriesByName("milk").getFirst().getScaledAmount());
+
+    foodStorage.removeAmountFromStorage("milk", 100.0, "ml");
+    assertTrue(foodStorage.findGroceriesByName("milk").isEmpty());
+  }
+
   @Test
   void sortingGroceriesInAlphabeticalOrder() {
     // Setup test data
@@ -125,6 +181,19 @@ public class FoodStorageTest {
   }
 
 
+  @Test
+  void sortedGroceriesIsReadOnlyLiveView() {
+    Map<String, List<Grocery>> sortedGroceries = foodStorage.sortGroceries();
+
+    foodStorage.registerToStorage(new Grocery("Carrot", 10.0, 2.0, "kg", LocalDate.now()));
+    foodStorage.registerToStorage(new Grocery("Apple", 15.0, 3.0, "kg", LocalDate.now()));
+
+    assertEquals(List.of("apple", "carrot"), new ArrayList<>(sortedGroceries.keySet()));
+    assertThrows(UnsupportedOperationException.class, () -> sortedGroceries.remove("apple"));
+    assertThrows(UnsupportedOperationException.class,
+        () -> sortedGroceries.get("apple").add(new Grocery("Apple", 1.0, 1.0, "kg", LocalDate.now())));
+  }
+
   @Test
   void sortingGroceriesInEmptyStorage() {
     Map<String, List<Grocery>> sortedGroceries = foodStorage.sortGroceries();
@@ -186,6 +255,35 @@ public class FoodStorageTest {
     assertEquals(bestBeforeGroceries, foodStorage.bestBefore(LocalDate.now().plusDays(3)));
   }
 
+  @Test
+  void testBestBeforeIgnoresRemovedBatches() {
+    Grocery grocery1 = new Grocery("Milk", 35.0, 5.0, "l", LocalDate.now());
+    Grocery grocery2 = new Grocery("Milk", 35.0, 5.0, "l", LocalDate.now().plusDays(1));
+    Grocery grocery3 = new Grocery("Cheese", 35.0, 2.0, "kg", LocalDate.now().plusDays(1));
+
+    foodStorage.registerToStorage(grocery1);
+    foodStorage.registerToStorage(grocery2);
+    foodStorage.registerToStorage(grocery3);
+    foodStorage.removeAmountFromStorage("milk", 5.0, "l");
+
+    assertEquals(List.of(grocery3, grocery2), foodStorage.bestBefore(LocalDate.now().plusDays(3)));
+  }
+
+  @Test
+  void testGroceriesExpiringBetween() {
+    Grocery grocery1 = new Grocery("Milk", 35.0, 5.0, "l", LocalDate.now());
+    Grocery grocery2 = new Grocery("Cheese", 35.0, 2.0, "kg", LocalDate.now().plusDays(2));
+    Grocery grocery3 = new Grocery("Meat", 35.0, 2.0, "kg", LocalDate.now().plusDays(4));
+
+    foodStorage.registerToStorage(grocery1);
+    foodStorage.registerToStorage(grocery2);
+    foodStorage.registerToStorage(grocery3);
+
+    assertEquals(List.of(grocery2, grocery3),
+        foodStorage.groceriesExpiringBetween(LocalDate.now().plusDays(1), LocalDate.now().plusDays(5)));
+    assertTrue(foodStorage.groceriesExpiringBetween(LocalDate.now().plusDays(5), LocalDate.now()).isEmpty());
+  }
+
   @Test
   void TotalValueOfGroceriesInStorage() {
     Grocery grocery1 = new Grocery("Milk", 35.0, 5.0, "l", LocalDate.now());
@@ -199,6 +297,62 @@ public class FoodStorageTest {
     assertEquals(105.0, foodStorage.totalValueOfGroceries());
   }
 
+  @Test
+  void TotalValueOfGroceriesAfterRemoval() {
+    Grocery grocery1 = new Grocery("Milk", 30.0, 4.0, "l", LocalDate.now());
+    Grocery grocery2 = new Grocery("Milk", 20.0, 2.0, "l", LocalDate.now().plusDays(2));
+    Grocery grocery3 = new Grocery("Meat", 35.0, 2.0, "kg", LocalDate.now().plusDays(4));
+
+    foodStorage.registerToStorage(grocery1);
+    foodStorage.registerToStorage(grocery2);
+    foodStorage.registerToStorage(grocery3);
+    foodStorage.removeAmountFromStorage("milk", 5.0, "l");
+
+    assertEquals(55.0, foodStorage.totalValueOfGroceries());
+    assertEquals(45.0, foodStorage.totalValueOfGroceries(ValuationMode.REMAINING_FRACTION));
+    assertEquals(20.0, foodStorage.totalValueOfGrocery("Milk", ValuationMode.FULL_PRICE));
+    assertEquals(10.0, foodStorage.totalValueOfGrocery("Milk", ValuationMode.REMAINING_FRACTION));
+
+    foodStorage.removeAmountFromStorage("milk", 1.0, "l");
+    assertEquals(35.0, foodStorage.totalValueOfGroceries());
+    assertEquals(0.0, foodStorage.totalValueOfGrocery("Milk", ValuationMode.FULL_PRICE));
+  }
+
+  @Test
+  void TotalValueOfGroceriesCountsMergedBatches() {
+    foodStorage.registerToStorage(new Grocery("Milk", 20.0, 1.0, "l", LocalDate.now().plusDays(2)));
+    foodStorage.registerToStorage(new Grocery("Milk", 20.0, 1.0, "l", LocalDate.now().plusDays(2)));
+
+    assertEquals(1, foodStorage.findGroceriesByName("milk").size());
+    assertEquals(40.0, foodStorage.totalValueOfGroceries());
+
+    foodStorage.removeAmountFromStorage("milk", 1.5, "l");
+    foodStorage.registerToStorage(new Grocery("Milk", 20.0, 1.0, "l", LocalDate.now().plusDays(2)));
+
+    assertEquals(60.0, foodStorage.totalValueOfGroceries());
+    assertEquals(30.0, foodStorage.totalValueOfGroceries(ValuationMode.REMAINING_FRACTION));
+
+    foodStorage.registerAll(List.of(new Grocery("Milk", 20.0, 1.0, "l", LocalDate.now().plusDays(2))));
+    assertEquals(80.0, foodStorage.totalValueOfGrocery("milk", ValuationMode.FULL_PRICE));
+  }
+
+  @Test
+  void TotalValueOfGroceriesIsExactAfterEmptying() {
+    foodStorage.registerToStorage(new Grocery("Salt", 0.1, 1.0, "kg", LocalDate.now().plusDays(1)));
+    foodStorage.registerToStorage(new Grocery("Sugar", 0.2, 1.0, "kg", LocalDate.now().plusDays(1)));
+    foodStorage.registerToStorage(new Grocery("Gold", 1e9, 1.0, "kg", LocalDate.now().plusDays(1)));
+
+    foodStorage.removeAmountFromStorage("gold", 1.0, "kg");
+    assertEquals(0.3, foodStorage.totalValueOfGroceries());
+    assertEquals(0.3, foodStorage.totalValueOfGroceries(ValuationMode.REMAINING_FRACTION));
+
+    foodStorage.removeAmountFromStorage("salt", 0.3, "kg");
+    foodStorage.removeAmountFromStorage("salt", 0.7, "kg");
+    foodStorage.removeAmountFromStorage("sugar", 1.0, "kg");
+    assertEquals(0.0, foodStorage.totalValueOfGroceries());
+    assertEquals(0.0, foodStorage.totalValueOfGroceries(ValuationMode.REMAINING_FRACTION));
+  }
+
   @Test
   void TotalValueOfExpiredGroceriesInStorage() {
     Grocery grocery1 = new Grocery("Milk", 35.0, 5.0, "l", LocalDate.now().minusDays(2));
@@ -237,6 +391,90 @@ public class FoodStorageTest {
     assertEquals(1, expiredGroceries.get("cheese").size(), "There should be 1 expired Cheese item");
   }
 
+  @Test
+  void movingExpiredGroceriesRepeatedly_MovesEachBatchOnce() {
+    foodStorage.registerToStorage(new Grocery("Milk", 35.0, 5.0, "l", LocalDate.now().minusDays(1)));
+    foodStorage.registerToStorage(new Grocery("Milk", 35.0, 5.0, "l", LocalDate.now().plusDays(1)));
+    foodStorage.registerToStorage(new Grocery("Cheese", 50.0, 2.0, "kg", LocalDate.now().minusDays(2)));
+
+    assertEquals(2, foodStorage.moveExpiredGroceries());
+    foodStorage.filterAndGroupExpiredGroceries();
+    foodStorage.removeExpiredGroceries();
+    Map<String, List<Grocery>> expiredGroceries = foodStorage.filterAndGroupExpiredGroceries();
+
+    assertEquals(0, foodStorage.moveExpiredGroceries());
+    assertEquals(1, expiredGroceries.get("milk").size());
+    assertEquals(1, expiredGroceries.get("cheese").size());
+    assertEquals(85.0, foodStorage.totalValueOfExpiredGroceries());
+    assertEquals(35.0, foodStorage.totalValueOfGroceries());
+    assertEquals(1, foodStorage.findGroceriesByName("milk").size());
+    assertThrows(UnsupportedOperationException.class, () -> expiredGroceries.remove("milk"));
+  }
+
+  @Test
+  void startingExpirySweeper_MovesExpiredGroceriesRightAway() {
+    foodStorage.registerToStorage(new Grocery("Milk", 35.0, 5.0, "l", LocalDate.now().minusDays(1)));
+    foodStorage.registerToStorage(new Grocery("Bread", 20.0, 1.0, "stk", LocalDate.now().plusDays(3)));
+
+    foodStorage.startExpirySweeper();
+    foodStorage.startExpirySweeper();
+    try {
+      assertTrue(foodStorage.findGroceriesByName("milk").isEmpty());
+      assertEquals(1, foodStorage.findInStorage("milk", true).size());
+      assertEquals(1, foodStorage.findGroceriesByName("bread").size());
+    } finally {
+      foodStorage.stopExpirySweeper();
+    }
+  }
+
+  @Test
+  void storageWithClockInTheFuture_TreatsGroceriesAsExpired() {
+    ZoneId zone = ZoneId.systemDefault();
+    DayClock inTenDays = new DayClock(Clock.fixed(
+        LocalDate.now().plusDays(10).atStartOfDay(zone).toInstant(), zone));
+    FoodStorage futureStorage = new FoodStorage(inTenDays);
+    futureStorage.registerToStorage(new Grocery("Milk", 35.0, 5.0, "l", LocalDate.now().plusDays(9)));
+    futureStorage.registerToStorage(new Grocery("Bread", 20.0, 1.0, "stk", LocalDate.now().plusDays(10)));
+
+    assertTrue(futureStorage.findInStorage("milk", false).isEmpty());
+    assertEquals(1, futureStorage.moveExpiredGroceries());
+    assertEquals(1, futureStorage.findInStorage("milk", true).size());
+    assertEquals(1, futureStorage.findInStorage("bread", false).size());
+    assertThrows(IllegalArgumentException.class, () -> new FoodStorage(null));
+  }
+
+  @Test
+  void suggestGroceryNames_FindsMisspelledAndPartialNames() {
+    foodStorage.registerToStorage(new Grocery("Chicken", 80.0, 500.0, "g", LocalDate.now().plusDays(3)));
+    foodStorage.registerToStorage(new Grocery("Chickpeas", 15.0, 400.0, "g", LocalDate.now().plusDays(90)));
+    foodStorage.registerToStorage(new Grocery("Cheese", 60.0, 300.0, "g", LocalDate.now().plusDays(20)));
+
+    assertTrue(foodStorage.findInStorage("chiken", false).isEmpty());
+    assertEquals(List.of("chicken"), foodStorage.suggestGroceryNames("chiken", 5, false));
+    assertEquals(List.of("chicken", "chickpeas"), foodStorage.completeGroceryName("CHICK", 5, false));
+    assertEquals(List.of("chicken"), foodStorage.completeGroceryName("chick", 1, false));
+    assertTrue(foodStorage.suggestGroceryNames("chiken", 5, true).isEmpty());
+  }
+
+  @Test
+  void groceryNameIndex_FollowsItemsLeavingAndExpiring() {
+    ZoneId zone = ZoneId.systemDefault();
+    DayClock inTenDays = new DayClock(Clock.fixed(
+        LocalDate.now().plusDays(10).atStartOfDay(zone).toInstant(), zone));
+    FoodStorage futureStorage = new FoodStorage(inTenDays);
+    futureStorage.registerToStorage(new Grocery("Milk", 35.0, 5.0, "l", LocalDate.now().plusDays(9)));
+    futureStorage.registerToStorage(new Grocery("Bread", 20.0, 1.0, "stk", LocalDate.now().plusDays(20)));
+    futureStorage.registerAll(List.of(
+        new Grocery("Butter", 40.0, 250.0, "g", LocalDate.now().plusDays(30))));
+
+    futureStorage.moveExpiredGroceries();
+    futureStorage.removeAmountFromStorage("Bread", 1.0, "stk");
+
+    assertEquals(List.of("butter"), futureStorage.completeGroceryName("b", 5, false));
+    assertTrue(futureStorage.suggestGroceryNames("mlk", 5, false).isEmpty());
+    assertEquals(List.of("milk"), futureStorage.suggestGroceryNames("mlk", 5, true));
+  }
+
   @Test //UNFINISHED, REMEMBER TO FINISH TOMORROW!!!!!!!!!!!!!!!!!!!
   void TestingRemovalOfExpiredGroceries () {
     // Arrange
@@ -262,6 +500,211 @@ public class FoodStorageTest {
 
 
 
+  @Test
+  void registerAll_MatchesRegisteringOneByOne() {
+    FoodStorage oneByOne = new FoodStorage();
+    List<Grocery> groceries = new ArrayList<>();
+    for (int i = 0; i < 40; i++) {
+      groceries.add(new Grocery(i % 2 == 0 ? "Milk" : "Cheese", 10.0 + i, 1.0,
+          i % 3 == 0 ? "l" : "kg", LocalDate.now().plusDays(20 - i % 7)));
+    }
+    foodStorage.registerToStorage(new Grocery("Milk", 30.0, 2.0, "l", LocalDate.now().plusDays(20)));
+    oneByOne.registerToStorage(new Grocery("Milk", 30.0, 2.0, "l", LocalDate.now().plusDays(20)));
+
+    for (Grocery grocery : groceries) {
+      oneByOne.registerToStorage(new Grocery(grocery.getName(), grocery.getPrice(),
+          grocery.getAmount(), grocery.getUnit(), grocery.getExpiryDate()));
+    }
+    foodStorage.registerAll(groceries);
+
+    for (String name : List.of("milk", "cheese")) {
+      assertEquals(oneByOne.findGroceriesByName(name).toString(),
+          foodStorage.findGroceriesByName(name).toString());
+    }
+    assertEquals(oneByOne.totalValueOfGroceries(), foodStorage.totalValueOfGroceries(), 1e-6);
+    assertEquals(oneByOne.bestBefore(LocalDate.now().plusDays(30)).toString(),
+        foodStorage.bestBefore(LocalDate.now().plusDays(30)).toString());
+  }
+
+  @Test
+  public void testRegisterAllNullGroceries() {
+    assertThrows(IllegalArgumentException.class, () -> foodStorage.registerAll(null));
+    assertThrows(IllegalArgumentException.class,
+        () -> foodStorage.registerAll(Arrays.asList((Grocery) null)));
+  }
+
+  @Test
+  void cookRecipe_ConsumesAllIngredientsForServings() {
+    foodStorage.registerToStorage(new Grocery("Pasta", 20.0, 500.0, "g", LocalDate.now().plusDays(3)));
+    foodStorage.registerToStorage(new Grocery("Pasta", 20.0, 500.0, "g", LocalDate.now().plusDays(9)));
+    foodStorage.registerToStorage(new Grocery("Milk", 30.0, 1.0, "l", LocalDate.now().plusDays(2)));
+    Recipe recipe = new Recipe("Pasta", "Pasta with milk", "Boil",
+        Map.of("Pasta", new IngredientDetail(300.0, "g"), "Milk", new IngredientDetail(5.0, "dl")));
+
+    foodStorage.cookRecipe(recipe, 2);
+
+    List<Grocery> pasta = foodStorage.findGroceriesByName("pasta");
+    assertEquals(1, pasta.size());
+    assertEquals(400.0, pasta.getFirst().getAmount(), 1e-9);
+    assertEquals(LocalDate.now().plusDays(9), pasta.getFirst().getExpiryDate());
+    assertTrue(foodStorage.findGroceriesByName("milk").isEmpty());
+    assertEquals(16.0, foodStorage.totalValueOfGroceries(ValuationMode.REMAINING_FRACTION), 1e-9);
+  }
+
+  @Test
+  void removingAmountFromStorage_ConvertsBatchesInOtherUnits() {
+    foodStorage.registerToStorage(new Grocery("Flour", 10.0, 500.0, "g", LocalDate.now().plusDays(1)));
+    foodStorage.registerToStorage(new Grocery("Flour", 20.0, 1.0, "l", LocalDate.now().plusDays(2)));
+
+    foodStorage.removeAmountFromStorage("flour", 500.5, "g");
+
+    List<Grocery> flour = foodStorage.findGroceriesByName("flour");
+    assertEquals(1, flour.size());
+    assertEquals("l", flour.getFirst().getUnit());
+    assertEquals(0.999, flour.getFirst().getAmount(), 1e-9);
+
+    assertThrows(IllegalArgumentException.class,
+        () -> foodStorage.removeAmountFromStorage("flour", 600.0, "g"));
+    foodStorage.removeAmountFromStorage("flour", 500.0, "g");
+    assertEquals(0.056, foodStorage.findGroceriesByName("flour").getFirst().getAmount(), 1e-9);
+  }
+
+  @Test
+  void cookRecipe_ConsumesIngredientsStoredInOtherUnits() {
+    foodStorage.registerToStorage(new Grocery("Flour", 10.0, 500.0, "g", LocalDate.now().plusDays(1)));
+    foodStorage.registerToStorage(new Grocery("Flour", 20.0, 1.0, "l", LocalDate.now().plusDays(2)));
+    Recipe bread = new Recipe("Bread", "Plain bread", "Bake",
+        Map.of("Flour", new IngredientDetail(900.0, "g")));
+
+    foodStorage.cookRecipe(bread, 1);
+
+    List<Grocery> flour = foodStorage.findGroceriesByName("flour");
+    assertEquals(1, flour.size());
+    assertEquals(0.245, flour.getFirst().getAmount(), 1e-9);
+    assertThrows(IllegalArgumentException.class, () -> foodStorage.cookRecipe(bread, 1));
+    assertEquals(0.245, foodStorage.findGroceriesByName("flour").getFirst().getAmount(), 1e-9);
+  }
+
+  @Test
+  void cookRecipe_LeavesStorageUnchangedWhenAnIngredientIsShort() {
+    foodStorage.registerToStorage(new Grocery("Pasta", 20.0, 500.0, "g", LocalDate.now().plusDays(3)));
+    foodStorage.registerToStorage(new Grocery("Milk", 30.0, 1.0, "l", LocalDate.now().plusDays(2)));
+    Recipe tooMuchMilk = new Recipe("Pasta", "Pasta with milk", "Boil",
+        Map.of("Pasta", new IngredientDetail(300.0, "g"), "Milk", new IngredientDetail(6.0, "dl")));
+    Recipe noEggs = new Recipe("Omelette", "Eggs", "Fry",
+        Map.of("Pasta", new IngredientDetail(300.0, "g"), "Egg", new IngredientDetail(2.0, "stk")));
+
+    assertThrows(IllegalArgumentException.class, () -> foodStorage.cookRecipe(tooMuchMilk, 2));
+    assertThrows(IllegalArgumentException.class, () -> foodStorage.cookRecipe(noEggs, 1));
+    assertThrows(IllegalArgumentException.class, () -> foodStorage.cookRecipe(tooMuchMilk, 0));
+
+    assertEquals(500.0, foodStorage.findGroceriesByName("pasta").getFirst().getAmount(), 1e-9);
+    assertEquals(1.0, foodStorage.findGroceriesByName("milk").getFirst().getAmount(), 1e-9);
+    assertEquals(50.0, foodStorage.totalValueOfGroceries(ValuationMode.REMAINING_FRACTION), 1e-9);
+  }
+
+  @Test
+  void concurrentCooking_NeverOverdrawsSharedIngredients() throws Exception {
+    foodStorage.registerToStorage(new Grocery("Flour", 10.0, 1000.0, "g", LocalDate.now().plusDays(5)));
+    foodStorage.registerToStorage(new Grocery("Egg", 10.0, 100.0, "stk", LocalDate.now().plusDays(5)));
+    foodStorage.registerToStorage(new Grocery("Milk", 10.0, 100.0, "l", LocalDate.now().plusDays(5)));
+    Recipe bread = new Recipe("Bread", "Bread", "Bake",
+        Map.of("Flour", new IngredientDetail(10.0, "g"), "Egg", new IngredientDetail(1.0, "stk")));
+    Recipe pancakes = new Recipe("Pancakes", "Pancakes", "Fry",
+        Map.of("Milk", new IngredientDetail(1.0, "l"), "Egg", new IngredientDetail(1.0, "stk"),
+            "Flour", new IngredientDetail(10.0, "g")));
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    List<Future<Integer>> results = new ArrayList<>();
+
+    for (int t = 0; t < 4; t++) {
+      Recipe recipe = t % 2 == 0 ? bread : pancakes;
+      results.add(executor.submit(() -> {
+        int cooked = 0;
+        for (int i = 0; i < 50; i++) {
+          try {
+            foodStorage.cookRecipe(recipe, 1);
+            cooked++;
+          } catch (IllegalArgumentException e) {
+            // Ran out of an ingredient
+          }
+        }
+        return cooked;
+      }));
+    }
+    int cooked = 0;
+    for (Future<Integer> result : results) {
+      cooked += result.get();
+    }
+    executor.shutdown();
+
+    assertEquals(100, cooked);
+    assertTrue(foodStorage.findGroceriesByName("egg").isEmpty());
+    assertTrue(foodStorage.findGroceriesByName("flour").isEmpty());
+  }
+
+  @Test
+  void concurrentRegisterAndRemove_KeepsAmountsAndTotalsConsistent() throws Exception {
+    int threads = 8;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    List<Future<?>> results = new ArrayList<>();
+
+    for (int t = 0; t < threads; t++) {
+      String name = "item" + t;
+      results.add(executor.submit(() -> {
+        for (int i = 0; i < 500; i++) {
+          foodStorage.registerToStorage(new Grocery(name, 10.0, 2.0, "kg", LocalDate.now().plusDays(i % 50 + 1)));
+          foodStorage.registerToStorage(new Grocery("Shared", 10.0, 1.0, "kg", LocalDate.now().plusDays(i + 1)));
+          foodStorage.removeAmountFromStorage(name, 1.0, "kg");
+        }
+      }));
+    }
+    for (Future<?> result : results) {
+      result.get();
+    }
+    executor.shutdown();
+
+    double expectedTotal = 0;
+    for (int t = 0; t < threads; t++) {
+      List<Grocery> groceries = foodStorage.findGroceriesByName("item" + t);
+      assertEquals(500000.0, groceries.stream().mapToDouble(Grocery::getAmount).sum(), 1e-6);
+      expectedTotal += foodStorage.totalValueOfGrocery("item" + t, ValuationMode.FULL_PRICE);
+    }
+
+    assertEquals(500, foodStorage.findGroceriesByName("Shared").size());
+    assertEquals(4000000.0, foodStorage.findGroceriesByName("Shared").stream().mapToDouble(Grocery::getAmount).sum(), 1e-6);
+    assertEquals(40000.0, foodStorage.totalValueOfGrocery("Shared", ValuationMode.FULL_PRICE), 1e-6);
+    assertEquals(expectedTotal + 40000.0, foodStorage.totalValueOfGroceries(), 1e-6);
+  }
+
+  @Test
+  void readsDuringConcurrentWrites_SeeConsistentBatches() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    Future<?> writer = executor.submit(() -> {
+      for (int i = 2000; i > 0; i--) {
+        foodStorage.registerToStorage(new Grocery("Milk", 10.0, 1.0, "l", LocalDate.now().plusDays(i)));
+        if (i % 3 == 0) {
+          foodStorage.removeAmountFromStorage("milk", 1.0, "l");
+        }
+      }
+    });
+    Future<?> reader = executor.submit(() -> {
+      while (!writer.isDone()) {
+        List<Grocery> groceries = foodStorage.findGroceriesByName("milk");
+        for (int i = 1; i < groceries.size(); i++) {
+          assertTrue(groceries.get(i - 1).getExpiryDate().isBefore(groceries.get(i).getExpiryDate()),
+              "Batches should always be read in expiry order");
+        }
+        assertEquals(0.0, foodStorage.totalValueOfGroceries() % 10.0, 1e-6,
+            "The total should never include a half-updated batch");
+      }
+    });
+
+    writer.get();
+    reader.get();
+    executor.shutdown();
+  }
+
   //NEGATIVE-TESTS----------------------------------------------------------------------------
   @Test
   void testIfRemovalAmountExceedsTotalAmount() {
@@ -3,7 +3,11 @@ package edu.ntnu.idi.idatt;
 import static org.junit.jupiter.api.Assertions.*;
 
 import edu.ntnu.idi.idatt.model.Grocery;
+import edu.ntnu.idi.idatt.utils.DayClock;
+import edu.ntnu.idi.idatt.utils.Unit;
+import java.time.Clock;
 import java.time.LocalDate;
+import java.time.ZoneId;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
@@ -35,6 +39,19 @@ class GroceryTest {
     assertFalse(milk.isExpired());
   }
 
+  @Test
+  void testingIsExpiredWithClock() {
+    ZoneId zone = ZoneId.of("Europe/Oslo");
+    DayClock onExpiryDate = new DayClock(Clock.fixed(
+        expiryDate.atTime(23, 59).atZone(zone).toInstant(), zone));
+    DayClock dayAfter = new DayClock(Clock.fixed(
+        expiryDate.plusDays(1).atStartOfDay(zone).toInstant(), zone));
+
+    assertFalse(milk.isExpired(onExpiryDate));
+    assertTrue(milk.isExpired(dayAfter));
+    assertEquals(expiryDate.plusDays(1), dayAfter.todayDate());
+  }
+
   @Test
   void testingIncreaseAmount() {
     cheese.increaseAmount(2.0);
@@ -47,6 +64,30 @@ class GroceryTest {
     assertEquals("ost, 40.0kr, 8.0 g, 31-12-2024", cheese.toString());
   }
 
+  @Test
+  void testingScaledAmountAndUnit() {
+    Grocery juice = new Grocery("Juice", 30.0, 3.0, "dl", expiryDate);
+    juice.decreaseAmount(0.1);
+    juice.decreaseAmount(0.1);
+
+    assertEquals(100, juice.getScaledAmount());
+    assertEquals(0.1, juice.getAmount());
+    assertEquals(Unit.LITRE, juice.getStandardUnit());
+    assertEquals("l", juice.getUnit());
+    assertThrows(IllegalArgumentException.class,
+        () -> new Grocery("Juice", 30.0, 0.0001, "ml", expiryDate));
+  }
+
+  @Test
+  void testingRemainingValue() {
+    cheese.decreaseAmount(2.5);
+    assertEquals(30.0, cheese.getRemainingValue());
+
+    cheese.increaseAmount(2.5);
+    assertEquals(10.0, cheese.getAmount());
+    assertEquals(12.5, cheese.getInitialAmount());
+  }
+
   @Test
   void testingUnitConversion() {
     // For liquid units (l)
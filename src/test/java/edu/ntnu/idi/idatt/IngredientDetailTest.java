@@ -1,6 +1,8 @@
 package edu.ntnu.idi.idatt;
 
 import edu.ntnu.idi.idatt.model.IngredientDetail;
+import edu.ntnu.idi.idatt.utils.Unit;
+import edu.ntnu.idi.idatt.utils.UnitConverter;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
@@ -39,6 +41,17 @@ public class IngredientDetailTest {
     assertEquals("g", ingredient.getUnit(), "The unit should be standardized to 'g'.");
   }
 
+  @Test
+  void testSetAmountAndUnitImperialUnits() {
+    ingredient.setAmountAndUnit(2, "lb");
+    assertEquals(907.185, ingredient.getAmount(), "2 lb should be converted to grams.");
+    assertEquals("g", ingredient.getUnit());
+
+    ingredient.setAmountAndUnit(3, "TSP");
+    assertEquals(0.015, ingredient.getAmount(), "3 tsp should be converted to liters.");
+    assertEquals("l", ingredient.getUnit());
+  }
+
   @Test
   void testSetAmountAndUnitInvalidUnit() {
     assertThrows(IllegalArgumentException.class, () -> ingredient.setAmountAndUnit(500, "invalidUnit"),
@@ -56,5 +69,20 @@ public class IngredientDetailTest {
     assertEquals("2000.00 g", ingredient.toString(),
         "toString() should return the formatted amount and unit.");
   }
-}
 
+  @Test
+  void testRegisterUnit() {
+    assertThrows(IllegalArgumentException.class, () -> new IngredientDetail(2, "pinch"),
+        "A unit should be unknown before it is registered.");
+
+    UnitConverter.registerUnit("pinch", Unit.GRAM, 0.36);
+    ingredient.setAmountAndUnit(2, "Pinch");
+    assertEquals(0.72, ingredient.getAmount(), 1e-9, "2 pinches should be converted to grams.");
+    assertEquals("g", ingredient.getUnit());
+
+    assertThrows(IllegalArgumentException.class,
+        () -> UnitConverter.registerUnit("kg", Unit.GRAM, 1),
+        "An existing unit should not be redefined.");
+    assertEquals(500, new IngredientDetail(0.5, "kg").getAmount());
+  }
+}
@@ -0,0 +1,166 @@
+package edu.ntnu.idi.idatt;
+
+import edu.ntnu.idi.idatt.model.FoodStorage;
+import edu.ntnu.idi.idatt.model.Grocery;
+import edu.ntnu.idi.idatt.model.IngredientDetail;
+import edu.ntnu.idi.idatt.model.MealPlan;
+import edu.ntnu.idi.idatt.model.MealPlanner;
+import edu.ntnu.idi.idatt.model.Recipe;
+import edu.ntnu.idi.idatt.model.RecipeBook;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MealPlannerTest {
+
+  private FoodStorage storage;
+  private RecipeBook recipeBook;
+  private Recipe pancakes;
+  private Recipe bread;
+
+  @BeforeEach
+  void setUp() {
+    storage = new FoodStorage();
+    storage.registerToStorage(new Grocery("Milk", 30.0, 2.0, "l", LocalDate.now().plusDays(1)));
+    storage.registerToStorage(new Grocery("Flour", 20.0, 2.0, "kg", LocalDate.now().plusDays(100)));
+
+    pancakes = new Recipe("Pancakes", "Thin pancakes", "Whisk and fry",
+        Map.of("Milk", new IngredientDetail(0.5, "l"),
+            "Flour", new IngredientDetail(200.0, "g")));
+    bread = new Recipe("Bread", "White bread", "Knead and bake",
+        Map.of("Flour", new IngredientDetail(500.0, "g")));
+
+    recipeBook = new RecipeBook();
+    recipeBook.addRecipe(bread);
+    recipeBook.addRecipe(pancakes);
+  }
+
+  @Test
+  void testPlanUsesGroceriesExpiringInThePeriod() {
+    MealPlan plan = recipeBook.planMeals(storage, 3);
+
+    // The milk can be used today and tomorrow, and the flour does not expire in the period
+    assertEquals(Arrays.asList(pancakes, pancakes, null), plan.getMeals());
+    assertEquals(LocalDate.now(), plan.getFirstDay());
+    assertEquals(15.0, plan.getRescuedValue(), 1e-9);
+    assertEquals(30.0, plan.getAtRiskValue(), 1e-9);
+  }
+
+  @Test
+  void testGroceriesExpiringAfterThePeriodAreNotAtRisk() {
+    MealPlan plan = recipeBook.planMeals(storage, 1);
+
+    assertEquals(1, plan.getDays());
+    assertNull(plan.getMeal(0));
+    assertEquals(0.0, plan.getAtRiskValue(), 1e-9);
+  }
+
+  @Test
+  void testGroceriesNoRecipeUsesAreAtRisk() {
+    storage.registerToStorage(new Grocery("Lettuce", 25.0, 1.0, "stk", LocalDate.now().plusDays(2)));
+
+    MealPlan plan = recipeBook.planMeals(storage, 3);
+
+    assertEquals(15.0, plan.getRescuedValue(), 1e-9);
+    assertEquals(55.0, plan.getAtRiskValue(), 1e-9);
+  }
+
+  @Test
+  void testPlanOnlyUsesWhatIsInStorage() {
+    storage.registerToStorage(new Grocery("Chicken", 60.0, 400.0, "g", LocalDate.now().plusDays(2)));
+    Recipe chicken = new Recipe("Chicken", "Roast chicken", "Roast",
+        Map.of("Chicken", new IngredientDetail(300.0, "g")));
+
+    MealPlan plan = MealPlanner.plan(storage, List.of(chicken), 3, Duration.ofMillis(100));
+
+    assertEquals(1, plan.getMeals().stream().filter(chicken::equals).count());
+    assertEquals(45.0, plan.getRescuedValue(), 1e-9);
+  }
+
+  @Test
+  void testEarliestExpiringBatchIsUsedFirst() {
+    storage.registerToStorage(new Grocery("Cream", 10.0, 1.0, "dl", LocalDate.now().plusDays(30)));
+    storage.registerToStorage(new Grocery("Cream", 10.0, 1.0, "dl", LocalDate.now().plusDays(1)));
+    Recipe sauce = new Recipe("Sauce", "Cream sauce", "Simmer",
+        Map.of("Cream", new IngredientDetail(1.0, "dl")));
+
+    MealPlan plan = MealPlanner.plan(storage, List.of(sauce), 5, Duration.ofMillis(100));
+
+    // The second serving would only use the cream that does not expire in the period
+    assertEquals(1, plan.getMeals().stream().filter(sauce::equals).count());
+    assertEquals(10.0, plan.getRescuedValue(), 1e-9);
+    assertEquals(40.0, plan.getAtRiskValue(), 1e-9);
+  }
+
+  @Test
+  void testPlanningDoesNotChangeTheStorage() {
+    recipeBook.planMeals(storage, 3);
+
+    assertEquals(2.0, storage.findGroceriesByName("Milk").getFirst().getAmount(), 1e-9);
+    assertEquals(2000.0, storage.findGroceriesByName("Flour").getFirst().getAmount(), 1e-9);
+  }
+
+  @Test
+  void testLargePlanFinishesWithinTimeBudget() {
+    List<Recipe> recipes = fillLargeStorage();
+
+    long start = System.nanoTime();
+    MealPlan plan = MealPlanner.plan(storage, recipes, 14, Duration.ofMillis(100));
+    long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+    assertTrue(elapsedMillis < 1000, "Planning took " + elapsedMillis + " ms");
+    assertEquals(14, plan.getDays());
+    assertTrue(plan.getRescuedValue() <= plan.getAtRiskValue());
+  }
+
+  @Test
+  void testLargePlanUsesGroceriesAtRisk() {
+    List<Recipe> recipes = fillLargeStorage();
+
+    // The search stops by itself long before this budget is spent
+    MealPlan plan = MealPlanner.plan(storage, recipes, 14, Duration.ofSeconds(30));
+
+    assertTrue(plan.getRescuedValue() > 0);
+    assertTrue(plan.getMeals().stream().allMatch(meal -> meal == null || recipes.contains(meal)));
+  }
+
+  /**
+   * Adds 2000 batches of 200 groceries to the storage, expiring over the next 20 days,
+   * and makes 10 000 recipes using two of them each.
+   */
+  private List<Recipe> fillLargeStorage() {
+    List<Grocery> groceries = new ArrayList<>();
+    for (int i = 0; i < 2000; i++) {
+      groceries.add(new Grocery("Grocery " + i % 200, 10.0 + i % 7, 1.0, "kg",
+          LocalDate.now().plusDays(i % 20)));
+    }
+    storage.registerAll(groceries);
+
+    List<Recipe> recipes = new ArrayList<>();
+    for (int i = 0; i < 10_000; i++) {
+      recipes.add(new Recipe("Recipe " + i, "Test recipe", "Mix",
+          Map.of("Grocery " + i % 200, new IngredientDetail(100.0 + i % 5 * 100, "g"),
+              "Grocery " + (i * 7 + 3) % 200, new IngredientDetail(250.0, "g"))));
+    }
+    return recipes;
+  }
+
+  @Test
+  void testInvalidArgumentsThrowException() {
+    List<Recipe> recipes = List.of(pancakes);
+
+    assertThrows(IllegalArgumentException.class, () -> MealPlanner.plan(null, recipes, 3, Duration.ZERO));
+    assertThrows(IllegalArgumentException.class, () -> MealPlanner.plan(storage, null, 3, Duration.ZERO));
+    assertThrows(IllegalArgumentException.class, () -> MealPlanner.plan(storage, recipes, 0, Duration.ZERO));
+    assertThrows(IllegalArgumentException.class, () -> MealPlanner.plan(storage, recipes, 3, null));
+    assertThrows(IllegalArgumentException.class,
+        () -> MealPlanner.plan(storage, recipes, 3, Duration.ofMillis(-1)));
+  }
+}
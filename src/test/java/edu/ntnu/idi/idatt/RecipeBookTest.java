@@ -125,6 +125,247 @@ class RecipeBookTest {
     List<Recipe> availableRecipes = recipeBook.getAvailableRecipes(storage);
     assertTrue(availableRecipes.isEmpty());
   }
-}
 
+  @Test
+  void testAvailableRecipesFollowStorageChanges() {
+    Recipe recipe = new Recipe("Spaghetti Bolognese", "A classic Italian dish",
+        "Cook pasta, prepare sauce, mix and serve.",
+        Map.of(
+            "Spaghetti", new IngredientDetail(200.0, "g"),
+            "Ground Beef", new IngredientDetail(300.0, "g"),
+            "Tomato Sauce", new IngredientDetail(150.0, "ml")
+        ));
+
+    recipeBook.addRecipe(recipe);
+    assertEquals(1, recipeBook.getAvailableRecipes(storage).size());
+
+    storage.removeAmountFromStorage("Ground Beef", 100.0, "g");
+    assertTrue(recipeBook.getAvailableRecipes(storage).isEmpty());
+
+    storage.registerToStorage(new Grocery("ground beef", 50.0, 0.1, "kg", LocalDate.now().plusDays(5)));
+    assertEquals(1, recipeBook.getAvailableRecipes(storage).size());
+  }
+
+  @Test
+  void testAvailableRecipesKeepCookbookOrder() {
+    Recipe pasta = new Recipe("Plain Pasta", "Pasta", "Cook pasta.",
+        Map.of("Spaghetti", new IngredientDetail(200.0, "g")));
+    Recipe sauce = new Recipe("Sauce", "Sauce", "Heat sauce.",
+        Map.of("Tomato Sauce", new IngredientDetail(100.0, "ml")));
+    recipeBook.addRecipe(pasta);
+    recipeBook.addRecipe(sauce);
+    assertEquals(List.of(pasta, sauce), recipeBook.getAvailableRecipes(storage));
+
+    storage.removeAmountFromStorage("Spaghetti", 500.0, "g");
+    assertEquals(List.of(sauce), recipeBook.getAvailableRecipes(storage));
+
+    storage.registerToStorage(new Grocery("Spaghetti", 10.0, 500.0, "g", LocalDate.now().plusDays(10)));
+    assertEquals(List.of(pasta, sauce), recipeBook.getAvailableRecipes(storage));
+  }
+
+  @Test
+  void testRecipeAddedAfterFirstLookupIsChecked() {
+    assertTrue(recipeBook.getAvailableRecipes(storage).isEmpty());
+
+    Recipe available = new Recipe("Plain Pasta", "Pasta",
+        "Cook pasta.",
+        Map.of("Spaghetti", new IngredientDetail(200.0, "g")));
+    Recipe missing = new Recipe("Cheese Pasta", "Pasta with cheese",
+        "Cook pasta, add cheese.",
+        Map.of(
+            "Spaghetti", new IngredientDetail(200.0, "g"),
+            "Parmesan Cheese", new IngredientDetail(50.0, "g")
+        ));
+    recipeBook.addRecipe(available);
+    recipeBook.addRecipe(missing);
+
+    List<Recipe> availableRecipes = recipeBook.getAvailableRecipes(storage);
+    assertEquals(1, availableRecipes.size());
+    assertEquals("Plain Pasta", availableRecipes.getFirst().getNameOfRecipe());
+
+    storage.registerToStorage(new Grocery("Parmesan Cheese", 30.0, 100.0, "g", LocalDate.now().plusDays(20)));
+    assertEquals(2, recipeBook.getAvailableRecipes(storage).size());
+  }
+
+  @Test
+  void testAvailableRecipesAreTrackedPerStorage() {
+    Recipe recipe = new Recipe("Plain Pasta", "Pasta",
+        "Cook pasta.",
+        Map.of("Spaghetti", new IngredientDetail(200.0, "g")));
+    recipeBook.addRecipe(recipe);
+
+    FoodStorage emptyStorage = new FoodStorage();
+    assertEquals(1, recipeBook.getAvailableRecipes(storage).size());
+    assertTrue(recipeBook.getAvailableRecipes(emptyStorage).isEmpty());
+
+    storage.removeAmountFromStorage("Spaghetti", 400.0, "g");
+    assertTrue(recipeBook.getAvailableRecipes(storage).isEmpty());
+  }
+
+  @Test
+  void testAvailableRecipesConvertBetweenUnits() {
+    storage.registerToStorage(new Grocery("Flour", 20.0, 200.0, "g", LocalDate.now().plusDays(3)));
+    storage.registerToStorage(new Grocery("Egg", 3.0, 2.0, "stk", LocalDate.now().plusDays(3)));
+    Recipe oneCup = new Recipe("Bread", "Simple bread", "Bake",
+        Map.of("Flour", new IngredientDetail(1.0, "cup")));
+    Recipe twoCups = new Recipe("Big bread", "Bigger bread", "Bake",
+        Map.of("Flour", new IngredientDetail(2.0, "cup")));
+    Recipe eggsByWeight = new Recipe("Omelette", "Eggs", "Fry",
+        Map.of("Egg", new IngredientDetail(50.0, "g")));
+    recipeBook.addRecipe(oneCup);
+    recipeBook.addRecipe(twoCups);
+    recipeBook.addRecipe(eggsByWeight);
+
+    List<Recipe> availableRecipes = recipeBook.getAvailableRecipes(storage);
+    assertEquals(1, availableRecipes.size());
+    assertEquals("Bread", availableRecipes.getFirst().getNameOfRecipe());
+  }
+
+  @Test
+  void testGetRecipeIgnoresCase() {
+    Recipe recipe = new Recipe("Plain Pasta", "Pasta", "Cook pasta.",
+        Map.of("Spaghetti", new IngredientDetail(200.0, "g")));
+    recipeBook.addRecipe(recipe);
+
+    assertSame(recipe, recipeBook.getRecipe("plain PASTA"));
+    assertThrows(IllegalArgumentException.class, () -> recipeBook.addRecipe(
+        new Recipe("PLAIN pasta", "Pasta", "Cook pasta.",
+            Map.of("Spaghetti", new IngredientDetail(100.0, "g")))));
+  }
+
+  @Test
+  void testRemoveRecipe() {
+    Recipe recipe = new Recipe("Plain Pasta", "Pasta", "Cook pasta.",
+        Map.of("Spaghetti", new IngredientDetail(200.0, "g")));
+    recipeBook.addRecipe(recipe);
+    assertEquals(1, recipeBook.getAvailableRecipes(storage).size());
+
+    assertTrue(recipeBook.removeRecipe("plain pasta"));
+    assertNull(recipeBook.getRecipe("Plain Pasta"));
+    assertTrue(recipeBook.getAvailableRecipes(storage).isEmpty());
+    assertFalse(recipeBook.removeRecipe("Plain Pasta"));
+
+    // The name is free again, and the removed recipe is no longer updated
+    storage.removeAmountFromStorage("Spaghetti", 400.0, "g");
+    recipeBook.addRecipe(recipe);
+    assertTrue(recipeBook.getAvailableRecipes(storage).isEmpty());
+  }
+
+  @Test
+  void testRenameRecipe() {
+    Recipe pasta = new Recipe("Plain Pasta", "Pasta", "Cook pasta.",
+        Map.of("Spaghetti", new IngredientDetail(200.0, "g")));
+    Recipe sauce = new Recipe("Sauce", "Sauce", "Heat sauce.",
+        Map.of("Tomato Sauce", new IngredientDetail(100.0, "ml")));
+    recipeBook.addRecipe(pasta);
+    recipeBook.addRecipe(sauce);
+    recipeBook.getAvailableRecipes(storage);
+
+    Recipe renamed = recipeBook.renameRecipe("plain pasta", "Pasta al Dente");
+
+    assertEquals("Pasta al Dente", renamed.getNameOfRecipe());
+    assertEquals("Plain Pasta", pasta.getNameOfRecipe(), "The original recipe is not changed");
+    assertNull(recipeBook.getRecipe("Plain Pasta"));
+    assertSame(renamed, recipeBook.getRecipe("pasta al dente"));
+    assertEquals(List.of(renamed, sauce), recipeBook.getAvailableRecipes(storage));
+
+    storage.removeAmountFromStorage("Spaghetti", 400.0, "g");
+    assertEquals(List.of(sauce), recipeBook.getAvailableRecipes(storage));
+  }
+
+  @Test
+  void testRenameRecipeRejectsInvalidNames() {
+    Recipe pasta = new Recipe("Plain Pasta", "Pasta", "Cook pasta.",
+        Map.of("Spaghetti", new IngredientDetail(200.0, "g")));
+    Recipe sauce = new Recipe("Sauce", "Sauce", "Heat sauce.",
+        Map.of("Tomato Sauce", new IngredientDetail(100.0, "ml")));
+    recipeBook.addRecipe(pasta);
+    recipeBook.addRecipe(sauce);
+
+    assertThrows(IllegalArgumentException.class, () -> recipeBook.renameRecipe("Plain Pasta", "SAUCE"));
+    assertThrows(IllegalArgumentException.class, () -> recipeBook.renameRecipe("Missing", "Other"));
+    assertThrows(IllegalArgumentException.class, () -> recipeBook.renameRecipe("Plain Pasta", ""));
+    assertSame(pasta, recipeBook.getRecipe("Plain Pasta"));
+
+    Recipe recased = recipeBook.renameRecipe("Plain Pasta", "PLAIN PASTA");
+    assertSame(recased, recipeBook.getRecipe("plain pasta"));
+  }
+
+  @Test
+  void testSearchByPrefix() {
+    for (String name : List.of("Pasta Carbonara", "pasta bake", "Pancakes", "Pasta", "Pizza")) {
+      recipeBook.addRecipe(new Recipe(name, "Dish", "Cook.",
+          Map.of("Spaghetti", new IngredientDetail(100.0, "g"))));
+    }
+
+    List<String> names = recipeBook.searchByPrefix("PAS", 10).stream()
+        .map(Recipe::getNameOfRecipe).toList();
+    assertEquals(List.of("Pasta", "pasta bake", "Pasta Carbonara"), names);
+    assertEquals(2, recipeBook.searchByPrefix("pa", 2).size());
+    assertTrue(recipeBook.searchByPrefix("Soup", 10).isEmpty());
+    assertThrows(IllegalArgumentException.class, () -> recipeBook.searchByPrefix("pa", 0));
+    assertThrows(IllegalArgumentException.class, () -> recipeBook.searchByPrefix(null, 5));
+  }
+
+  @Test
+  void testSearchFuzzyRanksByTypingErrors() {
+    for (String name : List.of("Lasagne", "Lasagna", "Lasagna Verde", "Salad")) {
+      recipeBook.addRecipe(new Recipe(name, "Dish", "Cook.",
+          Map.of("Spaghetti", new IngredientDetail(100.0, "g"))));
+    }
+
+    List<String> names = recipeBook.searchFuzzy("lasagn", 10).stream()
+        .map(Recipe::getNameOfRecipe).toList();
+    assertEquals(List.of("Lasagna", "Lasagne"), names);
+    assertEquals("Salad", recipeBook.searchFuzzy("slad", 10).getFirst().getNameOfRecipe());
+    assertTrue(recipeBook.searchFuzzy("Pancakes", 10).isEmpty());
+  }
+
+  @Test
+  void testSearchFollowsRemoveAndRename() {
+    recipeBook.addRecipe(new Recipe("Pasta", "Dish", "Cook.",
+        Map.of("Spaghetti", new IngredientDetail(100.0, "g"))));
+    recipeBook.addRecipe(new Recipe("Pasta Bake", "Dish", "Cook.",
+        Map.of("Spaghetti", new IngredientDetail(100.0, "g"))));
+
+    recipeBook.removeRecipe("pasta");
+    recipeBook.renameRecipe("Pasta Bake", "Baked Pasta");
 
+    assertTrue(recipeBook.searchByPrefix("pas", 10).isEmpty());
+    assertTrue(recipeBook.searchFuzzy("pasta", 10).isEmpty());
+    assertEquals("Baked Pasta", recipeBook.searchByPrefix("bak", 10).getFirst().getNameOfRecipe());
+    assertEquals("Baked Pasta", recipeBook.suggestRecipes("Bakd Pasta", 5).getFirst().getNameOfRecipe());
+  }
+
+  @Test
+  void testGetMaxServings() {
+    Recipe bolognese = new Recipe("Spaghetti Bolognese", "A classic Italian dish",
+        "Cook pasta, prepare sauce, mix and serve.",
+        Map.of(
+            "Spaghetti", new IngredientDetail(100.0, "g"),
+            "Ground Beef", new IngredientDetail(100.0, "g"),
+            "Tomato Sauce", new IngredientDetail(0.5, "dl")
+        ));
+    Recipe pasta = new Recipe("Plain Pasta", "Pasta", "Cook pasta.",
+        Map.of("Spaghetti", new IngredientDetail(0.15, "kg")));
+    Recipe cheesePasta = new Recipe("Cheese Pasta", "Pasta with cheese", "Cook pasta, add cheese.",
+        Map.of(
+            "Spaghetti", new IngredientDetail(100.0, "g"),
+            "Parmesan Cheese", new IngredientDetail(50.0, "g")
+        ));
+    recipeBook.addRecipe(bolognese);
+    recipeBook.addRecipe(pasta);
+    recipeBook.addRecipe(cheesePasta);
+
+    Map<Recipe, Integer> servings = recipeBook.getMaxServings(storage);
+
+    assertEquals(List.of(bolognese, pasta, cheesePasta), List.copyOf(servings.keySet()));
+    assertEquals(3, (int) servings.get(bolognese), "300 g of beef is enough for three servings");
+    assertEquals(3, (int) servings.get(pasta), "500 g of spaghetti is three whole servings of 150 g");
+    assertEquals(0, (int) servings.get(cheesePasta));
+
+    storage.removeAmountFromStorage("Ground Beef", 250.0, "g");
+    assertEquals(0, (int) recipeBook.getMaxServings(storage).get(bolognese));
+    assertThrows(IllegalArgumentException.class, () -> recipeBook.getMaxServings(null));
+  }
+}
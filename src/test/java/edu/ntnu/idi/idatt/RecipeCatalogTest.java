@@ -0,0 +1,215 @@
+package edu.ntnu.idi.idatt;
+
+import edu.ntnu.idi.idatt.model.FoodStorage;
+import edu.ntnu.idi.idatt.model.Grocery;
+import edu.ntnu.idi.idatt.model.IngredientDetail;
+import edu.ntnu.idi.idatt.model.Recipe;
+import edu.ntnu.idi.idatt.model.RecipeBook;
+import edu.ntnu.idi.idatt.model.RecipeCatalog;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RecipeCatalogTest {
+
+  private Path directory;
+  private Path file;
+  private List<Recipe> recipes;
+  private FoodStorage storage;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    directory = Files.createTempDirectory("catalog");
+    file = directory.resolve("recipes.catalog");
+
+    Map<String, IngredientDetail> pancakes = new LinkedHashMap<>();
+    pancakes.put("Milk", new IngredientDetail(5.0, "dl"));
+    pancakes.put("Flour", new IngredientDetail(200.0, "g"));
+    pancakes.put("Eggs", new IngredientDetail(2.0, "stk"));
+    recipes = List.of(
+        new Recipe("Pancakes", "Thin pancakes", "Whisk and fry", pancakes),
+        new Recipe("Omelette", "Plain omelette", "Fry",
+            Map.of("Eggs", new IngredientDetail(3.0, "stk"))),
+        new Recipe("Rømmegrøt", "Sour cream porridge", "Simmer and stir",
+            Map.of("Rømme", new IngredientDetail(0.5, "l"),
+                "Flour", new IngredientDetail(100.0, "g"))));
+    RecipeCatalog.build(recipes, file);
+
+    storage = new FoodStorage();
+    storage.registerToStorage(new Grocery("Milk", 15.0, 1.0, "l", LocalDate.now().plusDays(5)));
+    storage.registerToStorage(new Grocery("Flour", 20.0, 1.0, "kg", LocalDate.now().plusDays(90)));
+    storage.registerToStorage(new Grocery("Eggs", 3.0, 2.0, "stk", LocalDate.now().plusDays(10)));
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      for (Path path : files.toList()) {
+        Files.delete(path);
+      }
+    }
+    Files.delete(directory);
+  }
+
+  private static List<String> names(List<Recipe> recipes) {
+    return recipes.stream().map(Recipe::getNameOfRecipe).toList();
+  }
+
+  @Test
+  void testGetRecipeReadsTheCatalog() throws IOException {
+    RecipeCatalog catalog = RecipeCatalog.open(file);
+
+    assertEquals(3, catalog.size());
+    Recipe pancakes = catalog.getRecipe("pancakes");
+    assertEquals("Pancakes", pancakes.getNameOfRecipe());
+    assertEquals("Thin pancakes", pancakes.getDescription());
+    assertEquals("Whisk and fry", pancakes.getProcess());
+    assertEquals(List.of("Milk", "Flour", "Eggs"), List.copyOf(pancakes.getIngredients().keySet()));
+    assertEquals(200.0, pancakes.getIngredients().get("Flour").getAmount(), 1e-9);
+    assertEquals("g", pancakes.getIngredients().get("Flour").getUnit());
+    assertEquals(0.5, pancakes.getIngredients().get("Milk").getAmount(), 1e-9);
+    assertEquals("Sour cream porridge", catalog.getRecipe("RØMMEGRØT").getDescription());
+
+    assertSame(pancakes, catalog.getRecipe("Pancakes"));
+    assertNull(catalog.getRecipe("Waffles"));
+    assertNull(catalog.getRecipe(null));
+    assertTrue(catalog.contains("OMELETTE"));
+    assertFalse(catalog.contains("Omelet"));
+  }
+
+  @Test
+  void testGetAvailableRecipesReadsTheStorage() throws IOException {
+    RecipeCatalog catalog = RecipeCatalog.open(file);
+
+    assertEquals(List.of("Pancakes"), names(catalog.getAvailableRecipes(storage)));
+
+    storage.registerToStorage(new Grocery("eggs", 3.0, 1.0, "stk", LocalDate.now().plusDays(10)));
+    assertEquals(List.of("Omelette", "Pancakes"), names(catalog.getAvailableRecipes(storage)));
+
+    storage.registerToStorage(new Grocery("Rømme", 25.0, 5.0, "dl", LocalDate.now().plusDays(4)));
+    assertEquals(List.of("Omelette", "Pancakes", "Rømmegrøt"),
+        names(catalog.getAvailableRecipes(storage)));
+
+    storage.removeAmountFromStorage("Milk", 0.6, "l");
+    assertEquals(List.of("Omelette", "Rømmegrøt"), names(catalog.getAvailableRecipes(storage)));
+    assertSame(catalog.getRecipe("Omelette"), catalog.getAvailableRecipes(storage).getFirst());
+  }
+
+  @Test
+  void testRecipeBookUsesTheCatalog() throws IOException {
+    RecipeBook recipeBook = new RecipeBook(RecipeCatalog.open(file));
+    recipeBook.addRecipe(new Recipe("Scrambled eggs", "Soft eggs", "Stir",
+        Map.of("Eggs", new IngredientDetail(2.0, "stk"))));
+
+    assertEquals("Thin pancakes", recipeBook.getRecipe("Pancakes").getDescription());
+    assertEquals("Soft eggs", recipeBook.getRecipe("scrambled eggs").getDescription());
+    assertEquals(List.of("Scrambled eggs"), names(recipeBook.getRecipes()));
+    assertEquals(List.of("Scrambled eggs", "Pancakes"),
+        names(recipeBook.getAvailableRecipes(storage)));
+
+    storage.removeAmountFromStorage("Eggs", 1.0, "stk");
+    assertTrue(recipeBook.getAvailableRecipes(storage).isEmpty());
+
+    assertThrows(IllegalArgumentException.class, () -> recipeBook.addRecipe(
+        new Recipe("omelette", "Another omelette", "Fry",
+            Map.of("Eggs", new IngredientDetail(2.0, "stk")))));
+    assertThrows(IllegalArgumentException.class,
+        () -> recipeBook.renameRecipe("Scrambled eggs", "Pancakes"));
+    assertFalse(recipeBook.removeRecipe("Pancakes"));
+    assertNotNull(recipeBook.getRecipe("Pancakes"));
+  }
+
+  @Test
+  void testLargeCatalog() throws IOException {
+    List<Recipe> many = new ArrayList<>();
+    RecipeBook inMemory = new RecipeBook();
+    for (int i = 0; i < 5_000; i++) {
+      Map<String, IngredientDetail> ingredients = new LinkedHashMap<>();
+      ingredients.put("Ingredient " + i % 97, new IngredientDetail(1.0 + i % 5, "kg"));
+      ingredients.put("Ingredient " + (i * 7 + 3) % 97, new IngredientDetail(100.0 + i % 3, "g"));
+      Recipe recipe = new Recipe("Recipe " + i, "Description " + i % 10, "Process", ingredients);
+      many.add(recipe);
+      inMemory.addRecipe(recipe);
+    }
+    for (int i = 0; i < 97; i += 2) {
+      storage.registerToStorage(new Grocery("Ingredient " + i, 10.0, 3.5, "kg",
+          LocalDate.now().plusDays(30)));
+    }
+    Path large = directory.resolve("large.catalog");
+    RecipeCatalog.build(many, large);
+
+    RecipeCatalog catalog = RecipeCatalog.open(large);
+
+    assertEquals(5_000, catalog.size());
+    for (int i = 0; i < 5_000; i += 37) {
+      assertEquals(many.get(i).toString(), catalog.getRecipe("recipe " + i).toString());
+    }
+    List<String> expected = new ArrayList<>(names(inMemory.getAvailableRecipes(storage)));
+    expected.sort(Comparator.naturalOrder());
+    assertFalse(expected.isEmpty());
+    assertEquals(expected, names(catalog.getAvailableRecipes(storage)));
+  }
+
+  @Test
+  void testBuildReplacesTheCatalog() throws IOException {
+    RecipeCatalog previous = RecipeCatalog.open(file);
+    RecipeCatalog.build(recipes.subList(0, 1), file);
+
+    assertEquals(1, RecipeCatalog.open(file).size());
+    assertEquals(3, previous.size());
+    assertEquals("Plain omelette", previous.getRecipe("Omelette").getDescription());
+    assertEquals(List.of(file), Files.list(directory).toList());
+  }
+
+  @Test
+  void testEmptyCatalog() throws IOException {
+    RecipeCatalog.build(List.of(), file);
+    RecipeCatalog catalog = RecipeCatalog.open(file);
+
+    assertEquals(0, catalog.size());
+    assertNull(catalog.getRecipe("Pancakes"));
+    assertTrue(catalog.getAvailableRecipes(storage).isEmpty());
+  }
+
+  @Test
+  void testInvalidCatalogThrowsException() throws IOException {
+    byte[] bytes = Files.readAllBytes(file);
+    Path damaged = directory.resolve("damaged.catalog");
+
+    byte[] badMagic = bytes.clone();
+    badMagic[0] = 'X';
+    Files.write(damaged, badMagic);
+    assertThrows(IOException.class, () -> RecipeCatalog.open(damaged));
+
+    byte[] badVersion = bytes.clone();
+    badVersion[7] = 2;
+    Files.write(damaged, badVersion);
+    assertThrows(IOException.class, () -> RecipeCatalog.open(damaged));
+
+    Files.write(damaged, Arrays.copyOf(bytes, 30));
+    assertThrows(IOException.class, () -> RecipeCatalog.open(damaged));
+
+    assertThrows(IllegalArgumentException.class, () -> RecipeCatalog.open(null));
+    assertThrows(IllegalArgumentException.class, () -> RecipeCatalog.build(null, file));
+    assertThrows(IllegalArgumentException.class, () -> RecipeCatalog.build(recipes, null));
+    assertThrows(IllegalArgumentException.class, () -> RecipeCatalog.build(
+        List.of(recipes.get(1), new Recipe("OMELETTE", "Another omelette", "Fry",
+            Map.of("Eggs", new IngredientDetail(2.0, "stk")))), file));
+    assertThrows(IllegalArgumentException.class, () -> new RecipeBook((RecipeCatalog) null));
+    assertThrows(IllegalArgumentException.class,
+        () -> RecipeCatalog.open(file).getAvailableRecipes(null));
+  }
+}
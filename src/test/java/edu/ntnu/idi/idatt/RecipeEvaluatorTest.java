@@ -0,0 +1,169 @@
+package edu.ntnu.idi.idatt;
+
+import edu.ntnu.idi.idatt.model.FoodStorage;
+import edu.ntnu.idi.idatt.model.Grocery;
+import edu.ntnu.idi.idatt.model.IngredientDetail;
+import edu.ntnu.idi.idatt.model.Recipe;
+import edu.ntnu.idi.idatt.model.RecipeEvaluator;
+import edu.ntnu.idi.idatt.model.ShoppingItem;
+import edu.ntnu.idi.idatt.model.ShoppingList;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RecipeEvaluatorTest {
+
+  private FoodStorage storage;
+  private List<Recipe> recipes;
+
+  @BeforeEach
+  void setUp() {
+    storage = new FoodStorage();
+    storage.registerToStorage(new Grocery("Spaghetti", 10.0, 500.0, "g", LocalDate.now().plusDays(10)));
+    storage.registerToStorage(new Grocery("Flour", 20.0, 1.0, "kg", LocalDate.now().plusDays(10)));
+
+    // Two cups of flour is about 251 g, so the first three recipes in every ten can be made
+    recipes = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      int amount = i % 10 + 1;
+      recipes.add(new Recipe("Recipe " + i, "Test recipe", "Mix",
+          Map.of("Spaghetti", new IngredientDetail(amount * 100.0, "g"),
+              "Flour", new IngredientDetail(amount * 2.0, "cup"))));
+    }
+  }
+
+  @Test
+  void testFindMakeableMatchesCheckingOneByOne() {
+    List<Recipe> expected = recipes.stream()
+        .filter(recipe -> RecipeEvaluator.canMake(recipe, storage))
+        .toList();
+
+    List<Recipe> makeable = RecipeEvaluator.findMakeable(recipes, storage);
+
+    assertEquals(300, makeable.size());
+    assertEquals(expected, makeable);
+  }
+
+  @Test
+  void testFindMakeableWithFewRecipes() {
+    List<Recipe> makeable = RecipeEvaluator.findMakeable(recipes.subList(0, 5), storage);
+
+    assertEquals(List.of(recipes.get(0), recipes.get(1), recipes.get(2)), makeable);
+    assertTrue(RecipeEvaluator.findMakeable(List.of(), storage).isEmpty());
+  }
+
+  @Test
+  void testEvaluatingDoesNotChangeTheRecipe() {
+    Recipe recipe = recipes.getFirst();
+
+    assertTrue(recipe.canMakeRecipe(storage));
+    assertNull(recipe.getStorage());
+    assertFalse(recipe.canMakeRecipe(), "A recipe without a storage cannot be made");
+  }
+
+  @Test
+  void testSharedRecipesCheckedAgainstDifferentStoragesConcurrently() throws Exception {
+    FoodStorage emptyStorage = new FoodStorage();
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    List<Future<Integer>> results = new ArrayList<>();
+
+    for (int t = 0; t < 4; t++) {
+      FoodStorage toCheck = t % 2 == 0 ? storage : emptyStorage;
+      results.add(executor.submit(() -> {
+        int found = 0;
+        for (int i = 0; i < 20; i++) {
+          found += RecipeEvaluator.findMakeable(recipes, toCheck).size();
+        }
+        return found;
+      }));
+    }
+    List<Integer> found = new ArrayList<>();
+    for (Future<Integer> result : results) {
+      found.add(result.get());
+    }
+    executor.shutdown();
+
+    assertEquals(List.of(6000, 0, 6000, 0), found);
+  }
+
+  @Test
+  void testShoppingListAddsUpRecipesAndSubtractsStockOnce() {
+    Recipe carbonara = new Recipe("Carbonara", "Pasta", "Boil and mix",
+        Map.of("Spaghetti", new IngredientDetail(300.0, "g"),
+            "Egg", new IngredientDetail(2.0, "stk")));
+    Recipe bolognese = new Recipe("Bolognese", "Pasta", "Simmer",
+        Map.of("spaghetti", new IngredientDetail(0.2, "kg"),
+            "Minced meat", new IngredientDetail(400.0, "g")));
+    Map<Recipe, Integer> servings = new LinkedHashMap<>();
+    servings.put(carbonara, 2);
+    servings.put(bolognese, 1);
+
+    ShoppingList shoppingList = RecipeEvaluator.shoppingList(servings, storage);
+
+    // 800 g of spaghetti is needed, and 500 g is in storage
+    assertEquals(List.of("Egg", "Minced meat", "Spaghetti"),
+        shoppingList.getItems().stream().map(ShoppingItem::getName).toList());
+    ShoppingItem spaghetti = shoppingList.getItem("spaghetti");
+    assertEquals(800.0, spaghetti.getRequiredAmount(), 1e-9);
+    assertEquals(500.0, spaghetti.getAvailableAmount(), 1e-9);
+    assertEquals(300.0, spaghetti.getMissingAmount(), 1e-9);
+    assertEquals("g", spaghetti.getUnit());
+    assertEquals(4.0, shoppingList.getItem("Egg").getMissingAmount(), 1e-9);
+  }
+
+  @Test
+  void testShoppingListLeavesOutWhatIsInStorage() {
+    // Six cups of flour is about 750 g
+    ShoppingList shoppingList = RecipeEvaluator.shoppingList(Map.of(recipes.get(0), 3), storage);
+
+    assertTrue(shoppingList.isEmpty());
+    assertNull(shoppingList.getItem("Flour"));
+  }
+
+  @Test
+  void testShoppingListDoesNotCountExpiredStock() {
+    storage.registerToStorage(new Grocery("Milk", 20.0, 1.0, "l", LocalDate.now().minusDays(2)));
+    storage.registerToStorage(new Grocery("Milk", 20.0, 0.5, "l", LocalDate.now().plusDays(2)));
+    Recipe porridge = new Recipe("Porridge", "Oat porridge", "Boil",
+        Map.of("Milk", new IngredientDetail(4.0, "dl")));
+
+    ShoppingList shoppingList = RecipeEvaluator.shoppingList(Map.of(porridge, 3), storage);
+
+    assertEquals(0.7, shoppingList.getItem("Milk").getMissingAmount(), 1e-9);
+  }
+
+  @Test
+  void testShoppingListInvalidArgumentsThrowException() {
+    Map<Recipe, Integer> withNullServings = new HashMap<>();
+    withNullServings.put(recipes.getFirst(), null);
+
+    assertThrows(IllegalArgumentException.class, () -> RecipeEvaluator.shoppingList(null, storage));
+    assertThrows(IllegalArgumentException.class,
+        () -> RecipeEvaluator.shoppingList(withNullServings, storage));
+    assertThrows(IllegalArgumentException.class,
+        () -> RecipeEvaluator.shoppingList(Map.of(recipes.getFirst(), 0), storage));
+    assertThrows(IllegalArgumentException.class,
+        () -> RecipeEvaluator.shoppingList(Map.of(recipes.getFirst(), 1), null));
+  }
+
+  @Test
+  void testNullArgumentsThrowException() {
+    List<Recipe> withNull = new ArrayList<>(recipes);
+    withNull.add(null);
+
+    assertThrows(IllegalArgumentException.class, () -> RecipeEvaluator.findMakeable(null, storage));
+    assertThrows(IllegalArgumentException.class, () -> RecipeEvaluator.findMakeable(withNull, storage));
+    assertThrows(IllegalArgumentException.class, () -> RecipeEvaluator.findMakeable(recipes, null));
+    assertThrows(IllegalArgumentException.class, () -> RecipeEvaluator.canMake(null, storage));
+  }
+}
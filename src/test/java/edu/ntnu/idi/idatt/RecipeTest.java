@@ -45,6 +45,31 @@ class RecipeTest {
     assertTrue(recipe.canMakeRecipe(), "Recipe should now be possible");
   }
 
+  @Test
+  void testIngredientsCannotBeChangedAfterCreation() {
+    Map<String, IngredientDetail> ingredients = new HashMap<>();
+    IngredientDetail onion = new IngredientDetail(50.0, "g");
+    ingredients.put("Onion", onion);
+    Recipe onionSoup = new Recipe("Onion Soup", "Soup", "Boil onions.", ingredients);
+
+    ingredients.put("Cheese", new IngredientDetail(100.0, "g"));
+    onion.setAmountAndUnit(5.0, "kg");
+
+    assertEquals(List.of("Onion"), List.copyOf(onionSoup.getIngredients().keySet()));
+    assertEquals(50.0, onionSoup.getIngredients().get("Onion").getAmount(), 1e-9);
+
+    // The returned ingredients are copies, which can be changed without changing the recipe
+    Map<String, IngredientDetail> copy = onionSoup.getIngredients();
+    copy.get("Onion").setAmountAndUnit(5.0, "kg");
+    copy.put("Cheese", new IngredientDetail(100.0, "g"));
+    assertEquals(5000.0, copy.get("Onion").getAmount(), 1e-9);
+    assertEquals(List.of("Onion"), List.copyOf(onionSoup.getIngredients().keySet()));
+    assertEquals(50.0, onionSoup.getIngredients().get("Onion").getAmount(), 1e-9);
+
+    storage.registerToStorage(new Grocery("Onion", 5.0, 60.0, "g", LocalDate.now().plusDays(3)));
+    assertTrue(onionSoup.canMakeRecipe(storage));
+  }
+
   @Test
   void testExtraIngredientsInStorage() {
     storage.registerToStorage(new Grocery("Cheese", 10.0, 500.0, "g", LocalDate.of(2024, 12, 31)));
@@ -64,6 +89,33 @@ class RecipeTest {
   }
 
 
+  @Test
+  void testRecipeInCupsMatchesStorageInGrams() {
+    storage.registerToStorage(new Grocery("Flour", 20.0, 200.0, "g", LocalDate.now().plusDays(3)));
+    Recipe oneCup = new Recipe("Bread", "Simple bread", "Bake",
+        Map.of("Flour", new IngredientDetail(1.0, "cup")));
+    Recipe twoCups = new Recipe("Big bread", "Bigger bread", "Bake",
+        Map.of("Flour", new IngredientDetail(2.0, "Cup")));
+    oneCup.setStorage(storage);
+    twoCups.setStorage(storage);
+
+    assertTrue(oneCup.canMakeRecipe(), "1 cup of flour is about 125 g");
+    assertFalse(twoCups.canMakeRecipe(), "2 cups of flour is about 251 g");
+
+    storage.cookRecipe(oneCup, 1);
+    assertEquals(74.39, storage.findGroceriesByName("flour").getFirst().getAmount(), 1e-9);
+  }
+
+  @Test
+  void testRecipeInGramsDoesNotMatchStorageWithoutDensity() {
+    Recipe sauceByWeight = new Recipe("Sauce", "Sauce", "Heat",
+        Map.of("Tomato Sauce", new IngredientDetail(100.0, "g")));
+    sauceByWeight.setStorage(storage);
+
+    assertFalse(sauceByWeight.canMakeRecipe(), "Tomato sauce has no known density");
+    assertThrows(IllegalArgumentException.class, () -> storage.cookRecipe(sauceByWeight, 1));
+  }
+
   @Test
   void testEmptyStorage() {
     FoodStorage emptyStorage = new FoodStorage();
@@ -0,0 +1,343 @@
+package edu.ntnu.idi.idatt;
+
+import edu.ntnu.idi.idatt.model.FoodStorage;
+import edu.ntnu.idi.idatt.model.Grocery;
+import edu.ntnu.idi.idatt.model.IngredientDetail;
+import edu.ntnu.idi.idatt.model.JournalSync;
+import edu.ntnu.idi.idatt.model.Recipe;
+import edu.ntnu.idi.idatt.model.StorageJournal;
+import edu.ntnu.idi.idatt.utils.DayClock;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests that a journaled storage survives a crash. A crash is simulated by copying the
+ * journal directory while the journal is still open, as the disk would be left by a program
+ * that stops at that point, and opening the copy.
+ */
+class StorageJournalTest {
+
+  private DayClock clock;
+  private final List<Path> directories = new ArrayList<>();
+
+  @BeforeEach
+  void setUp() {
+    ZoneId zone = ZoneId.systemDefault();
+    clock = new DayClock(Clock.fixed(LocalDate.now().atStartOfDay(zone).toInstant(), zone));
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    for (Path directory : directories) {
+      deleteDirectory(directory);
+    }
+  }
+
+  private Path newDirectory() throws IOException {
+    Path directory = Files.createTempDirectory("journal");
+    directories.add(directory);
+    return directory;
+  }
+
+  private StorageJournal open(Path directory, long compactionBytes) throws IOException {
+    return StorageJournal.open(directory, JournalSync.FSYNC, clock, compactionBytes);
+  }
+
+  /**
+   * Copies the files of a journal directory to a new directory, like a crash would leave them.
+   * The copy is started over if a background checkpoint deleted a file while it was copied.
+   */
+  private Path crash(Path directory) throws IOException {
+    Path copy = newDirectory();
+    while (true) {
+      try {
+        for (Path file : listFiles(directory)) {
+          Files.write(copy.resolve(file.getFileName()), Files.readAllBytes(file));
+        }
+        return copy;
+      } catch (NoSuchFileException e) {
+        for (Path file : listFiles(copy)) {
+          Files.delete(file);
+        }
+      }
+    }
+  }
+
+  private static List<Path> listFiles(Path directory) throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.sorted().toList();
+    }
+  }
+
+  private static Path journalFile(Path directory) throws IOException {
+    return listFiles(directory).stream()
+        .filter(file -> file.getFileName().toString().startsWith("journal-"))
+        .max(Comparator.naturalOrder())
+        .orElseThrow();
+  }
+
+  private static void deleteDirectory(Path directory) throws IOException {
+    if (Files.exists(directory)) {
+      for (Path file : listFiles(directory)) {
+        Files.delete(file);
+      }
+      Files.delete(directory);
+    }
+  }
+
+  private void fillStorage(FoodStorage storage) {
+    storage.registerToStorage(new Grocery("Milk", 15.0, 2.0, "l", LocalDate.now().plusDays(3)));
+    storage.registerToStorage(new Grocery("Milk", 17.5, 1.0, "l", LocalDate.now().plusDays(1)));
+    storage.registerAll(List.of(
+        new Grocery("Flour", 20.0, 2.0, "kg", LocalDate.now().plusDays(100)),
+        new Grocery("Eggs", 3.0, 12.0, "stk", LocalDate.now().plusDays(10)),
+        new Grocery("Eggs", 3.0, 6.0, "stk", LocalDate.now().plusDays(10))));
+    storage.registerToStorage(new Grocery("Yogurt", 12.0, 500.0, "g", LocalDate.now().minusDays(1)));
+    storage.moveExpiredGroceries();
+    storage.removeAmountFromStorage("Milk", 1.5, "l");
+    storage.cookRecipe(new Recipe("Omelette", "Plain omelette", "Fry",
+        Map.of("Eggs", new IngredientDetail(3.0, "stk"))), 2);
+  }
+
+  @Test
+  void testCrashKeepsEveryAcknowledgedChange() throws IOException {
+    Path directory = newDirectory();
+    try (StorageJournal journal = open(directory, StorageJournal.DEFAULT_COMPACTION_BYTES)) {
+      FoodStorage storage = journal.getStorage();
+      fillStorage(storage);
+
+      try (StorageJournal recovered = open(crash(directory), StorageJournal.DEFAULT_COMPACTION_BYTES)) {
+        FoodStorage loaded = recovered.getStorage();
+        assertEquals(storage.toString(true), loaded.toString(true));
+        assertEquals(storage.displayExpiredGroceries(), loaded.displayExpiredGroceries());
+        assertEquals(storage.totalValueOfGroceries(), loaded.totalValueOfGroceries(), 1e-9);
+        assertEquals(12.0, loaded.findInStorage("eggs", false).getFirst().getAmount(), 1e-9);
+      }
+    }
+  }
+
+  @Test
+  void testReopenAfterCloseKeepsStorageAndRecipes() throws IOException {
+    Path directory = newDirectory();
+    String expected;
+    try (StorageJournal journal = open(directory, StorageJournal.DEFAULT_COMPACTION_BYTES)) {
+      fillStorage(journal.getStorage());
+      journal.getRecipeBook().addRecipe(new Recipe("Pancakes", "Thin pancakes", "Whisk and fry",
+          Map.of("Milk", new IngredientDetail(0.5, "l"))));
+      expected = journal.getStorage().toString(true);
+    }
+
+    try (StorageJournal journal = open(directory, StorageJournal.DEFAULT_COMPACTION_BYTES)) {
+      assertEquals(expected, journal.getStorage().toString(true));
+      assertNotNull(journal.getRecipeBook().getRecipe("Pancakes"));
+
+      // The reopened storage is journaled as well
+      journal.getStorage().removeAmountFromStorage("Flour", 500.0, "g");
+      Path copy = crash(directory);
+      try (StorageJournal recovered = open(copy, StorageJournal.DEFAULT_COMPACTION_BYTES)) {
+        assertEquals(1500.0,
+            recovered.getStorage().findInStorage("flour", false).getFirst().getAmount(), 1e-9);
+      }
+    }
+  }
+
+  @Test
+  void testPartlyWrittenRecordIsLeftOut() throws IOException {
+    Path directory = newDirectory();
+    try (StorageJournal journal = open(directory, StorageJournal.DEFAULT_COMPACTION_BYTES)) {
+      FoodStorage storage = journal.getStorage();
+      storage.registerToStorage(new Grocery("Milk", 15.0, 2.0, "l", LocalDate.now().plusDays(3)));
+      long acknowledged = Files.size(journalFile(directory));
+      storage.registerToStorage(new Grocery("Bread", 25.0, 1.0, "stk", LocalDate.now().plusDays(2)));
+      long written = Files.size(journalFile(directory));
+
+      // Every length the journal could have had while the second record was being written
+      for (long length = acknowledged; length < written; length++) {
+        Path copy = crash(directory);
+        try (var file = Files.newByteChannel(journalFile(copy), StandardOpenOption.WRITE)) {
+          file.truncate(length);
+        }
+
+        try (StorageJournal recovered = open(copy, StorageJournal.DEFAULT_COMPACTION_BYTES)) {
+          assertEquals(1, recovered.getStorage().findInStorage("milk", false).size());
+          assertTrue(recovered.getStorage().findInStorage("bread", false).isEmpty());
+        }
+      }
+    }
+  }
+
+  @Test
+  void testDamagedRecordIsLeftOut() throws IOException {
+    Path directory = newDirectory();
+    try (StorageJournal journal = open(directory, StorageJournal.DEFAULT_COMPACTION_BYTES)) {
+      FoodStorage storage = journal.getStorage();
+      storage.registerToStorage(new Grocery("Milk", 15.0, 2.0, "l", LocalDate.now().plusDays(3)));
+      storage.registerToStorage(new Grocery("Bread", 25.0, 1.0, "stk", LocalDate.now().plusDays(2)));
+
+      Path copy = crash(directory);
+      byte[] bytes = Files.readAllBytes(journalFile(copy));
+      bytes[bytes.length - 1] ^= 0x55;
+      Files.write(journalFile(copy), bytes);
+
+      try (StorageJournal recovered = open(copy, StorageJournal.DEFAULT_COMPACTION_BYTES)) {
+        assertEquals(1, recovered.getStorage().findInStorage("milk", false).size());
+        assertTrue(recovered.getStorage().findInStorage("bread", false).isEmpty());
+      }
+    }
+  }
+
+  @Test
+  void testConcurrentWritersLoseNoAcknowledgedChange() throws Exception {
+    Path directory = newDirectory();
+    int threads = 8;
+    int groceriesPerThread = 200;
+
+    try (StorageJournal journal = open(directory, 16 * 1024)) {
+      FoodStorage storage = journal.getStorage();
+      Map<String, Boolean> acknowledged = new ConcurrentHashMap<>();
+      CountDownLatch halfway = new CountDownLatch(threads);
+
+      List<Thread> writers = new ArrayList<>();
+      for (int t = 0; t < threads; t++) {
+        int thread = t;
+        writers.add(new Thread(() -> {
+          for (int i = 0; i < groceriesPerThread; i++) {
+            String name = "grocery " + thread + "-" + i;
+            storage.registerToStorage(new Grocery(name, 10.0, 2.0, "kg", LocalDate.now().plusDays(i % 30)));
+            storage.removeAmountFromStorage(name, 500.0, "g");
+            acknowledged.put(name, true);
+            if (i == groceriesPerThread / 2) {
+              halfway.countDown();
+            }
+          }
+        }));
+      }
+      writers.forEach(Thread::start);
+
+      // Crash while the writers are busy: everything acknowledged so far must survive
+      halfway.await();
+      List<String> acknowledgedBeforeCrash = new ArrayList<>(acknowledged.keySet());
+      Path copy = crash(directory);
+
+      for (Thread writer : writers) {
+        writer.join();
+      }
+
+      try (StorageJournal recovered = open(copy, StorageJournal.DEFAULT_COMPACTION_BYTES)) {
+        for (String name : acknowledgedBeforeCrash) {
+          List<Grocery> batches = recovered.getStorage().findGroceriesByName(name);
+          assertEquals(1, batches.size(), name);
+          assertEquals(1500.0, batches.getFirst().getAmount(), 1e-9);
+        }
+      }
+
+      // Nothing was lost while checkpoints ran in the background
+      Path finalCopy = crash(directory);
+      try (StorageJournal recovered = open(finalCopy, StorageJournal.DEFAULT_COMPACTION_BYTES)) {
+        assertEquals(storage.toString(true), recovered.getStorage().toString(true));
+        assertEquals(threads * groceriesPerThread, recovered.getStorage().sortGroceries().size());
+      }
+    }
+  }
+
+  @Test
+  void testCrashDuringCheckpointKeepsEveryChange() throws IOException {
+    Path directory = newDirectory();
+    try (StorageJournal journal = open(directory, StorageJournal.DEFAULT_COMPACTION_BYTES)) {
+      FoodStorage storage = journal.getStorage();
+      storage.registerToStorage(new Grocery("Milk", 15.0, 2.0, "l", LocalDate.now().plusDays(3)));
+      Path beforeCheckpoint = crash(directory);
+      Path oldJournal = journalFile(directory);
+
+      journal.checkpoint();
+      storage.registerToStorage(new Grocery("Bread", 25.0, 1.0, "stk", LocalDate.now().plusDays(2)));
+
+      // The new journal was started, but the program stopped before the new snapshot was saved
+      Files.copy(journalFile(directory), beforeCheckpoint.resolve(journalFile(directory).getFileName()));
+      assertNotEquals(oldJournal.getFileName(), journalFile(directory).getFileName());
+
+      try (StorageJournal recovered = open(beforeCheckpoint, StorageJournal.DEFAULT_COMPACTION_BYTES)) {
+        assertEquals(storage.toString(true), recovered.getStorage().toString(true));
+      }
+    }
+  }
+
+  @Test
+  void testCompactionBoundsJournal() throws Exception {
+    Path directory = newDirectory();
+    StorageJournal journal = open(directory, 4 * 1024);
+    FoodStorage storage = journal.getStorage();
+    for (int i = 0; i < 2000; i++) {
+      storage.registerToStorage(new Grocery("Grocery " + i % 50, 10.0, 1.0, "kg",
+          LocalDate.now().plusDays(i % 40)));
+    }
+    journal.close();
+
+    // Only the last snapshot and an empty journal are left to load
+    List<Path> files = listFiles(directory);
+    assertEquals(2, files.size(), files.toString());
+    assertEquals(8, Files.size(journalFile(directory)));
+
+    try (StorageJournal recovered = open(directory, 4 * 1024)) {
+      assertEquals(storage.toString(true), recovered.getStorage().toString(true));
+    }
+  }
+
+  @Test
+  void testClosedJournalRejectsChanges() throws IOException {
+    Path directory = newDirectory();
+    StorageJournal journal = open(directory, StorageJournal.DEFAULT_COMPACTION_BYTES);
+    FoodStorage storage = journal.getStorage();
+    storage.registerToStorage(new Grocery("Bread", 25.0, 1.0, "stk", LocalDate.now().plusDays(2)));
+    journal.close();
+    journal.close();
+
+    String before = storage.toString(true);
+    List<String> notified = new ArrayList<>();
+    storage.addListener((changed, groceryName) -> notified.add(groceryName));
+
+    assertThrows(IllegalStateException.class, () -> storage.registerToStorage(
+        new Grocery("Milk", 15.0, 2.0, "l", LocalDate.now().plusDays(3))));
+    assertThrows(IllegalStateException.class, () -> storage.registerAll(List.of(
+        new Grocery("Milk", 15.0, 2.0, "l", LocalDate.now().plusDays(3)))));
+    assertThrows(IllegalStateException.class,
+        () -> storage.removeAmountFromStorage("Bread", 1.0, "stk"));
+    assertThrows(IllegalStateException.class, journal::checkpoint);
+
+    // A rejected change leaves the storage as it was, and is not reported to the listeners
+    assertEquals(before, storage.toString(true));
+    assertTrue(storage.findInStorage("milk", false).isEmpty());
+    assertEquals(25.0, storage.totalValueOfGroceries(), 1e-9);
+    assertTrue(notified.isEmpty());
+  }
+
+  @Test
+  void testInvalidArgumentsThrowException() throws IOException {
+    Path directory = newDirectory();
+
+    assertThrows(IllegalArgumentException.class, () -> StorageJournal.open(null, JournalSync.FSYNC));
+    assertThrows(IllegalArgumentException.class, () -> StorageJournal.open(directory, null));
+    assertThrows(IllegalArgumentException.class,
+        () -> StorageJournal.open(directory, JournalSync.WRITE, null, 1024));
+    assertThrows(IllegalArgumentException.class,
+        () -> StorageJournal.open(directory, JournalSync.WRITE, clock, 0));
+  }
+}
@@ -0,0 +1,205 @@
+package edu.ntnu.idi.idatt;
+
+import edu.ntnu.idi.idatt.model.FoodStorage;
+import edu.ntnu.idi.idatt.model.Grocery;
+import edu.ntnu.idi.idatt.model.IngredientDetail;
+import edu.ntnu.idi.idatt.model.Recipe;
+import edu.ntnu.idi.idatt.model.RecipeBook;
+import edu.ntnu.idi.idatt.model.StorageSnapshot;
+import edu.ntnu.idi.idatt.model.ValuationMode;
+import edu.ntnu.idi.idatt.utils.DayClock;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StorageSnapshotTest {
+
+  private DayClock clock;
+  private FoodStorage storage;
+  private RecipeBook recipeBook;
+
+  @BeforeEach
+  void setUp() {
+    ZoneId zone = ZoneId.systemDefault();
+    clock = new DayClock(Clock.fixed(LocalDate.now().atStartOfDay(zone).toInstant(), zone));
+    storage = new FoodStorage(clock);
+    storage.registerToStorage(new Grocery("Milk", 15.0, 2.0, "l", LocalDate.now().plusDays(3)));
+    storage.registerToStorage(new Grocery("Milk", 17.5, 1.0, "l", LocalDate.now().plusDays(1)));
+    storage.registerToStorage(new Grocery("Flour", 0.1, 2.0, "kg", LocalDate.now().plusDays(100)));
+    storage.registerToStorage(new Grocery("Eggs", 3.0, 12.0, "stk", LocalDate.now().plusDays(10)));
+    storage.registerToStorage(new Grocery("Blåbær", 49.9, 250.0, "g", LocalDate.now().minusDays(2)));
+    storage.moveExpiredGroceries();
+    storage.removeAmountFromStorage("Eggs", 4.0, "stk");
+
+    recipeBook = new RecipeBook();
+    recipeBook.addRecipe(new Recipe("Pancakes", "Thin pancakes", "Whisk and fry",
+        Map.of("Milk", new IngredientDetail(0.5, "l"),
+            "Flour", new IngredientDetail(200.0, "g"),
+            "Eggs", new IngredientDetail(2.0, "stk"))));
+    recipeBook.addRecipe(new Recipe("Omelette", "Plain omelette", "Fry",
+        Map.of("Eggs", new IngredientDetail(3.0, "stk"))));
+  }
+
+  private StorageSnapshot roundTrip(FoodStorage storage, RecipeBook recipeBook) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    StorageSnapshot.write(storage, recipeBook, out);
+    return StorageSnapshot.read(new ByteArrayInputStream(out.toByteArray()), clock);
+  }
+
+  @Test
+  void testRoundTripKeepsStorage() throws IOException {
+    FoodStorage loaded = roundTrip(storage, recipeBook).getStorage();
+
+    assertEquals(storage.toString(true), loaded.toString(true));
+    assertEquals(storage.totalValueOfGroceries(), loaded.totalValueOfGroceries(), 1e-9);
+    assertEquals(storage.totalValueOfGroceries(ValuationMode.REMAINING_FRACTION),
+        loaded.totalValueOfGroceries(ValuationMode.REMAINING_FRACTION), 1e-9);
+
+    Grocery eggs = loaded.findInStorage("eggs", false).getFirst();
+    assertEquals(8.0, eggs.getAmount(), 1e-9);
+    assertEquals(12.0, eggs.getInitialAmount(), 1e-9);
+    assertEquals(2.0, eggs.getRemainingValue(), 1e-9);
+    assertEquals(0.1, loaded.findInStorage("flour", false).getFirst().getPrice());
+  }
+
+  @Test
+  void testRoundTripKeepsExpiredGroceries() throws IOException {
+    FoodStorage loaded = roundTrip(storage, recipeBook).getStorage();
+
+    assertEquals(storage.displayExpiredGroceries(), loaded.displayExpiredGroceries());
+    assertEquals(49.9, loaded.totalValueOfExpiredGroceries(), 1e-9);
+    assertEquals(1, loaded.findInStorage("blåbær", true).size());
+    assertTrue(loaded.findInStorage("blåbær", false).isEmpty());
+  }
+
+  @Test
+  void testRoundTripKeepsExpiryOrder() throws IOException {
+    FoodStorage loaded = roundTrip(storage, recipeBook).getStorage();
+
+    List<Grocery> expiring = loaded.bestBefore(LocalDate.now().plusDays(11));
+    assertEquals(List.of("milk", "milk", "eggs"), expiring.stream().map(Grocery::getName).toList());
+    assertEquals(LocalDate.now().plusDays(1), expiring.getFirst().getExpiryDate());
+
+    // The loaded storage takes groceries from the batch expiring first, like the saved one
+    loaded.removeAmountFromStorage("Milk", 1.5, "l");
+    assertEquals(1.5, loaded.findInStorage("milk", false).getFirst().getAmount(), 1e-9);
+  }
+
+  @Test
+  void testRoundTripKeepsRecipes() throws IOException {
+    RecipeBook loaded = roundTrip(storage, recipeBook).getRecipeBook();
+
+    assertEquals(2, loaded.getRecipes().size());
+    Recipe pancakes = loaded.getRecipe("Pancakes");
+    assertEquals("Thin pancakes", pancakes.getDescription());
+    assertEquals("Whisk and fry", pancakes.getProcess());
+    assertEquals(200.0, pancakes.getIngredients().get("Flour").getAmount(), 1e-9);
+    assertEquals("g", pancakes.getIngredients().get("Flour").getUnit());
+    assertEquals(0.5, pancakes.getIngredients().get("Milk").getAmount(), 1e-9);
+    assertEquals("Plain omelette", loaded.getRecipe("Omelette").getDescription());
+  }
+
+  @Test
+  void testLoadedStorageCanBeChanged() throws IOException {
+    FoodStorage loaded = roundTrip(storage, recipeBook).getStorage();
+
+    loaded.registerToStorage(new Grocery("Milk", 15.0, 1.0, "l", LocalDate.now().plusDays(2)));
+    loaded.cookRecipe(recipeBook.getRecipe("Omelette"), 2);
+
+    assertEquals(3, loaded.findInStorage("milk", false).size());
+    assertEquals(2.0, loaded.findInStorage("eggs", false).getFirst().getAmount(), 1e-9);
+    assertEquals(8.0, storage.findInStorage("eggs", false).getFirst().getAmount(), 1e-9);
+  }
+
+  @Test
+  void testEmptyStorageRoundTrip() throws IOException {
+    StorageSnapshot snapshot = roundTrip(new FoodStorage(clock), new RecipeBook());
+
+    assertTrue(snapshot.getStorage().sortGroceries().isEmpty());
+    assertTrue(snapshot.getStorage().filterAndGroupExpiredGroceries().isEmpty());
+    assertTrue(snapshot.getRecipeBook().getRecipes().isEmpty());
+  }
+
+  @Test
+  void testLargeStorageRoundTrip() throws IOException {
+    List<Grocery> groceries = new ArrayList<>();
+    for (int i = 0; i < 20_000; i++) {
+      groceries.add(new Grocery("Grocery " + i % 500, 10.0 + i % 7 * 0.25, 1.0 + i % 3, "kg",
+          LocalDate.now().plusDays(i * 31 % 400)));
+    }
+    FoodStorage large = new FoodStorage(clock);
+    large.registerAll(groceries);
+
+    FoodStorage loaded = roundTrip(large, recipeBook).getStorage();
+
+    assertEquals(large.toString(true), loaded.toString(true));
+    assertEquals(large.bestBefore(LocalDate.now().plusDays(50)).toString(),
+        loaded.bestBefore(LocalDate.now().plusDays(50)).toString());
+    assertEquals(large.totalValueOfGroceries(), loaded.totalValueOfGroceries(), 1e-6);
+  }
+
+  @Test
+  void testSaveAndLoadFile() throws IOException {
+    Path directory = Files.createTempDirectory("snapshot");
+    Path file = directory.resolve("foodwaste.snapshot");
+    try {
+      StorageSnapshot.save(storage, recipeBook, file);
+      StorageSnapshot.save(storage, recipeBook, file);
+      StorageSnapshot loaded = StorageSnapshot.load(file, clock);
+
+      assertEquals(storage.toString(true), loaded.getStorage().toString(true));
+      assertEquals(List.of(file), Files.list(directory).toList());
+    } finally {
+      Files.deleteIfExists(file);
+      Files.delete(directory);
+    }
+  }
+
+  @Test
+  void testInvalidSnapshotThrowsException() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    StorageSnapshot.write(storage, recipeBook, out);
+    byte[] bytes = out.toByteArray();
+
+    byte[] badMagic = bytes.clone();
+    badMagic[0] = 'X';
+    assertThrows(IOException.class,
+        () -> StorageSnapshot.read(new ByteArrayInputStream(badMagic), clock));
+
+    byte[] badVersion = bytes.clone();
+    badVersion[4] = 2;
+    assertThrows(IOException.class,
+        () -> StorageSnapshot.read(new ByteArrayInputStream(badVersion), clock));
+
+    byte[] truncated = Arrays.copyOf(bytes, bytes.length - 3);
+    assertThrows(IOException.class,
+        () -> StorageSnapshot.read(new ByteArrayInputStream(truncated), clock));
+
+    // One expired batch of milk, with the unit in the two lowest bits of its first field
+    byte[] oneBatch = {'F', 'W', 'S', 'S', 1, 1, 4, 'm', 'i', 'l', 'k', 0, 1, 0, 1, 2, 1, 0, 0, 0};
+    assertEquals(1, StorageSnapshot.read(new ByteArrayInputStream(oneBatch), clock)
+        .getStorage().findInStorage("milk", true).size());
+    byte[] badUnit = oneBatch.clone();
+    badUnit[15] = 3;
+    assertThrows(IOException.class,
+        () -> StorageSnapshot.read(new ByteArrayInputStream(badUnit), clock));
+
+    assertThrows(IllegalArgumentException.class,
+        () -> StorageSnapshot.write(null, recipeBook, new ByteArrayOutputStream()));
+    assertThrows(IllegalArgumentException.class,
+        () -> StorageSnapshot.read(new ByteArrayInputStream(bytes), null));
+  }
+}